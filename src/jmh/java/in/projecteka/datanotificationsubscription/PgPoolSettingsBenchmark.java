@@ -0,0 +1,98 @@
+package in.projecteka.datanotificationsubscription;
+
+import io.vertx.core.Vertx;
+import io.vertx.pgclient.PgPool;
+import io.vertx.sqlclient.Tuple;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query throughput of the read-write pool, built by the service configuration, at different pool sizes, pipelining
+ * limits and event loop counts, with many queries in flight at once as under load. Needs a postgres with the service
+ * schema, by default the one of the local profile (override with -Ddb.host, -Ddb.port, -Ddb.schema, -Ddb.user and
+ * -Ddb.password). Only reads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PgPoolSettingsBenchmark {
+    private static final int QUERIES_IN_FLIGHT = 64;
+    private static final String QUERY = "SELECT request_id, status, date_modified FROM hiu_subscription " +
+            "WHERE patient_id = $1 ORDER BY date_modified DESC LIMIT 10";
+
+    @Param({"2", "8", "16"})
+    private int poolSize;
+
+    @Param({"1", "16", "256"})
+    private int pipeliningLimit;
+
+    // 0 is the default, one event loop per core
+    @Param({"1", "0"})
+    private int eventLoopSize;
+
+    private Vertx vertx;
+    private PgPool pgPool;
+
+    @Setup
+    public void setUp() {
+        String host = System.getProperty("db.host", "localhost");
+        int port = Integer.getInteger("db.port", 5432);
+        String user = System.getProperty("db.user", "postgres");
+        String password = System.getProperty("db.password", "password");
+        // The replica is the same server, only so that the read-write pool gets the whole pool size
+        DbOptions dbOptions = new DbOptions(host,
+                port,
+                System.getProperty("db.schema", "data_notification_subscription"),
+                user,
+                password,
+                poolSize,
+                true,
+                new Replica(host, port, user, password, 1),
+                pipeliningLimit,
+                0,
+                QUERIES_IN_FLIGHT,
+                0,
+                eventLoopSize);
+        var configuration = new DataNotificationSubscriptionConfiguration();
+        vertx = configuration.vertx(dbOptions);
+        pgPool = configuration.readWriteClient(vertx, dbOptions);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pgPool.close();
+        vertx.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES_IN_FLIGHT)
+    public void queriesInFlight() {
+        Flux.range(0, QUERIES_IN_FLIGHT)
+                .flatMap(index -> query("patient-" + index), QUERIES_IN_FLIGHT)
+                .then()
+                .block();
+    }
+
+    private Mono<Integer> query(String patientId) {
+        return Mono.create(monoSink -> pgPool.preparedQuery(QUERY)
+                .execute(Tuple.of(patientId), handler -> {
+                    if (handler.failed()) {
+                        monoSink.error(handler.cause());
+                        return;
+                    }
+                    monoSink.success(handler.result().size());
+                }));
+    }
+}
@@ -0,0 +1,69 @@
+package in.projecteka.datanotificationsubscription.hipLink;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import in.projecteka.consentmanager.common.TraceableMessage;
+import in.projecteka.datanotificationsubscription.common.Serializer;
+import in.projecteka.datanotificationsubscription.common.model.PatientCareContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Decoding of a link event delivery body: the way the listener used to do it (untyped message, then a new
+ * ObjectMapper converting the map) against the shared typed reader.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LinkEventDecodingBenchmark {
+    @Param({"1", "10", "100", "1000"})
+    private int careContexts;
+
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        List<PatientCareContext> linkedCareContexts = IntStream.range(0, careContexts)
+                .mapToObj(index -> new PatientCareContext("patient-reference-" + UUID.randomUUID(),
+                        "care-context-reference-" + UUID.randomUUID()))
+                .collect(Collectors.toList());
+        NewCCLinkEvent linkEvent = NewCCLinkEvent.builder()
+                .hipId("10000005")
+                .healthNumber("12-3456-7890-1234")
+                .timestamp(LocalDateTime.now())
+                .careContexts(linkedCareContexts)
+                .build();
+        body = Serializer.from(TraceableMessage.builder()
+                .correlationId(UUID.randomUUID().toString())
+                .message(linkEvent)
+                .build())
+                .getBytes();
+    }
+
+    @Benchmark
+    public NewCCLinkEvent untypedMessageConvertedWithNewMapper() {
+        TraceableMessage<?> traceableMessage = Serializer.to(body, TraceableMessage.class);
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        return mapper.convertValue(traceableMessage.getMessage(), NewCCLinkEvent.class);
+    }
+
+    @Benchmark
+    public NewCCLinkEvent typedMessageReadBySharedReader() throws IOException {
+        return LinkEventDecoder.decode(body).getMessage();
+    }
+}
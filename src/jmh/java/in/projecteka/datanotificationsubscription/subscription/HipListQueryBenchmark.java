@@ -0,0 +1,98 @@
+package in.projecteka.datanotificationsubscription.subscription;
+
+import io.vertx.pgclient.PgConnectOptions;
+import io.vertx.pgclient.PgPool;
+import io.vertx.sqlclient.PoolOptions;
+import io.vertx.sqlclient.Tuple;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import reactor.core.publisher.Mono;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Cost of filtering by a list of HIPs which differs from call to call, as subscription edits deactivate sources:
+ * the list formatted into the SQL text, so that postgres parses and plans every call afresh, against an array
+ * parameter on a pool caching its prepared statements. Needs a postgres with the service schema, by default the one
+ * of the local profile (override with -Ddb.host, -Ddb.port, -Ddb.schema, -Ddb.user and -Ddb.password). Only reads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HipListQueryBenchmark {
+    private static final String SOURCES_OF_HIPS_FORMATTED = "SELECT count(*) FROM subscription_source " +
+            "WHERE (hip_id IN ( %s ) OR hip_id is NULL) AND subscription_id = $1";
+    private static final String SOURCES_OF_HIPS = "SELECT count(*) FROM subscription_source " +
+            "WHERE (hip_id = ANY($2) OR hip_id is NULL) AND subscription_id = $1";
+
+    @Param({"1", "10", "50"})
+    private int hips;
+
+    private PgPool uncachedPool;
+    private PgPool cachedPool;
+
+    @Setup
+    public void setUp() {
+        uncachedPool = PgPool.pool(connectOptions(), new PoolOptions().setMaxSize(1));
+        cachedPool = PgPool.pool(connectOptions().setCachePreparedStatements(true), new PoolOptions().setMaxSize(1));
+    }
+
+    @TearDown
+    public void tearDown() {
+        uncachedPool.close();
+        cachedPool.close();
+    }
+
+    @Benchmark
+    public long formattedInList() {
+        String hipIds = IntStream.range(0, hips)
+                .mapToObj(index -> String.format("'%s'", randomHipId()))
+                .collect(Collectors.joining(", "));
+        return count(uncachedPool, String.format(SOURCES_OF_HIPS_FORMATTED, hipIds),
+                Tuple.of(UUID.randomUUID().toString()));
+    }
+
+    @Benchmark
+    public long arrayParameter() {
+        String[] hipIds = IntStream.range(0, hips)
+                .mapToObj(index -> randomHipId())
+                .toArray(String[]::new);
+        return count(cachedPool, SOURCES_OF_HIPS, Tuple.of(UUID.randomUUID().toString(), hipIds));
+    }
+
+    private static String randomHipId() {
+        return "hip-" + ThreadLocalRandom.current().nextInt(10000);
+    }
+
+    private static long count(PgPool pool, String query, Tuple parameters) {
+        return Mono.<Long>create(monoSink -> pool.preparedQuery(query)
+                .execute(parameters, handler -> {
+                    if (handler.failed()) {
+                        monoSink.error(handler.cause());
+                        return;
+                    }
+                    monoSink.success(handler.result().iterator().next().getLong(0));
+                }))
+                .block();
+    }
+
+    private static PgConnectOptions connectOptions() {
+        return new PgConnectOptions()
+                .setHost(System.getProperty("db.host", "localhost"))
+                .setPort(Integer.getInteger("db.port", 5432))
+                .setDatabase(System.getProperty("db.schema", "data_notification_subscription"))
+                .setUser(System.getProperty("db.user", "postgres"))
+                .setPassword(System.getProperty("db.password", "password"));
+    }
+}
@@ -0,0 +1,128 @@
+package in.projecteka.datanotificationsubscription.subscription;
+
+import in.projecteka.datanotificationsubscription.common.QueryExecutor;
+import in.projecteka.datanotificationsubscription.common.QueryMetrics;
+import in.projecteka.datanotificationsubscription.common.ReadRouter;
+import in.projecteka.datanotificationsubscription.common.model.HIType;
+import in.projecteka.datanotificationsubscription.subscription.model.AccessPeriod;
+import in.projecteka.datanotificationsubscription.subscription.model.Category;
+import in.projecteka.datanotificationsubscription.subscription.model.GrantedSubscription;
+import in.projecteka.datanotificationsubscription.subscription.model.HipDetail;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.pgclient.PgConnectOptions;
+import io.vertx.pgclient.PgPool;
+import io.vertx.sqlclient.PoolOptions;
+import io.vertx.sqlclient.Tuple;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Approval latency against the number of excluded sources: one statement per source, as approval used to write
+ * them, against the single transaction with a batched insert. Needs a postgres with the service schema, by default
+ * the one of the local profile (override with -Ddb.host, -Ddb.port, -Ddb.schema, -Ddb.user and -Ddb.password).
+ * Run it against a throwaway database, the rows written are left behind.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SubscriptionApprovalBenchmark {
+    private static final String UPDATE_SUBSCRIPTION_REQUEST_STATUS_QUERY = "UPDATE hiu_subscription SET status=$1, " +
+            "subscription_id=$2, date_modified=$3 WHERE request_id=$4";
+    private static final String INSERT_SOURCES_REQUEST_QUERY = "INSERT INTO subscription_source " +
+            "(subscription_id, period_from, period_to, category_link, category_data, hip_id, hi_types, status, excluded) VALUES ($1, $2, $3, $4, $5, $6, $7, $8, $9)";
+
+    @Param({"0", "10", "50", "200"})
+    private int exclusions;
+
+    private PgPool pgPool;
+    private SubscriptionRequestRepository repository;
+    private List<GrantedSubscription> includedSources;
+    private List<GrantedSubscription> excludedSources;
+
+    @Setup
+    public void setUp() {
+        PgConnectOptions connectOptions = new PgConnectOptions()
+                .setHost(System.getProperty("db.host", "localhost"))
+                .setPort(Integer.getInteger("db.port", 5432))
+                .setDatabase(System.getProperty("db.schema", "data_notification_subscription"))
+                .setUser(System.getProperty("db.user", "postgres"))
+                .setPassword(System.getProperty("db.password", "password"));
+        pgPool = PgPool.pool(connectOptions, new PoolOptions().setMaxSize(5));
+        repository = new SubscriptionRequestRepository(pgPool, new ReadRouter(pgPool, pgPool, false,
+                Duration.ZERO, Duration.ZERO, Duration.ZERO, Duration.ZERO),
+                new QueryExecutor(new QueryMetrics(new SimpleMeterRegistry(), Duration.ofSeconds(1))));
+
+        AccessPeriod period = AccessPeriod.builder()
+                .fromDate(LocalDateTime.now().minusYears(1))
+                .toDate(LocalDateTime.now().plusYears(1))
+                .build();
+        includedSources = List.of(source(null, period));
+        excludedSources = IntStream.range(0, exclusions)
+                .mapToObj(index -> source(HipDetail.builder().id("hip-" + index).build(), period))
+                .collect(Collectors.toList());
+    }
+
+    @TearDown
+    public void tearDown() {
+        pgPool.close();
+    }
+
+    @Benchmark
+    public void statementPerSource() {
+        String subscriptionId = UUID.randomUUID().toString();
+        Tuple statusUpdate = Tuple.of("GRANTED", subscriptionId, LocalDateTime.now(), UUID.randomUUID().toString());
+        Mono<Void> included = Flux.fromIterable(includedSources)
+                .flatMap(source -> execute(INSERT_SOURCES_REQUEST_QUERY, repository.toSourceTuple(subscriptionId, source, false)))
+                .then();
+        Mono<Void> excluded = Flux.fromIterable(excludedSources)
+                .flatMap(source -> execute(INSERT_SOURCES_REQUEST_QUERY, repository.toSourceTuple(subscriptionId, source, true)))
+                .then();
+        execute(UPDATE_SUBSCRIPTION_REQUEST_STATUS_QUERY, statusUpdate)
+                .then(Mono.when(included, excluded))
+                .block();
+    }
+
+    @Benchmark
+    public void singleTransactionWithBatch() {
+        repository.grantSubscription(UUID.randomUUID().toString(), UUID.randomUUID().toString(),
+                includedSources, excludedSources)
+                .block();
+    }
+
+    private Mono<Void> execute(String query, Tuple parameters) {
+        return Mono.create(monoSink -> pgPool.preparedQuery(query)
+                .execute(parameters, handler -> {
+                    if (handler.failed()) {
+                        monoSink.error(handler.cause());
+                        return;
+                    }
+                    monoSink.success();
+                }));
+    }
+
+    private static GrantedSubscription source(HipDetail hip, AccessPeriod period) {
+        return GrantedSubscription.builder()
+                .hip(hip)
+                .categories(List.of(Category.LINK, Category.DATA))
+                .hiTypes(new HIType[]{HIType.OP_CONSULTATION, HIType.DIAGNOSTIC_REPORT})
+                .period(period)
+                .build();
+    }
+}
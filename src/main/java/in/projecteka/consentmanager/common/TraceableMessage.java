@@ -12,9 +12,9 @@ import java.util.UUID;
 @Builder
 @Data
 @NoArgsConstructor
-public class TraceableMessage {
+public class TraceableMessage<T> {
     String correlationId;
-    Object message;
+    T message;
 
     public String getCorrelationId() {
         return StringUtils.isEmpty(correlationId) ? UUID.randomUUID().toString() : correlationId;
@@ -0,0 +1,44 @@
+package in.projecteka.datanotificationsubscription;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+
+@ConfigurationProperties(prefix = "subscriptionmanager.gateway-circuit-breaker")
+@AllArgsConstructor
+@Getter
+@ConstructorBinding
+public class CircuitBreakerProperties {
+    private static final int DEFAULT_SLIDING_WINDOW_SIZE = 20;
+    private static final int DEFAULT_MINIMUM_CALLS = 10;
+    private static final int DEFAULT_FAILURE_RATE_THRESHOLD = 50;
+    private static final long DEFAULT_OPEN_DURATION = 30000;
+    private static final int DEFAULT_HALF_OPEN_PROBES = 2;
+    private final boolean enabled;
+    private final int slidingWindowSize;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final long openDuration;
+    private final int halfOpenProbes;
+
+    public int getSlidingWindowSize() {
+        return slidingWindowSize > 0 ? slidingWindowSize : DEFAULT_SLIDING_WINDOW_SIZE;
+    }
+
+    public int getMinimumCalls() {
+        return minimumCalls > 0 ? Math.min(minimumCalls, getSlidingWindowSize()) : DEFAULT_MINIMUM_CALLS;
+    }
+
+    public int getFailureRateThreshold() {
+        return failureRateThreshold > 0 ? failureRateThreshold : DEFAULT_FAILURE_RATE_THRESHOLD;
+    }
+
+    public long getOpenDuration() {
+        return openDuration > 0 ? openDuration : DEFAULT_OPEN_DURATION;
+    }
+
+    public int getHalfOpenProbes() {
+        return halfOpenProbes > 0 ? halfOpenProbes : DEFAULT_HALF_OPEN_PROBES;
+    }
+}
@@ -15,15 +15,19 @@ import org.springframework.scheduling.annotation.EnableScheduling;
 @EnableScheduling
 @EnableAsync
 @EnableConfigurationProperties({RabbitMQOptions.class,
+                                CircuitBreakerProperties.class,
                                 DbOptions.class,
                                 IdentityServiceProperties.class,
                                 GatewayServiceProperties.class,
+                                HIUNotificationLimitProperties.class,
                                 LinkServiceProperties.class,
                                 UserServiceProperties.class,
                                 IDPProperties.class,
                                 SubscriptionProperties.class,
                                 RedisOptions.class,
                                 ListenerProperties.class,
+                                OutboxProperties.class,
+                                ReadRoutingProperties.class,
                                 UserAuthorizationServiceProperties.class,
                                 WebClientOptions.class})
 public class DataNotificationSubscriptionApplication {
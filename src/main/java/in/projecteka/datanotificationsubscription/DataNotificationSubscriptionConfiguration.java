@@ -21,12 +21,18 @@ import in.projecteka.datanotificationsubscription.clients.model.Link;
 import in.projecteka.datanotificationsubscription.common.AppPushNotificationPublisher;
 import in.projecteka.datanotificationsubscription.common.Authenticator;
 import in.projecteka.datanotificationsubscription.common.CMTokenAuthenticator;
+import in.projecteka.datanotificationsubscription.common.DbMigration;
 import in.projecteka.datanotificationsubscription.common.ExternalIDPOfflineAuthenticator;
+import in.projecteka.datanotificationsubscription.common.GatewayCircuitBreakers;
 import in.projecteka.datanotificationsubscription.common.GatewayServiceClient;
 import in.projecteka.datanotificationsubscription.common.GatewayTokenVerifier;
 import in.projecteka.datanotificationsubscription.common.GlobalExceptionHandler;
+import in.projecteka.datanotificationsubscription.common.HIUNotificationLimiter;
 import in.projecteka.datanotificationsubscription.common.IdentityService;
+import in.projecteka.datanotificationsubscription.common.QueryExecutor;
+import in.projecteka.datanotificationsubscription.common.QueryMetrics;
 import in.projecteka.datanotificationsubscription.common.RabbitMQOptions;
+import in.projecteka.datanotificationsubscription.common.ReadRouter;
 import in.projecteka.datanotificationsubscription.common.RequestValidator;
 import in.projecteka.datanotificationsubscription.common.ServiceAuthentication;
 import in.projecteka.datanotificationsubscription.common.ServiceAuthenticationClient;
@@ -37,6 +43,16 @@ import in.projecteka.datanotificationsubscription.common.cache.RedisCacheAdapter
 import in.projecteka.datanotificationsubscription.common.cache.RedisGenericAdapter;
 import in.projecteka.datanotificationsubscription.common.cache.RedisOptions;
 import in.projecteka.datanotificationsubscription.hipLink.HipLinkNotificationListener;
+import in.projecteka.datanotificationsubscription.hipLink.LinkEventDeduplicator;
+import in.projecteka.datanotificationsubscription.outbox.NotificationOutboxDispatcher;
+import in.projecteka.datanotificationsubscription.outbox.NotificationOutboxRepository;
+import in.projecteka.datanotificationsubscription.outbox.OutboxSubscriptionNotifier;
+import in.projecteka.datanotificationsubscription.subscription.BloomFilterLinkSubscriptionIndex;
+import in.projecteka.datanotificationsubscription.subscription.HiuIdBackfill;
+import in.projecteka.datanotificationsubscription.subscription.InMemoryLinkSubscriptionIndex;
+import in.projecteka.datanotificationsubscription.subscription.LinkSubscriptionChanges;
+import in.projecteka.datanotificationsubscription.subscription.LinkSubscriptionIndex;
+import in.projecteka.datanotificationsubscription.subscription.PassThroughLinkSubscriptionIndex;
 import in.projecteka.datanotificationsubscription.subscription.SubscriptionRepository;
 import in.projecteka.datanotificationsubscription.subscription.SubscriptionRequestRepository;
 import in.projecteka.datanotificationsubscription.subscription.SubscriptionRequestService;
@@ -46,9 +62,12 @@ import in.projecteka.datanotificationsubscription.subscription.model.Subscriptio
 import in.projecteka.datanotificationsubscription.subscription.model.SubscriptionProperties;
 import io.lettuce.core.ClientOptions;
 import io.lettuce.core.SocketOptions;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
 import io.vertx.pgclient.PgConnectOptions;
 import io.vertx.pgclient.PgPool;
 import io.vertx.sqlclient.PoolOptions;
@@ -60,6 +79,7 @@ import org.springframework.boot.web.reactive.error.ErrorAttributes;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.core.annotation.Order;
 import org.springframework.dao.DataAccessException;
 import org.springframework.data.redis.connection.ReactiveRedisClusterConnection;
@@ -127,43 +147,189 @@ public class DataNotificationSubscriptionConfiguration {
 
     @Bean
     public HIUSubscriptionManager subscriptionManager(SubscriptionRequestRepository subscriptionRequestRepository,
-                                                      GatewayServiceClient gatewayServiceClient,
-                                                      UserServiceClient userServiceClient) {
-        return new HIUSubscriptionManager(subscriptionRequestRepository, gatewayServiceClient, userServiceClient);
+                                                      SubscriptionNotifier subscriptionNotifier,
+                                                      UserServiceClient userServiceClient,
+                                                      LinkSubscriptionIndex linkSubscriptionIndex) {
+        return new HIUSubscriptionManager(subscriptionRequestRepository,
+                subscriptionNotifier,
+                userServiceClient,
+                linkSubscriptionIndex);
+    }
+
+    @ConditionalOnProperty(value = "subscriptionmanager.outbox.enabled", havingValue = "false", matchIfMissing = true)
+    @Bean
+    public SubscriptionNotifier gatewaySubscriptionNotifier(GatewayServiceClient gatewayServiceClient) {
+        return new GatewaySubscriptionNotifier(gatewayServiceClient);
+    }
+
+    @ConditionalOnProperty(value = "subscriptionmanager.outbox.enabled", havingValue = "true")
+    @Bean
+    public SubscriptionNotifier outboxSubscriptionNotifier(NotificationOutboxRepository notificationOutboxRepository) {
+        return new OutboxSubscriptionNotifier(notificationOutboxRepository);
+    }
+
+    @ConditionalOnProperty(value = "subscriptionmanager.outbox.enabled", havingValue = "true")
+    @Bean
+    public NotificationOutboxRepository notificationOutboxRepository(@Qualifier("readWriteClient") PgPool readWriteClient,
+                                                                     QueryExecutor queryExecutor) {
+        return new NotificationOutboxRepository(readWriteClient, queryExecutor);
+    }
+
+    @ConditionalOnProperty(value = "subscriptionmanager.outbox.enabled", havingValue = "true")
+    @Bean
+    public NotificationOutboxDispatcher notificationOutboxDispatcher(NotificationOutboxRepository notificationOutboxRepository,
+                                                                     GatewayServiceClient gatewayServiceClient,
+                                                                     OutboxProperties outboxProperties) {
+        return new NotificationOutboxDispatcher(notificationOutboxRepository, gatewayServiceClient, outboxProperties);
+    }
+
+    @ConditionalOnProperty(value = "subscriptionmanager.linkSubscriptionIndex.type", havingValue = "in-memory")
+    @Bean
+    public LinkSubscriptionIndex inMemoryLinkSubscriptionIndex(
+            SubscriptionRequestRepository subscriptionRequestRepository,
+            SenderOptions senderOptions,
+            ReceiverOptions receiverOptions,
+            @Value("${subscriptionmanager.linkSubscriptionIndex.reloadInterval:300000}") long reloadInterval) {
+        return new InMemoryLinkSubscriptionIndex(subscriptionRequestRepository,
+                new LinkSubscriptionChanges(RabbitFlux.createSender(senderOptions), RabbitFlux.createReceiver(receiverOptions)),
+                Duration.ofMillis(reloadInterval));
+    }
+
+    @ConditionalOnProperty(value = "subscriptionmanager.linkSubscriptionIndex.type", havingValue = "bloom-filter")
+    @Bean
+    public LinkSubscriptionIndex bloomFilterLinkSubscriptionIndex(
+            SubscriptionRequestRepository subscriptionRequestRepository,
+            SenderOptions senderOptions,
+            ReceiverOptions receiverOptions,
+            MeterRegistry meterRegistry,
+            @Value("${subscriptionmanager.linkSubscriptionIndex.reloadInterval:300000}") long reloadInterval,
+            @Value("${subscriptionmanager.linkSubscriptionIndex.expectedPatients:1000000}") long expectedPatients,
+            @Value("${subscriptionmanager.linkSubscriptionIndex.falsePositiveProbability:0.01}") double falsePositiveProbability) {
+        return new BloomFilterLinkSubscriptionIndex(subscriptionRequestRepository,
+                new LinkSubscriptionChanges(RabbitFlux.createSender(senderOptions), RabbitFlux.createReceiver(receiverOptions)),
+                Duration.ofMillis(reloadInterval),
+                meterRegistry,
+                expectedPatients,
+                falsePositiveProbability);
+    }
+
+    @ConditionalOnProperty(value = "subscriptionmanager.linkSubscriptionIndex.type", havingValue = "none", matchIfMissing = true)
+    @Bean
+    public LinkSubscriptionIndex passThroughLinkSubscriptionIndex() {
+        return new PassThroughLinkSubscriptionIndex();
+    }
+
+    @ConditionalOnProperty(value = "subscriptionmanager.cacheMethod", havingValue = "guava", matchIfMissing = true)
+    @Bean
+    public LinkEventDeduplicator linkEventDeduplicator(
+            @Value("${subscriptionmanager.listeners.linkEventDeduplication.enabled:true}") boolean enabled,
+            @Value("${subscriptionmanager.listeners.linkEventDeduplication.maximumSize:50000}") long maximumSize,
+            @Value("${subscriptionmanager.listeners.linkEventDeduplication.expiry:1440}") long expiryInMinutes) {
+        return new LinkEventDeduplicator(enabled, maximumSize, expiryInMinutes, null);
+    }
+
+    @ConditionalOnProperty(value = "subscriptionmanager.cacheMethod", havingValue = "redis")
+    @Bean
+    public LinkEventDeduplicator sharedLinkEventDeduplicator(
+            ReactiveRedisOperations<String, String> stringReactiveRedisOperations,
+            RedisOptions redisOptions,
+            @Value("${subscriptionmanager.listeners.linkEventDeduplication.enabled:true}") boolean enabled,
+            @Value("${subscriptionmanager.listeners.linkEventDeduplication.maximumSize:50000}") long maximumSize,
+            @Value("${subscriptionmanager.listeners.linkEventDeduplication.expiry:1440}") int expiryInMinutes) {
+        return new LinkEventDeduplicator(enabled, maximumSize, expiryInMinutes,
+                new RedisCacheAdapter(stringReactiveRedisOperations, expiryInMinutes, redisOptions.getRetry()));
     }
 
     @Bean
     public HipLinkNotificationListener linkNotificationListener(ReceiverOptions receiverOptions,
+                                                                SenderOptions senderOptions,
                                                                 HIUSubscriptionManager subscriptionManager,
-                                                                ListenerProperties listenerProperties) {
+                                                                LinkEventDeduplicator linkEventDeduplicator,
+                                                                ListenerProperties listenerProperties,
+                                                                MeterRegistry meterRegistry) {
         return new HipLinkNotificationListener(RabbitFlux.createReceiver(receiverOptions),
-                subscriptionManager, listenerProperties);
+                RabbitFlux.createSender(senderOptions),
+                subscriptionManager, linkEventDeduplicator, listenerProperties, meterRegistry);
+    }
+
+    @Bean(initMethod = "migrate")
+    public DbMigration dbMigration(DbOptions dbOptions,
+                                   @Value("${subscriptionmanager.db.migration.enabled:true}") boolean enabled) {
+        return new DbMigration(dbOptions, enabled);
+    }
+
+    /**
+     * One Vert.x for both pools, with an event loop per core. The pools spread their connections over its loops.
+     */
+    @Bean(destroyMethod = "close")
+    public Vertx vertx(DbOptions dbOptions) {
+        return Vertx.vertx(new VertxOptions().setEventLoopPoolSize(dbOptions.getEventLoopSize()));
     }
 
     @Bean("readWriteClient")
-    public PgPool readWriteClient(DbOptions dbOptions) {
-        PgConnectOptions connectOptions = new PgConnectOptions()
+    @DependsOn("dbMigration")
+    public PgPool readWriteClient(Vertx vertx, DbOptions dbOptions) {
+        PgConnectOptions connectOptions = connectOptionsOf(dbOptions)
                 .setPort(dbOptions.getPort())
                 .setHost(dbOptions.getHost())
                 .setDatabase(dbOptions.getSchema())
                 .setUser(dbOptions.getUser())
                 .setPassword(dbOptions.getPassword());
 
-        PoolOptions poolOptions = new PoolOptions().setMaxSize(dbOptions.getPoolSize());
-        return PgPool.pool(connectOptions, poolOptions);
+        return PgPool.pool(vertx, connectOptions, poolOptionsOf(dbOptions, dbOptions.getPoolSize()));
     }
 
     @Bean("readOnlyClient")
-    public PgPool readOnlyClient(DbOptions dbOptions) {
-        PgConnectOptions connectOptions = new PgConnectOptions()
+    @DependsOn("dbMigration")
+    public PgPool readOnlyClient(Vertx vertx, DbOptions dbOptions) {
+        PgConnectOptions connectOptions = connectOptionsOf(dbOptions)
                 .setPort(dbOptions.getReplica().getPort())
                 .setHost(dbOptions.getReplica().getHost())
                 .setDatabase(dbOptions.getSchema())
                 .setUser(dbOptions.getReplica().getUser())
                 .setPassword(dbOptions.getReplica().getPassword());
 
-        PoolOptions poolOptions = new PoolOptions().setMaxSize(dbOptions.getReplica().getPoolSize());
-        return PgPool.pool(connectOptions, poolOptions);
+        return PgPool.pool(vertx, connectOptions, poolOptionsOf(dbOptions, dbOptions.getReplica().getPoolSize()));
+    }
+
+    /**
+     * Pool of the streamed exports, which hold a connection until their last row was read. Small and apart from the
+     * others, so that exports wait for one another rather than for the connections of the other queries. Exports
+     * read the replica when there is one, whatever its lag.
+     */
+    @Bean("streamClient")
+    @DependsOn("dbMigration")
+    public PgPool streamClient(Vertx vertx,
+                               DbOptions dbOptions,
+                               @Value("${subscriptionmanager.db.streamPoolSize:2}") int streamPoolSize,
+                               @Value("${subscriptionmanager.db.streamMaxWaitQueueSize:4}") int streamMaxWaitQueueSize) {
+        PgConnectOptions connectOptions = connectOptionsOf(dbOptions)
+                .setPort(dbOptions.getReplica().getPort())
+                .setHost(dbOptions.getReplica().getHost())
+                .setDatabase(dbOptions.getSchema())
+                .setUser(dbOptions.getReplica().getUser())
+                .setPassword(dbOptions.getReplica().getPassword());
+
+        return PgPool.pool(vertx, connectOptions, new PoolOptions()
+                .setMaxSize(streamPoolSize)
+                .setMaxWaitQueueSize(streamMaxWaitQueueSize));
+    }
+
+    private static PgConnectOptions connectOptionsOf(DbOptions dbOptions) {
+        PgConnectOptions connectOptions = new PgConnectOptions()
+                .setPipeliningLimit(dbOptions.getPipeliningLimit())
+                .setCachePreparedStatements(true)
+                .setPreparedStatementCacheMaxSize(dbOptions.getPreparedStatementCacheMaxSize());
+        connectOptions.setIdleTimeout(dbOptions.getIdleTimeout());
+        connectOptions.setIdleTimeoutUnit(TimeUnit.MILLISECONDS);
+        return connectOptions;
+    }
+
+    // A full wait queue fails the query right away instead of piling up waiters behind a saturated pool
+    private static PoolOptions poolOptionsOf(DbOptions dbOptions, int maxSize) {
+        return new PoolOptions()
+                .setMaxSize(maxSize)
+                .setMaxWaitQueueSize(dbOptions.getMaxWaitQueueSize());
     }
 
     @Bean
@@ -180,11 +346,29 @@ public class DataNotificationSubscriptionConfiguration {
         return new ServiceAuthentication(serviceAuthenticationClient, gatewayServiceProperties, accessTokenCache);
     }
 
+    @Bean
+    public HIUNotificationLimiter hiuNotificationLimiter(HIUNotificationLimitProperties hiuNotificationLimitProperties,
+                                                         MeterRegistry meterRegistry) {
+        return new HIUNotificationLimiter(hiuNotificationLimitProperties, meterRegistry);
+    }
+
+    @Bean
+    public GatewayCircuitBreakers gatewayCircuitBreakers(CircuitBreakerProperties circuitBreakerProperties,
+                                                         MeterRegistry meterRegistry) {
+        return new GatewayCircuitBreakers(circuitBreakerProperties, meterRegistry);
+    }
+
     @Bean
     public GatewayServiceClient gatewayServiceClient(@Qualifier("customBuilder") WebClient.Builder webClientBuilder,
                                                      GatewayServiceProperties gatewayServiceProperties,
-                                                     ServiceAuthentication serviceAuthentication) {
-        return new GatewayServiceClient(webClientBuilder, gatewayServiceProperties, serviceAuthentication);
+                                                     ServiceAuthentication serviceAuthentication,
+                                                     HIUNotificationLimiter hiuNotificationLimiter,
+                                                     GatewayCircuitBreakers gatewayCircuitBreakers) {
+        return new GatewayServiceClient(webClientBuilder,
+                gatewayServiceProperties,
+                serviceAuthentication,
+                hiuNotificationLimiter,
+                gatewayCircuitBreakers);
     }
 
     @Bean
@@ -195,7 +379,8 @@ public class DataNotificationSubscriptionConfiguration {
                                                                  SubscriptionProperties subscriptionProperties,
                                                                  AppPushNotificationPublisher appPushNotificationPublisher,
                                                                  UserAuthorizationServiceClient userAuthorizationServiceClient,
-                                                                 LinkServiceClient linkServiceClient) {
+                                                                 LinkServiceClient linkServiceClient,
+                                                                 LinkSubscriptionIndex linkSubscriptionIndex) {
         return new SubscriptionRequestService(
                 subscriptionRepository,
                 userServiceClient,
@@ -204,13 +389,57 @@ public class DataNotificationSubscriptionConfiguration {
                 subscriptionProperties,
                 appPushNotificationPublisher,
                 userAuthorizationServiceClient,
-                linkServiceClient);
+                linkServiceClient,
+                linkSubscriptionIndex);
+    }
+
+    @Bean
+    public ReadRouter readRouter(@Qualifier("readWriteClient") PgPool readWriteClient,
+                                 @Qualifier("readOnlyClient") PgPool readOnlyClient,
+                                 DbOptions dbOptions,
+                                 ReadRoutingProperties readRoutingProperties) {
+        return new ReadRouter(readWriteClient,
+                readOnlyClient,
+                dbOptions.hasReplica(),
+                Duration.ofMillis(readRoutingProperties.getStickyWindow()),
+                Duration.ofMillis(readRoutingProperties.getMaximumLag()),
+                Duration.ofMillis(readRoutingProperties.getProbeInterval()),
+                Duration.ofMillis(readRoutingProperties.getProbeTimeout()));
+    }
+
+    @Bean
+    public QueryMetrics queryMetrics(@Qualifier("readWriteClient") PgPool readWriteClient,
+                                     @Qualifier("readOnlyClient") PgPool readOnlyClient,
+                                     @Qualifier("streamClient") PgPool streamClient,
+                                     DbOptions dbOptions,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${subscriptionmanager.db.slowQueryThreshold:500}") long slowQueryThreshold,
+                                     @Value("${subscriptionmanager.db.streamPoolSize:2}") int streamPoolSize) {
+        var queryMetrics = new QueryMetrics(meterRegistry, Duration.ofMillis(slowQueryThreshold));
+        queryMetrics.register("readWrite", readWriteClient, dbOptions.getPoolSize());
+        queryMetrics.register("readOnly", readOnlyClient, dbOptions.getReplica().getPoolSize());
+        queryMetrics.register("stream", streamClient, streamPoolSize);
+        return queryMetrics;
+    }
+
+    @Bean
+    public QueryExecutor queryExecutor(QueryMetrics queryMetrics) {
+        return new QueryExecutor(queryMetrics);
     }
 
     @Bean
     public SubscriptionRequestRepository subscriptionRequestRepository(@Qualifier("readWriteClient") PgPool readWriteClient,
-                                                                       @Qualifier("readOnlyClient") PgPool readOnlyClient) {
-        return new SubscriptionRequestRepository(readWriteClient, readOnlyClient);
+                                                                       ReadRouter readRouter,
+                                                                       QueryExecutor queryExecutor) {
+        return new SubscriptionRequestRepository(readWriteClient, readRouter, queryExecutor);
+    }
+
+    @ConditionalOnProperty(value = "subscriptionmanager.db.hiuIdBackfill.enabled", havingValue = "true", matchIfMissing = true)
+    @Bean
+    public HiuIdBackfill hiuIdBackfill(SubscriptionRequestRepository subscriptionRequestRepository,
+                                       @Value("${subscriptionmanager.db.hiuIdBackfill.batchSize:500}") int batchSize,
+                                       @Value("${subscriptionmanager.db.hiuIdBackfill.interval:300000}") long interval) {
+        return new HiuIdBackfill(subscriptionRequestRepository, batchSize, Duration.ofMillis(interval));
     }
 
     @Bean
@@ -220,18 +449,28 @@ public class DataNotificationSubscriptionConfiguration {
 
     @Bean
     public SubscriptionRepository subscriptionRepository(
-            @Qualifier("readOnlyClient") PgPool readOnlyClient,
+            ReadRouter readRouter,
+            QueryExecutor queryExecutor,
             @Qualifier("readWriteClient") PgPool readWriteClient,
-            SubscriptionResponseMapper subscriptionResponseMapper) {
-        return new SubscriptionRepository(readOnlyClient, readWriteClient, subscriptionResponseMapper);
+            @Qualifier("streamClient") PgPool streamClient,
+            SubscriptionResponseMapper subscriptionResponseMapper,
+            @Value("${subscriptionmanager.db.streamFetchSize:100}") int streamFetchSize,
+            @Value("${subscriptionmanager.db.streamStallTimeout:30000}") long streamStallTimeout) {
+        return new SubscriptionRepository(readRouter, queryExecutor, readWriteClient, streamClient,
+                subscriptionResponseMapper, streamFetchSize, Duration.ofMillis(streamStallTimeout));
     }
 
     @Bean
     public SubscriptionService subscriptionService(SubscriptionRepository subscriptionRepository,
                                                    UserServiceClient userServiceClient,
                                                    GatewayServiceClient gatewayServiceClient,
-                                                   LinkServiceClient linkServiceClient) {
-        return new SubscriptionService(userServiceClient, gatewayServiceClient, subscriptionRepository, linkServiceClient);
+                                                   LinkServiceClient linkServiceClient,
+                                                   LinkSubscriptionIndex linkSubscriptionIndex) {
+        return new SubscriptionService(userServiceClient,
+                gatewayServiceClient,
+                subscriptionRepository,
+                linkServiceClient,
+                linkSubscriptionIndex);
     }
 
     @Bean("identityServiceJWKSet")
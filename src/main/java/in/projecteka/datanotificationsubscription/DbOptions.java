@@ -10,6 +10,10 @@ import org.springframework.boot.context.properties.ConstructorBinding;
 @Getter
 @AllArgsConstructor
 public class DbOptions {
+    private static final int DEFAULT_PIPELINING_LIMIT = 256;
+    private static final int DEFAULT_PREPARED_STATEMENT_CACHE_MAX_SIZE = 256;
+    private static final int DEFAULT_MAX_WAIT_QUEUE_SIZE = 128;
+    private static final int DEFAULT_IDLE_TIMEOUT = 600000;
     private final String host;
     private final int port;
     private final String schema;
@@ -20,8 +24,18 @@ public class DbOptions {
     private final boolean replicaReadEnabled;
     private final Replica replica;
 
+    private final int pipeliningLimit;
+    private final int preparedStatementCacheMaxSize;
+    private final int maxWaitQueueSize;
+    private final int idleTimeout;
+    private final int eventLoopSize;
+
+    public boolean hasReplica() {
+        return replica != null && replicaReadEnabled;
+    }
+
     public Replica getReplica() {
-        return replica != null && replicaReadEnabled
+        return hasReplica()
                 ? replica
                 : new Replica(host, port, user, password, getReadPoolSize());
     }
@@ -31,8 +45,28 @@ public class DbOptions {
     }
 
     public int getPoolSize() {
-        return replica != null && replicaReadEnabled
+        return hasReplica()
                 ? poolSize
                 : poolSize / 2;
     }
+
+    public int getPipeliningLimit() {
+        return pipeliningLimit > 0 ? pipeliningLimit : DEFAULT_PIPELINING_LIMIT;
+    }
+
+    public int getPreparedStatementCacheMaxSize() {
+        return preparedStatementCacheMaxSize > 0 ? preparedStatementCacheMaxSize : DEFAULT_PREPARED_STATEMENT_CACHE_MAX_SIZE;
+    }
+
+    public int getMaxWaitQueueSize() {
+        return maxWaitQueueSize > 0 ? maxWaitQueueSize : DEFAULT_MAX_WAIT_QUEUE_SIZE;
+    }
+
+    public int getIdleTimeout() {
+        return idleTimeout > 0 ? idleTimeout : DEFAULT_IDLE_TIMEOUT;
+    }
+
+    public int getEventLoopSize() {
+        return eventLoopSize > 0 ? eventLoopSize : Runtime.getRuntime().availableProcessors();
+    }
 }
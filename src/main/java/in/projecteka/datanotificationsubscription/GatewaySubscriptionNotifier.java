@@ -0,0 +1,21 @@
+package in.projecteka.datanotificationsubscription;
+
+import in.projecteka.datanotificationsubscription.common.GatewayServiceClient;
+import in.projecteka.datanotificationsubscription.subscription.model.SubscriptionNotification;
+import lombok.AllArgsConstructor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+@AllArgsConstructor
+public class GatewaySubscriptionNotifier implements SubscriptionNotifier {
+    private final GatewayServiceClient gatewayServiceClient;
+
+    @Override
+    public Mono<Void> send(List<SubscriptionNotification> notifications) {
+        return Flux.fromIterable(notifications)
+                .flatMap(notification -> gatewayServiceClient.notifyForSubscription(notification.toRequest(), notification.getHiuId()))
+                .then();
+    }
+}
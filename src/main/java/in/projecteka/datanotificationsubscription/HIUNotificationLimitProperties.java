@@ -0,0 +1,62 @@
+package in.projecteka.datanotificationsubscription;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+
+import java.util.Map;
+
+@ConfigurationProperties(prefix = "subscriptionmanager.hiu-notification-limits")
+@AllArgsConstructor
+@Getter
+@ConstructorBinding
+public class HIUNotificationLimitProperties {
+    private static final Limits DEFAULT_LIMITS = new Limits(0, 0, 0, 0, 0);
+    private final boolean enabled;
+    private final Limits defaults;
+    private final Map<String, Limits> hius;
+
+    public Limits limitsOf(String hiuId) {
+        if (hius != null && hius.containsKey(hiuId)) {
+            return hius.get(hiuId);
+        }
+        return defaults != null ? defaults : DEFAULT_LIMITS;
+    }
+
+    @AllArgsConstructor
+    @Getter
+    @ConstructorBinding
+    public static class Limits {
+        private static final double DEFAULT_RATE_PER_SECOND = 50;
+        private static final int DEFAULT_BURST = 50;
+        private static final int DEFAULT_MAX_IN_FLIGHT = 10;
+        private static final int DEFAULT_MAX_QUEUED = 100;
+        private static final long DEFAULT_MAX_QUEUE_WAIT = 5000;
+        private final double ratePerSecond;
+        private final int burst;
+        private final int maxInFlight;
+        private final int maxQueued;
+        private final long maxQueueWait;
+
+        public double getRatePerSecond() {
+            return ratePerSecond > 0 ? ratePerSecond : DEFAULT_RATE_PER_SECOND;
+        }
+
+        public int getBurst() {
+            return burst > 0 ? burst : DEFAULT_BURST;
+        }
+
+        public int getMaxInFlight() {
+            return maxInFlight > 0 ? maxInFlight : DEFAULT_MAX_IN_FLIGHT;
+        }
+
+        public int getMaxQueued() {
+            return maxQueued > 0 ? maxQueued : DEFAULT_MAX_QUEUED;
+        }
+
+        public long getMaxQueueWait() {
+            return maxQueueWait > 0 ? maxQueueWait : DEFAULT_MAX_QUEUE_WAIT;
+        }
+    }
+}
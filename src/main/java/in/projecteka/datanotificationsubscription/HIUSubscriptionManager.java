@@ -2,13 +2,13 @@ package in.projecteka.datanotificationsubscription;
 
 import in.projecteka.datanotificationsubscription.clients.UserServiceClient;
 import in.projecteka.datanotificationsubscription.clients.model.User;
-import in.projecteka.datanotificationsubscription.common.GatewayServiceClient;
 import in.projecteka.datanotificationsubscription.common.model.PatientCareContext;
+import in.projecteka.datanotificationsubscription.hipLink.LinkEventKey;
 import in.projecteka.datanotificationsubscription.hipLink.NewCCLinkEvent;
+import in.projecteka.datanotificationsubscription.subscription.LinkSubscriptionIndex;
 import in.projecteka.datanotificationsubscription.subscription.Subscription;
 import in.projecteka.datanotificationsubscription.subscription.SubscriptionRequestRepository;
 import in.projecteka.datanotificationsubscription.subscription.model.Category;
-import in.projecteka.datanotificationsubscription.subscription.model.HIUSubscriptionNotificationRequest;
 import in.projecteka.datanotificationsubscription.subscription.model.HipDetail;
 import in.projecteka.datanotificationsubscription.subscription.model.NotificationContent;
 import in.projecteka.datanotificationsubscription.subscription.model.NotificationContext;
@@ -22,48 +22,92 @@ import org.springframework.util.CollectionUtils;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @AllArgsConstructor
 public class HIUSubscriptionManager {
     private final SubscriptionRequestRepository subscriptionRequestRepository;
-    private final GatewayServiceClient gatewayServiceClient;
+    private final SubscriptionNotifier subscriptionNotifier;
     private final UserServiceClient userServiceClient;
+    private final LinkSubscriptionIndex linkSubscriptionIndex;
 
     private final Logger logger = LoggerFactory.getLogger(HIUSubscriptionManager.class);
 
     public Flux<Void> notifySubscribers(NewCCLinkEvent ccLinkEvent) {
-        String healthId = ccLinkEvent.getHealthNumber();
-        String hipId = ccLinkEvent.getHipId();
-        Mono<Map<String, List<Subscription>>> subscriptionsByHIU = subscriptionRequestRepository
-                .findLinkSubscriptionsFor(healthId, hipId)
-                .map(subscriptions -> subscriptions.stream()
-                        .filter(subscription -> !subscription.getHiu().getId().equals(hipId))
-                        .collect(Collectors.groupingBy(subscription -> subscription.getHiu().getId()))
-                )
-                .map(subscriptionPerHIU -> filterIfHIPExcluded(subscriptionPerHIU, ccLinkEvent.getHipId()))
-                .doOnNext(logSubscribers(ccLinkEvent));
-        Mono<User> userMono = userServiceClient.userOf(healthId);
+        return notifySubscribers(ccLinkEvent, LinkEventKey.of(ccLinkEvent));
+    }
+
+    /**
+     * Notifies the subscribers of a link event, identifying the notifications by eventKey, see
+     * {@link LinkEventKey#of(UUID, String)}.
+     */
+    public Flux<Void> notifySubscribers(NewCCLinkEvent ccLinkEvent, UUID eventKey) {
+        if (!mayHaveSubscribers(ccLinkEvent)) {
+            logger.info("No active subscribers for patient-id {} and hip {}", ccLinkEvent.getHealthNumber(), ccLinkEvent.getHipId());
+            return Flux.empty();
+        }
+        return subscriptionRequestRepository
+                .findLinkSubscriptionsFor(ccLinkEvent.getHealthNumber(), ccLinkEvent.getHipId())
+                .defaultIfEmpty(List.of())
+                .flatMapMany(subscriptions -> notifySubscribers(ccLinkEvent, eventKey, subscriptions, userServiceClient::userOf));
+    }
+
+    /**
+     * Notifies the subscribers of a link event whose subscriptions were looked up together with the rest of its
+     * batch, see {@link #findLinkSubscriptionsFor(List)}. Patients are identified once per batch.
+     */
+    public Flux<Void> notifySubscribers(NewCCLinkEvent ccLinkEvent, UUID eventKey, LinkSubscriptions linkSubscriptions) {
+        return notifySubscribers(ccLinkEvent, eventKey, linkSubscriptions.of(ccLinkEvent), linkSubscriptions::identityOf);
+    }
+
+    public Mono<LinkSubscriptions> findLinkSubscriptionsFor(List<NewCCLinkEvent> ccLinkEvents) {
+        var patientIdentities = new PatientIdentities(userServiceClient);
+        List<NewCCLinkEvent> eventsWithSubscribers = ccLinkEvents.stream()
+                .filter(this::mayHaveSubscribers)
+                .collect(Collectors.toList());
+        if (eventsWithSubscribers.isEmpty()) {
+            return Mono.just(new LinkSubscriptions(Map.of(), patientIdentities));
+        }
+        Set<String> healthIds = eventsWithSubscribers.stream().map(NewCCLinkEvent::getHealthNumber).collect(Collectors.toSet());
+        Set<String> hipIds = eventsWithSubscribers.stream().map(NewCCLinkEvent::getHipId).collect(Collectors.toSet());
+        return subscriptionRequestRepository.findLinkSubscriptionsFor(healthIds, hipIds)
+                .map(subscriptions -> new LinkSubscriptions(subscriptions.stream()
+                        .collect(Collectors.groupingBy(subscription -> subscription.getPatient().getId())),
+                        patientIdentities));
+    }
 
-        //Temp: Fetch User healthid and pass that as patient-id instead of healthid number
-        Mono<List<SubscriptionNotification>> notificationEvents = Mono.zip(userMono, subscriptionsByHIU)
-                .map(tuple -> {
-                    User user = tuple.getT1();
-                    Map<String, List<Subscription>> hiuSubscriptions = tuple.getT2();
-                    return hiuSubscriptions.entrySet().stream().map(
-                            subscriptionForHIU -> buildNotifications(ccLinkEvent, subscriptionForHIU, user.getIdentifier())).collect(Collectors.toList()
-                    );
-                });
+    private Flux<Void> notifySubscribers(NewCCLinkEvent ccLinkEvent,
+                                         UUID eventKey,
+                                         List<Subscription> subscriptions,
+                                         Function<String, Mono<User>> identityOf) {
+        return Flux.defer(() -> {
+            String hipId = ccLinkEvent.getHipId();
+            Map<String, List<Subscription>> subscriptionsByHIU = filterIfHIPExcluded(subscriptions.stream()
+                    .filter(subscription -> subscription.getHiu().getId() != null
+                            && !subscription.getHiu().getId().equals(hipId))
+                    .collect(Collectors.groupingBy(subscription -> subscription.getHiu().getId())), hipId);
+            logSubscribers(ccLinkEvent).accept(subscriptionsByHIU);
+            if (subscriptionsByHIU.isEmpty()) {
+                return Flux.empty();
+            }
+            //Temp: Fetch User healthid and pass that as patient-id instead of healthid number
+            return identityOf.apply(ccLinkEvent.getHealthNumber())
+                    .map(user -> subscriptionsByHIU.entrySet().stream()
+                            .map(subscriptionForHIU -> buildNotifications(ccLinkEvent, eventKey, subscriptionForHIU, user.getIdentifier()))
+                            .collect(Collectors.toList()))
+                    .flatMap(subscriptionNotifier::send)
+                    .flux();
+        });
+    }
 
-        Flux<SubscriptionNotification> notificationFlux = notificationEvents.flatMapMany(Flux::fromIterable);
-        return notificationFlux
-                .flatMap(this::notifyHIU);
+    private boolean mayHaveSubscribers(NewCCLinkEvent ccLinkEvent) {
+        return linkSubscriptionIndex.mayHaveSubscribers(ccLinkEvent.getHealthNumber(), ccLinkEvent.getHipId());
     }
 
     private Map<String, List<Subscription>> filterIfHIPExcluded(Map<String, List<Subscription>> subscriptionsByHIU, String hipId) {
@@ -91,16 +135,9 @@ public class HIUSubscriptionManager {
         };
     }
 
-    private Mono<Void> notifyHIU(SubscriptionNotification notification) {
-        HIUSubscriptionNotificationRequest notificationRequest = HIUSubscriptionNotificationRequest.builder()
-                .requestId(UUID.randomUUID())
-                .timestamp(LocalDateTime.now(ZoneOffset.UTC))
-                .event(notification.getEvent())
-                .build();
-        return gatewayServiceClient.notifyForSubscription(notificationRequest, notification.getHiuId());
-    }
-
-    private SubscriptionNotification buildNotifications(NewCCLinkEvent ccLinkEvent, Map.Entry<String, List<Subscription>> hiuSubscription, String patientId) {
+    private SubscriptionNotification buildNotifications(NewCCLinkEvent ccLinkEvent,
+                                                        UUID eventKey,
+                                                        Map.Entry<String, List<Subscription>> hiuSubscription, String patientId) {
         //if there are multiple subscriptions applicable for the same HIU, send just one notification
         Subscription subscription = hiuSubscription.getValue().get(0);
         NotificationContent notificationContent = NotificationContent.builder()
@@ -110,7 +147,7 @@ public class HIUSubscriptionManager {
                 .build();
 
         NotificationEvent notificationEvent = NotificationEvent.builder()
-                .id(UUID.randomUUID())
+                .id(LinkEventKey.of(eventKey, String.valueOf(subscription.getId())))
                 .published(ccLinkEvent.getTimestamp())
                 .category(Category.LINK)
                 .subscriptionId(subscription.getId())
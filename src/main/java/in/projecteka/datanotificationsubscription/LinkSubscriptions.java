@@ -0,0 +1,32 @@
+package in.projecteka.datanotificationsubscription;
+
+import in.projecteka.datanotificationsubscription.clients.model.User;
+import in.projecteka.datanotificationsubscription.hipLink.NewCCLinkEvent;
+import in.projecteka.datanotificationsubscription.subscription.Subscription;
+import lombok.AllArgsConstructor;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Link subscriptions of a batch of link events, along with the identities of their patients.
+ */
+@AllArgsConstructor
+public class LinkSubscriptions {
+    private final Map<String, List<Subscription>> subscriptionsByPatient;
+    private final PatientIdentities patientIdentities;
+
+    public List<Subscription> of(NewCCLinkEvent linkEvent) {
+        return subscriptionsByPatient.getOrDefault(linkEvent.getHealthNumber(), List.of())
+                .stream()
+                .filter(subscription -> subscription.getHip() == null
+                        || subscription.getHip().getId().equals(linkEvent.getHipId()))
+                .collect(Collectors.toList());
+    }
+
+    public Mono<User> identityOf(String healthId) {
+        return patientIdentities.of(healthId);
+    }
+}
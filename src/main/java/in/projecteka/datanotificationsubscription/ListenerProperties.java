@@ -10,6 +10,50 @@ import org.springframework.boot.context.properties.ConstructorBinding;
 @Getter
 @ConstructorBinding
 public class ListenerProperties {
+    private static final long DEFAULT_LINK_EVENT_RETRY_INTERVAL = 10000;
+    private static final long DEFAULT_LINK_EVENT_MAXIMUM_RETRY_INTERVAL = 300000;
+    private static final int DEFAULT_LINK_EVENT_PREFETCH_COUNT = 20;
+    private static final int DEFAULT_LINK_EVENT_LANE_QUEUE_DEPTH = 16;
+    private static final int DEFAULT_LINK_EVENT_BATCH_SIZE = 20;
+    private static final long DEFAULT_LINK_EVENT_BATCH_WINDOW = 50;
     private final int linkEventMaximumRetries;
     private final long linkEventRetryInterval;
+    private final long linkEventMaximumRetryInterval;
+    private final int linkEventPrefetchCount;
+    private final int linkEventLanes;
+    private final int linkEventLaneQueueDepth;
+    private final boolean linkEventBatchEnabled;
+    private final int linkEventBatchSize;
+    private final long linkEventBatchWindow;
+    private final long linkEventCoalescingWindow;
+
+    public long getLinkEventRetryInterval() {
+        return linkEventRetryInterval > 0 ? linkEventRetryInterval : DEFAULT_LINK_EVENT_RETRY_INTERVAL;
+    }
+
+    public long getLinkEventMaximumRetryInterval() {
+        return linkEventMaximumRetryInterval > 0
+               ? linkEventMaximumRetryInterval
+               : DEFAULT_LINK_EVENT_MAXIMUM_RETRY_INTERVAL;
+    }
+
+    public int getLinkEventPrefetchCount() {
+        return linkEventPrefetchCount > 0 ? linkEventPrefetchCount : DEFAULT_LINK_EVENT_PREFETCH_COUNT;
+    }
+
+    public int getLinkEventLanes() {
+        return linkEventLanes > 0 ? linkEventLanes : Runtime.getRuntime().availableProcessors();
+    }
+
+    public int getLinkEventLaneQueueDepth() {
+        return linkEventLaneQueueDepth > 0 ? linkEventLaneQueueDepth : DEFAULT_LINK_EVENT_LANE_QUEUE_DEPTH;
+    }
+
+    public int getLinkEventBatchSize() {
+        return linkEventBatchSize > 0 ? linkEventBatchSize : DEFAULT_LINK_EVENT_BATCH_SIZE;
+    }
+
+    public long getLinkEventBatchWindow() {
+        return linkEventBatchWindow > 0 ? linkEventBatchWindow : DEFAULT_LINK_EVENT_BATCH_WINDOW;
+    }
 }
@@ -0,0 +1,62 @@
+package in.projecteka.datanotificationsubscription;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+
+@ConfigurationProperties(prefix = "subscriptionmanager.outbox")
+@AllArgsConstructor
+@Getter
+@ConstructorBinding
+public class OutboxProperties {
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final long DEFAULT_POLL_INTERVAL = 1000;
+    private static final long DEFAULT_LEASE_DURATION = 60000;
+    private static final int DEFAULT_CONCURRENCY = 16;
+    private static final int DEFAULT_CONCURRENCY_PER_HIU = 2;
+    private static final int DEFAULT_MAXIMUM_ATTEMPTS = 10;
+    private static final long DEFAULT_RETRY_INTERVAL = 5000;
+    private static final long DEFAULT_MAXIMUM_RETRY_INTERVAL = 300000;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long pollInterval;
+    private final long leaseDuration;
+    private final int concurrency;
+    private final int concurrencyPerHiu;
+    private final int maximumAttempts;
+    private final long retryInterval;
+    private final long maximumRetryInterval;
+
+    public int getBatchSize() {
+        return batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+    }
+
+    public long getPollInterval() {
+        return pollInterval > 0 ? pollInterval : DEFAULT_POLL_INTERVAL;
+    }
+
+    public long getLeaseDuration() {
+        return leaseDuration > 0 ? leaseDuration : DEFAULT_LEASE_DURATION;
+    }
+
+    public int getConcurrency() {
+        return concurrency > 0 ? concurrency : DEFAULT_CONCURRENCY;
+    }
+
+    public int getConcurrencyPerHiu() {
+        return concurrencyPerHiu > 0 ? concurrencyPerHiu : DEFAULT_CONCURRENCY_PER_HIU;
+    }
+
+    public int getMaximumAttempts() {
+        return maximumAttempts > 0 ? maximumAttempts : DEFAULT_MAXIMUM_ATTEMPTS;
+    }
+
+    public long getRetryInterval() {
+        return retryInterval > 0 ? retryInterval : DEFAULT_RETRY_INTERVAL;
+    }
+
+    public long getMaximumRetryInterval() {
+        return maximumRetryInterval > 0 ? maximumRetryInterval : DEFAULT_MAXIMUM_RETRY_INTERVAL;
+    }
+}
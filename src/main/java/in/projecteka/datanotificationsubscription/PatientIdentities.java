@@ -0,0 +1,27 @@
+package in.projecteka.datanotificationsubscription;
+
+import in.projecteka.datanotificationsubscription.clients.UserServiceClient;
+import in.projecteka.datanotificationsubscription.clients.model.User;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Identities of the patients of one batch of link events, each looked up at most once however many events of
+ * the batch are for the patient. Failed lookups are forgotten so a retried event looks the patient up again.
+ */
+public class PatientIdentities {
+    private final UserServiceClient userServiceClient;
+    private final Map<String, Mono<User>> identities = new ConcurrentHashMap<>();
+
+    public PatientIdentities(UserServiceClient userServiceClient) {
+        this.userServiceClient = userServiceClient;
+    }
+
+    public Mono<User> of(String healthId) {
+        return identities.computeIfAbsent(healthId, id -> userServiceClient.userOf(id)
+                .doOnError(throwable -> identities.remove(id))
+                .cache());
+    }
+}
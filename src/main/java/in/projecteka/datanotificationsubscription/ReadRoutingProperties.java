@@ -0,0 +1,37 @@
+package in.projecteka.datanotificationsubscription;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConstructorBinding;
+
+@ConfigurationProperties(prefix = "subscriptionmanager.db.readrouting")
+@AllArgsConstructor
+@Getter
+@ConstructorBinding
+public class ReadRoutingProperties {
+    private static final long DEFAULT_STICKY_WINDOW = 5000;
+    private static final long DEFAULT_MAXIMUM_LAG = 2000;
+    private static final long DEFAULT_PROBE_INTERVAL = 1000;
+    private static final long DEFAULT_PROBE_TIMEOUT = 500;
+    private final long stickyWindow;
+    private final long maximumLag;
+    private final long probeInterval;
+    private final long probeTimeout;
+
+    public long getStickyWindow() {
+        return stickyWindow > 0 ? stickyWindow : DEFAULT_STICKY_WINDOW;
+    }
+
+    public long getMaximumLag() {
+        return maximumLag > 0 ? maximumLag : DEFAULT_MAXIMUM_LAG;
+    }
+
+    public long getProbeInterval() {
+        return probeInterval > 0 ? probeInterval : DEFAULT_PROBE_INTERVAL;
+    }
+
+    public long getProbeTimeout() {
+        return probeTimeout > 0 ? probeTimeout : DEFAULT_PROBE_TIMEOUT;
+    }
+}
@@ -0,0 +1,13 @@
+package in.projecteka.datanotificationsubscription;
+
+import in.projecteka.datanotificationsubscription.subscription.model.SubscriptionNotification;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Hands over the HIU notifications of one link event, either straight to the gateway or to the outbox.
+ */
+public interface SubscriptionNotifier {
+    Mono<Void> send(List<SubscriptionNotification> notifications);
+}
@@ -35,7 +35,7 @@ public class AppPushNotificationPublisher {
     }
 
     private Mono<Void> sendMessage(Object message, String exchange, String routingKey) {
-        TraceableMessage traceableMessage = TraceableMessage.builder()
+        TraceableMessage<Object> traceableMessage = TraceableMessage.builder()
                 .correlationId(MDC.get(CORRELATION_ID))
                 .message(message)
                 .build();
@@ -0,0 +1,160 @@
+package in.projecteka.datanotificationsubscription.common;
+
+import in.projecteka.datanotificationsubscription.CircuitBreakerProperties;
+import reactor.core.publisher.Mono;
+
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+import static in.projecteka.datanotificationsubscription.common.ClientError.gatewayCircuitOpen;
+
+/**
+ * Count based circuit breaker. It opens once failureRateThreshold percent of the last slidingWindowSize calls
+ * failed (after at least minimumCalls), rejects every call for openDuration, then lets halfOpenProbes calls
+ * through: the circuit closes when all of them succeed and opens again on the first failure. Calls started in
+ * an earlier state are not counted against the current one.
+ */
+public class CircuitBreaker {
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int slidingWindowSize;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final long openDuration;
+    private final int halfOpenProbes;
+    private final LongSupplier clock;
+    private final boolean[] outcomes;
+    private State state = State.CLOSED;
+    private long generation;
+    private int next;
+    private int recorded;
+    private int failures;
+    private long openedAt;
+    private int probesInFlight;
+    private int probesSucceeded;
+
+    public CircuitBreaker(CircuitBreakerProperties properties, LongSupplier clock) {
+        this.slidingWindowSize = properties.getSlidingWindowSize();
+        this.minimumCalls = properties.getMinimumCalls();
+        this.failureRateThreshold = properties.getFailureRateThreshold();
+        this.openDuration = properties.getOpenDuration();
+        this.halfOpenProbes = properties.getHalfOpenProbes();
+        this.clock = clock;
+        this.outcomes = new boolean[slidingWindowSize];
+    }
+
+    /**
+     * Fails fast with {@link ClientError#gatewayCircuitOpen()} while the circuit is open. Errors matching
+     * isFailure count as failures. Calls which never reached the gateway, rejected by another circuit or throttled
+     * by the HIU notification limiter, and cancellations are not counted. Anything else counts as a success.
+     */
+    public <T> Mono<T> protect(Mono<T> call, Predicate<Throwable> isFailure) {
+        return Mono.defer(() -> {
+            long permit = tryAcquire();
+            if (permit < 0) {
+                return Mono.error(gatewayCircuitOpen());
+            }
+            return call
+                    .doOnSuccess(result -> onSuccess(permit))
+                    .doOnError(error -> {
+                        if (isFailure.test(error)) {
+                            onFailure(permit);
+                        } else if (isNotAttempted(error)) {
+                            onIgnored(permit);
+                        } else {
+                            onSuccess(permit);
+                        }
+                    })
+                    .doOnCancel(() -> onIgnored(permit));
+        });
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    synchronized long tryAcquire() {
+        if (state == State.OPEN) {
+            if (clock.getAsLong() - openedAt < openDuration) {
+                return -1;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesInFlight + probesSucceeded >= halfOpenProbes) {
+                return -1;
+            }
+            probesInFlight++;
+        }
+        return generation;
+    }
+
+    synchronized void onSuccess(long permit) {
+        if (permit != generation) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            probesInFlight--;
+            probesSucceeded++;
+            if (probesSucceeded >= halfOpenProbes) {
+                transitionTo(State.CLOSED);
+            }
+            return;
+        }
+        record(false);
+    }
+
+    synchronized void onFailure(long permit) {
+        if (permit != generation) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            transitionTo(State.OPEN);
+            return;
+        }
+        record(true);
+        if (recorded >= minimumCalls && failures * 100 >= failureRateThreshold * recorded) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    synchronized void onIgnored(long permit) {
+        if (permit == generation && state == State.HALF_OPEN) {
+            probesInFlight--;
+        }
+    }
+
+    private void record(boolean failed) {
+        if (recorded == slidingWindowSize) {
+            failures -= outcomes[next] ? 1 : 0;
+        } else {
+            recorded++;
+        }
+        outcomes[next] = failed;
+        failures += failed ? 1 : 0;
+        next = (next + 1) % slidingWindowSize;
+    }
+
+    private void transitionTo(State newState) {
+        state = newState;
+        generation++;
+        next = 0;
+        recorded = 0;
+        failures = 0;
+        probesInFlight = 0;
+        probesSucceeded = 0;
+        if (newState == State.OPEN) {
+            openedAt = clock.getAsLong();
+        }
+    }
+
+    private static boolean isNotAttempted(Throwable error) {
+        if (!(error instanceof ClientError)) {
+            return false;
+        }
+        ErrorCode errorCode = ((ClientError) error).getErrorCode();
+        return errorCode == ErrorCode.GATEWAY_CIRCUIT_OPEN || errorCode == ErrorCode.HIU_NOTIFICATIONS_THROTTLED;
+    }
+}
@@ -5,10 +5,13 @@ import lombok.ToString;
 import org.springframework.http.HttpStatus;
 
 import static in.projecteka.datanotificationsubscription.common.ErrorCode.BAD_REQUEST_FROM_GATEWAY;
+import static in.projecteka.datanotificationsubscription.common.ErrorCode.GATEWAY_CIRCUIT_OPEN;
+import static in.projecteka.datanotificationsubscription.common.ErrorCode.HIU_NOTIFICATIONS_THROTTLED;
 import static in.projecteka.datanotificationsubscription.common.ErrorCode.INVALID_SUBSCRIPTION_APPROVAL_REQUEST;
 import static in.projecteka.datanotificationsubscription.common.ErrorCode.SUBSCRIPTION_REQUEST_EXPIRED;
 import static in.projecteka.datanotificationsubscription.common.ErrorCode.SUBSCRIPTION_REQUEST_NOT_FOUND;
 import static in.projecteka.datanotificationsubscription.common.ErrorCode.INVALID_DATE_RANGE;
+import static in.projecteka.datanotificationsubscription.common.ErrorCode.INVALID_PAGE_CURSOR;
 import static in.projecteka.datanotificationsubscription.common.ErrorCode.INVALID_REQUEST;
 import static in.projecteka.datanotificationsubscription.common.ErrorCode.INVALID_TOKEN;
 import static in.projecteka.datanotificationsubscription.common.ErrorCode.NETWORK_SERVICE_ERROR;
@@ -17,6 +20,7 @@ import static in.projecteka.datanotificationsubscription.common.ErrorCode.USER_N
 import static org.springframework.http.HttpStatus.BAD_REQUEST;
 import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
 import static org.springframework.http.HttpStatus.NOT_FOUND;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
 import static org.springframework.http.HttpStatus.TOO_MANY_REQUESTS;
 import static org.springframework.http.HttpStatus.UNAUTHORIZED;
 
@@ -50,6 +54,16 @@ public class ClientError extends Throwable {
                 new Error(INVALID_REQUEST, "Too many requests from gateway")));
     }
 
+    public static ClientError hiuNotificationsThrottled() {
+        return new ClientError(TOO_MANY_REQUESTS, new ErrorRepresentation(
+                new Error(HIU_NOTIFICATIONS_THROTTLED, "Too many notifications pending for the HIU")));
+    }
+
+    public static ClientError gatewayCircuitOpen() {
+        return new ClientError(SERVICE_UNAVAILABLE,
+                new ErrorRepresentation(new Error(GATEWAY_CIRCUIT_OPEN, CANNOT_PROCESS_REQUEST_TRY_LATER)));
+    }
+
     public static ClientError unknownErrorOccurred() {
         return internalServerError("Unknown error occurred");
     }
@@ -69,6 +83,11 @@ public class ClientError extends Throwable {
                 new ErrorRepresentation(new Error(INVALID_DATE_RANGE, "Date Range given is invalid")));
     }
 
+    public static ClientError invalidPageCursor() {
+        return new ClientError(BAD_REQUEST,
+                new ErrorRepresentation(new Error(INVALID_PAGE_CURSOR, "Page cursor is invalid")));
+    }
+
     public static ClientError invalidSubscriptionApprovalRequest(String message) {
         return new ClientError(BAD_REQUEST,
                 new ErrorRepresentation(new Error(INVALID_SUBSCRIPTION_APPROVAL_REQUEST, message)));
@@ -24,13 +24,15 @@ public class Constants {
     public static final String AUTHORIZATION = "Authorization";
 
     public static final String SUBSCRIPTION_REQUEST_INIT_URL_PATH = "/subscription-requests/cm/on-init";
-    public static final String GET_SERVICE_INFO = "/hi-services/%s";
+    public static final String HI_SERVICES = "/hi-services";
+    public static final String GET_SERVICE_INFO = HI_SERVICES + "/%s";
     public static final String SUBSCRIPTION_HIU_NOTIFY = "/subscriptions/hiu/notify";
     public static final String SUBSCRIPTION_REQUEST_HIU_NOTIFY = "/subscription-requests/hiu/notify";
     public static final String SUBSCRIPTION_REQUEST_HIU_ON_NOTIFY = "/v0.5/subscription-requests/hiu/on-notify";
     public static final String SUBSCRIPTION_HIU_ON_NOTIFY = "/v0.5/subscriptions/hiu/on-notify";
 
     public static final String INTERNAL_PATH_SUBSCRIPTIONS = "/internal/subscriptions";
+    public static final String INTERNAL_PATH_SUBSCRIPTIONS_EXPORT = "/internal/subscriptions/export";
     public static final String INTERNAL_PATH_APPROVE_SUBSCRIPTION_REQUESTS = "/internal/patients/{patient-id}/subscription-requests/{request-id}/approve";
     public static final String INTERNAL_PATH_PATIENT_SUBSCRIPTION_REQUESTS_BY_HIU = "/internal/patients/{patient-id}/subscription-requests/{hiu-id}";
     public static final String INTERNAL_PATH_SUBSCRIPTION_REQUEST_DETAILS = "/internal/subscription-requests/{request-id}";
@@ -41,6 +43,10 @@ public class Constants {
     public static final String HIP_LINK_QUEUE = "cm-hip-link-queue";
     public static final String APP_PUSH_NOTIFICATION_QUEUE = "app-push-notification-queue";
     public static final String CM_EXCHANGE = "exchange";
+    public static final String DEAD_LETTER_EXCHANGE = "data-notification-subscription-dead-letter-exchange";
+    public static final String PARKING_EXCHANGE = "data-notification-subscription-parking.exchange";
+    public static final String LINK_SUBSCRIPTION_CHANGES_EXCHANGE = "data-notification-subscription-link-subscription-changes.exchange";
+    public static final String HDR_RETRY_COUNT = "x-retry-count";
 
     public static final String INCLUDE_ALL_HIPS_CODE = "ALL";
 }
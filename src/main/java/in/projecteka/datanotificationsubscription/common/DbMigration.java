@@ -0,0 +1,72 @@
+package in.projecteka.datanotificationsubscription.common;
+
+import in.projecteka.datanotificationsubscription.DbOptions;
+import org.flywaydb.core.Flyway;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+
+/**
+ * Brings the schema up to the versioned migrations under db/migration before the pools are created. A database
+ * which predates the migrations is taken to be at version 1, the schema they start from.
+ * <p>
+ * Indexes on the live tables are built with CREATE INDEX CONCURRENTLY, so that they do not block writes while they
+ * build. Such a migration runs outside of a transaction; if it fails half way the index it was building is left
+ * invalid, and has to be dropped before migrating again.
+ * <p>
+ * Also runs on its own, ahead of a deployment which has migration at startup disabled: {@code ./gradlew migrateDb}
+ * or {@code java -cp <jar> -Dloader.main=in.projecteka.datanotificationsubscription.common.DbMigration
+ * org.springframework.boot.loader.PropertiesLauncher}, connecting with the same environment variables as the
+ * service.
+ */
+public class DbMigration {
+    private static final Logger logger = LoggerFactory.getLogger(DbMigration.class);
+    private static final String LOCATION = "classpath:db/migration";
+    private static final String BASELINE_VERSION = "1";
+
+    private final DbOptions dbOptions;
+    private final boolean enabled;
+
+    public DbMigration(DbOptions dbOptions, boolean enabled) {
+        this.dbOptions = dbOptions;
+        this.enabled = enabled;
+    }
+
+    public static void main(String[] args) {
+        var dbOptions = new DbOptions(System.getenv("POSTGRES_HOST"),
+                Integer.parseInt(Objects.requireNonNullElse(System.getenv("POSTGRES_PORT"), "5432")),
+                System.getenv("CONSENT_MANAGER_DB_NAME"),
+                System.getenv("POSTGRES_USER"),
+                System.getenv("POSTGRES_PASSWORD"),
+                1,
+                false,
+                null,
+                0,
+                0,
+                0,
+                0,
+                0);
+        new DbMigration(dbOptions, true).migrate();
+    }
+
+    public void migrate() {
+        if (!enabled) {
+            logger.info("Schema migration is disabled");
+            return;
+        }
+        int applied = Flyway.configure()
+                .dataSource(jdbcUrl(), dbOptions.getUser(), dbOptions.getPassword())
+                .locations(LOCATION)
+                .baselineOnMigrate(true)
+                .baselineVersion(BASELINE_VERSION)
+                .mixed(true)
+                .load()
+                .migrate();
+        logger.info("Applied {} schema migrations", applied);
+    }
+
+    private String jdbcUrl() {
+        return String.format("jdbc:postgresql://%s:%d/%s", dbOptions.getHost(), dbOptions.getPort(), dbOptions.getSchema());
+    }
+}
@@ -17,6 +17,9 @@ public enum ErrorCode {
     INVALID_REQUEST(1513),
     INVALID_SUBSCRIPTION_APPROVAL_REQUEST(1514),
     NETWORK_SERVICE_ERROR(1511),
+    HIU_NOTIFICATIONS_THROTTLED(1515),
+    GATEWAY_CIRCUIT_OPEN(1516),
+    INVALID_PAGE_CURSOR(1517),
     UNKNOWN_ERROR_OCCURRED(1500);/*please resume codes from the line above, we will put the codes in order
     later
     and in ranges*/
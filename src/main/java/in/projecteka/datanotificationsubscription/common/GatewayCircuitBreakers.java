@@ -0,0 +1,78 @@
+package in.projecteka.datanotificationsubscription.common;
+
+import in.projecteka.datanotificationsubscription.CircuitBreakerProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Circuit breakers for gateway calls, one per endpoint and one per endpoint and HIU. The endpoint circuit opens
+ * when the gateway itself browns out, while an HIU circuit opens when only the calls for that HIU keep failing.
+ * Only timeouts, connection errors and 5xx responses count as failures.
+ */
+public class GatewayCircuitBreakers {
+    private static final Logger logger = LoggerFactory.getLogger(GatewayCircuitBreakers.class);
+    private static final String STATE = "gateway.circuit.state";
+    private static final String REJECTED = "gateway.circuit.rejected";
+    private static final String ENDPOINT = "endpoint";
+    private static final String HIU = "hiu";
+    private static final String ANY_HIU = "";
+    private final CircuitBreakerProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    public GatewayCircuitBreakers(CircuitBreakerProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public <T> Mono<T> protect(String endpoint, String hiuId, Mono<T> call) {
+        if (!properties.isEnabled()) {
+            return call;
+        }
+        Mono<T> protectedCall = circuitBreakerFor(endpoint, hiuId)
+                .protect(call, GatewayCircuitBreakers::isFailure);
+        return circuitBreakerFor(endpoint, ANY_HIU)
+                .protect(protectedCall, GatewayCircuitBreakers::isFailure)
+                .doOnError(error -> {
+                    if (error instanceof ClientError
+                            && ((ClientError) error).getErrorCode() == ErrorCode.GATEWAY_CIRCUIT_OPEN) {
+                        logger.warn("Circuit for {} to HIU {} is open, failing fast", endpoint, hiuId);
+                        meterRegistry.counter(REJECTED, ENDPOINT, endpoint, HIU, hiuId).increment();
+                    }
+                });
+    }
+
+    public CircuitBreaker.State stateOf(String endpoint, String hiuId) {
+        CircuitBreaker circuitBreaker = circuitBreakers.get(key(endpoint, hiuId));
+        return circuitBreaker == null ? CircuitBreaker.State.CLOSED : circuitBreaker.getState();
+    }
+
+    private CircuitBreaker circuitBreakerFor(String endpoint, String hiuId) {
+        return circuitBreakers.computeIfAbsent(key(endpoint, hiuId), key -> {
+            CircuitBreaker circuitBreaker = new CircuitBreaker(properties, System::currentTimeMillis);
+            meterRegistry.gauge(STATE, Tags.of(ENDPOINT, endpoint, HIU, hiuId), circuitBreaker,
+                    breaker -> breaker.getState().ordinal());
+            return circuitBreaker;
+        });
+    }
+
+    private static String key(String endpoint, String hiuId) {
+        return endpoint + "|" + hiuId;
+    }
+
+    static boolean isFailure(Throwable error) {
+        if (error instanceof ClientError) {
+            return ((ClientError) error).getHttpStatus().is5xxServerError()
+                    && ((ClientError) error).getErrorCode() != ErrorCode.GATEWAY_CIRCUIT_OPEN;
+        }
+        return error instanceof TimeoutException || error instanceof IOException;
+    }
+}
@@ -21,6 +21,7 @@ import static in.projecteka.datanotificationsubscription.common.Constants.AUTHOR
 import static in.projecteka.datanotificationsubscription.common.Constants.CORRELATION_ID;
 import static in.projecteka.datanotificationsubscription.common.Constants.GET_SERVICE_INFO;
 import static in.projecteka.datanotificationsubscription.common.Constants.HDR_HIU_ID;
+import static in.projecteka.datanotificationsubscription.common.Constants.HI_SERVICES;
 import static in.projecteka.datanotificationsubscription.common.Constants.SUBSCRIPTION_HIU_NOTIFY;
 import static in.projecteka.datanotificationsubscription.common.Constants.SUBSCRIPTION_REQUEST_HIU_NOTIFY;
 import static in.projecteka.datanotificationsubscription.common.Constants.SUBSCRIPTION_REQUEST_INIT_URL_PATH;
@@ -32,17 +33,25 @@ public class GatewayServiceClient {
     private final ServiceAuthentication serviceAuthentication;
     private final GatewayServiceProperties gatewayServiceProperties;
     private final WebClient webClient;
+    private final HIUNotificationLimiter hiuNotificationLimiter;
+    private final GatewayCircuitBreakers gatewayCircuitBreakers;
 
     private final Logger logger = LoggerFactory.getLogger(GatewayServiceClient.class);
 
-    public GatewayServiceClient(WebClient.Builder builder, GatewayServiceProperties gatewayServiceProperties, ServiceAuthentication serviceAuthentication) {
+    public GatewayServiceClient(WebClient.Builder builder,
+                                GatewayServiceProperties gatewayServiceProperties,
+                                ServiceAuthentication serviceAuthentication,
+                                HIUNotificationLimiter hiuNotificationLimiter,
+                                GatewayCircuitBreakers gatewayCircuitBreakers) {
         this.webClient = builder.build();
         this.serviceAuthentication = serviceAuthentication;
         this.gatewayServiceProperties = gatewayServiceProperties;
+        this.hiuNotificationLimiter = hiuNotificationLimiter;
+        this.gatewayCircuitBreakers = gatewayCircuitBreakers;
     }
 
     public Mono<Void> subscriptionRequestOnInit(SubscriptionOnInitRequest onInitRequest, String hiuId) {
-        return serviceAuthentication.authenticate()
+        return gatewayCircuitBreakers.protect(SUBSCRIPTION_REQUEST_INIT_URL_PATH, hiuId, serviceAuthentication.authenticate()
                 .flatMap(token -> webClient
                         .post()
                         .uri(gatewayServiceProperties.getBaseUrl() + SUBSCRIPTION_REQUEST_INIT_URL_PATH)
@@ -71,12 +80,12 @@ public class GatewayServiceClient {
                         hiuId,
                         onInitRequest.getResp().getRequestId(),
                         onInitRequest.getSubscriptionRequest().getId()))
-                .then();
+                .then());
     }
 
     public Mono<ServiceInfo> getServiceInfo(String serviceId) {
         //TODO: cache
-        return serviceAuthentication.authenticate()
+        return gatewayCircuitBreakers.protect(HI_SERVICES, serviceId, serviceAuthentication.authenticate()
                 .flatMap(authToken ->
                         webClient
                                 .get()
@@ -95,11 +104,12 @@ public class GatewayServiceClient {
                                 .bodyToMono(ServiceInfo.class)
                                 .timeout(Duration.ofMillis(gatewayServiceProperties.getRequestTimeout())))
                 .doOnSubscribe(subscription -> logger.info("About to call Gateway to get service info for service-id: {}",
-                        serviceId));
+                        serviceId)));
     }
 
     public Mono<Void> notifyForSubscription(HIUSubscriptionNotificationRequest notificationRequest, String hiuId) {
-        return serviceAuthentication.authenticate()
+        return gatewayCircuitBreakers.protect(SUBSCRIPTION_HIU_NOTIFY, hiuId, hiuNotificationLimiter.limit(hiuId,
+                serviceAuthentication.authenticate()
                 .flatMap(token -> webClient
                         .post()
                         .uri(gatewayServiceProperties.getBaseUrl() + SUBSCRIPTION_HIU_NOTIFY)
@@ -124,11 +134,11 @@ public class GatewayServiceClient {
                         .toBodilessEntity()
                         .timeout(ofMillis(gatewayServiceProperties.getRequestTimeout())))
                 .doOnSubscribe(subscription -> logger.info("About to call HIU {} for subscription notification", hiuId))
-                .then();
+                .then()));
     }
 
     public Mono<Void> subscriptionRequestNotify(HIUSubscriptionRequestNotifyRequest request, String hiuId) {
-        return serviceAuthentication.authenticate()
+        return gatewayCircuitBreakers.protect(SUBSCRIPTION_REQUEST_HIU_NOTIFY, hiuId, serviceAuthentication.authenticate()
                 .flatMap(token -> webClient
                         .post()
                         .uri(gatewayServiceProperties.getBaseUrl() + SUBSCRIPTION_REQUEST_HIU_NOTIFY)
@@ -155,6 +165,6 @@ public class GatewayServiceClient {
                 .doOnSubscribe(subscription ->
                         logger.info("About to call HIU {} for subscription request notification with gateway id {}", hiuId, request.getRequestId())
                 )
-                .then();
+                .then());
     }
 }
@@ -0,0 +1,197 @@
+package in.projecteka.datanotificationsubscription.common;
+
+import in.projecteka.datanotificationsubscription.HIUNotificationLimitProperties;
+import in.projecteka.datanotificationsubscription.HIUNotificationLimitProperties.Limits;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static in.projecteka.datanotificationsubscription.common.ClientError.hiuNotificationsThrottled;
+import static java.time.Duration.ofMillis;
+import static java.time.Duration.ofNanos;
+
+/**
+ * Isolates the notifications sent to one HIU from those sent to the others. Each HIU gets a token bucket
+ * limiting the rate of calls and a bulkhead limiting the calls in flight. A call waits for a token and then for
+ * a free slot, up to maxQueueWait each; calls which would wait longer, or find maxQueued calls already waiting
+ * for a slot, are shed with a TOO_MANY_REQUESTS error so they get retried later instead of holding a connection.
+ */
+public class HIUNotificationLimiter {
+    private static final Logger logger = LoggerFactory.getLogger(HIUNotificationLimiter.class);
+    private static final String IN_FLIGHT = "hiu.notification.in.flight";
+    private static final String QUEUED = "hiu.notification.queued";
+    private static final String SHED = "hiu.notification.shed";
+    private static final String RATE_LIMIT = "hiu.notification.limit.rate";
+    private static final String IN_FLIGHT_LIMIT = "hiu.notification.limit.in.flight";
+    private static final String HIU = "hiu";
+    private static final String REASON = "reason";
+    private final HIUNotificationLimitProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentMap<String, Partition> partitions = new ConcurrentHashMap<>();
+
+    public HIUNotificationLimiter(HIUNotificationLimitProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public <T> Mono<T> limit(String hiuId, Mono<T> call) {
+        if (!properties.isEnabled()) {
+            return call;
+        }
+        return Mono.defer(() -> partitions.computeIfAbsent(hiuId, this::partitionFor).run(call));
+    }
+
+    private Partition partitionFor(String hiuId) {
+        Limits limits = properties.limitsOf(hiuId);
+        Partition partition = new Partition(hiuId, limits);
+        Tags tags = Tags.of(HIU, hiuId);
+        meterRegistry.gauge(IN_FLIGHT, tags, partition, Partition::inFlight);
+        meterRegistry.gauge(QUEUED, tags, partition, Partition::queued);
+        meterRegistry.gauge(RATE_LIMIT, tags, partition, p -> p.limits.getRatePerSecond());
+        meterRegistry.gauge(IN_FLIGHT_LIMIT, tags, partition, p -> p.limits.getMaxInFlight());
+        return partition;
+    }
+
+    private static final int WAITING = 0;
+    private static final int GRANTED = 1;
+    private static final int RELEASED = 2;
+
+    private static class Ticket {
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        private MonoSink<Void> sink;
+    }
+
+    private class Partition {
+        private final String hiuId;
+        private final Limits limits;
+        private final double ratePerNano;
+        private final int burst;
+        private final int maxInFlight;
+        private final int maxQueued;
+        private final long maxQueueWait;
+        private final Deque<Ticket> waiting = new ArrayDeque<>();
+        private double tokens;
+        private long refilledAt;
+        private int inFlight;
+
+        Partition(String hiuId, Limits limits) {
+            this.hiuId = hiuId;
+            this.limits = limits;
+            this.ratePerNano = limits.getRatePerSecond() / TimeUnit.SECONDS.toNanos(1);
+            this.burst = limits.getBurst();
+            this.maxInFlight = limits.getMaxInFlight();
+            this.maxQueued = limits.getMaxQueued();
+            this.maxQueueWait = limits.getMaxQueueWait();
+            this.tokens = burst;
+            this.refilledAt = System.nanoTime();
+        }
+
+        <T> Mono<T> run(Mono<T> call) {
+            long delay = reserveToken();
+            if (delay < 0) {
+                return shed("rate");
+            }
+            Ticket ticket = new Ticket();
+            Mono<Void> acquire = acquire(ticket);
+            return (delay == 0 ? acquire : Mono.delay(ofNanos(delay)).then(acquire))
+                    .then(call)
+                    .doFinally(signalType -> {
+                        int previous = ticket.state.getAndSet(RELEASED);
+                        if (previous == GRANTED) {
+                            release();
+                        } else if (previous == WAITING) {
+                            dequeue(ticket);
+                        }
+                    });
+        }
+
+        /**
+         * Takes a token, going into debt when the bucket is empty. Returns the nanos to wait until the token is
+         * actually available, or -1 when that is longer than maxQueueWait.
+         */
+        private synchronized long reserveToken() {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - refilledAt) * ratePerNano);
+            refilledAt = now;
+            long delay = tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / ratePerNano);
+            if (delay > TimeUnit.MILLISECONDS.toNanos(maxQueueWait)) {
+                return -1;
+            }
+            tokens -= 1;
+            return delay;
+        }
+
+        private Mono<Void> acquire(Ticket ticket) {
+            return Mono.<Void>create(sink -> {
+                sink.onCancel(() -> {
+                    if (ticket.state.compareAndSet(WAITING, RELEASED)) {
+                        dequeue(ticket);
+                    }
+                });
+                // The sink is completed once out of the monitor, completing it runs the call which comes next
+                boolean granted;
+                synchronized (this) {
+                    granted = inFlight < maxInFlight && ticket.state.compareAndSet(WAITING, GRANTED);
+                    if (granted) {
+                        inFlight++;
+                    } else if (waiting.size() < maxQueued) {
+                        ticket.sink = sink;
+                        waiting.add(ticket);
+                        return;
+                    }
+                }
+                if (granted) {
+                    sink.success();
+                } else {
+                    sink.error(shedError("bulkhead"));
+                }
+            }).timeout(ofMillis(maxQueueWait), Mono.defer(() -> shed("queue-timeout")));
+        }
+
+        private void release() {
+            Ticket next;
+            synchronized (this) {
+                while ((next = waiting.poll()) != null && !next.state.compareAndSet(WAITING, GRANTED)) {
+                    // cancelled while waiting, the slot goes to the one behind
+                }
+                if (next == null) {
+                    inFlight--;
+                    return;
+                }
+            }
+            next.sink.success();
+        }
+
+        private synchronized void dequeue(Ticket ticket) {
+            waiting.remove(ticket);
+        }
+
+        synchronized int inFlight() {
+            return inFlight;
+        }
+
+        synchronized int queued() {
+            return waiting.size();
+        }
+
+        private <T> Mono<T> shed(String reason) {
+            return Mono.error(shedError(reason));
+        }
+
+        private ClientError shedError(String reason) {
+            logger.warn("Shedding notification to HIU {}, {} limit reached", hiuId, reason);
+            meterRegistry.counter(SHED, HIU, hiuId, REASON, reason).increment();
+            return hiuNotificationsThrottled();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package in.projecteka.datanotificationsubscription.common;
+
+import io.vertx.core.Future;
+import io.vertx.pgclient.PgConnection;
+import io.vertx.pgclient.PgPool;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.RowStream;
+import io.vertx.sqlclient.SqlConnection;
+import io.vertx.sqlclient.Tuple;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs the queries of the repositories as Monos, all of them timed by {@link QueryMetrics} and failing with a
+ * {@link DbOperationError}, the cause being logged with the query name.
+ * <p>
+ * Queries go through the pool, pipelined with the others on its connections. Cancelling one of those only drops
+ * its result, postgres runs it to the end. Queries which can run long for an HTTP request, as listings, are run
+ * cancellable instead: on a connection of their own, so that cancelling the Mono can ask postgres to cancel the
+ * statement and the connection goes back to the pool as soon as postgres gave up on it. Transactions are not
+ * cancelled halfway, they run to their commit or rollback. Large results can be streamed through a cursor instead
+ * of being read whole.
+ */
+public class QueryExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(QueryExecutor.class);
+    private final QueryMetrics queryMetrics;
+
+    public QueryExecutor(QueryMetrics queryMetrics) {
+        this.queryMetrics = queryMetrics;
+    }
+
+    public Mono<RowSet<Row>> query(String queryName, PgPool pool, String sql, Tuple parameters) {
+        return queryMetrics.timed(queryName, pool, Mono.create(monoSink -> pool.preparedQuery(sql)
+                .execute(parameters, executed -> {
+                    if (executed.failed()) {
+                        monoSink.error(failure(queryName, executed.cause()));
+                        return;
+                    }
+                    monoSink.success(executed.result());
+                })));
+    }
+
+    /**
+     * Runs the query on a connection of its own, which is given back once the query completed and, when the Mono
+     * was cancelled while the query ran, once postgres acknowledged the cancel request. A cancel request names the
+     * backend of the connection rather than the query, so the connection is held until then: given back earlier,
+     * the cancel could land on the query of whoever took it next.
+     */
+    public Mono<RowSet<Row>> cancellableQuery(String queryName, PgPool pool, String sql, Tuple parameters) {
+        return queryMetrics.timed(queryName, pool, Mono.<RowSet<Row>>create(monoSink -> {
+            AtomicBoolean cancelled = new AtomicBoolean();
+            AtomicReference<RunningQuery> running = new AtomicReference<>();
+            monoSink.onCancel(() -> {
+                cancelled.set(true);
+                RunningQuery query = running.get();
+                if (query != null) {
+                    query.cancel();
+                }
+            });
+            pool.getConnection(connected -> {
+                if (connected.failed()) {
+                    monoSink.error(failure(queryName, connected.cause()));
+                    return;
+                }
+                RunningQuery query = new RunningQuery(PgConnection.cast(connected.result()));
+                if (cancelled.get()) {
+                    query.release();
+                    return;
+                }
+                running.set(query);
+                query.connection.preparedQuery(sql).execute(parameters, executed -> {
+                    query.release();
+                    if (cancelled.get()) {
+                        return;
+                    }
+                    if (executed.failed()) {
+                        monoSink.error(failure(queryName, executed.cause()));
+                        return;
+                    }
+                    monoSink.success(executed.result());
+                });
+                // Cancelled between taking the connection and sending the query
+                if (cancelled.get()) {
+                    query.cancel();
+                }
+            });
+        }));
+    }
+
+    public <T> Flux<T> rows(String queryName, PgPool pool, String sql, Tuple parameters, Function<Row, T> mapper) {
+        return query(queryName, pool, sql, parameters)
+                .flatMapIterable(Function.identity())
+                .map(mapper);
+    }
+
+    /**
+     * Streams the rows through a cursor, fetchSize rows at a time as they are asked for, so that only those are held
+     * in memory. Postgres keeps a cursor only inside a transaction, the connection is the stream's until its last
+     * row or until it is cancelled.
+     */
+    public <T> Flux<T> stream(String queryName,
+                              PgPool pool,
+                              String sql,
+                              Tuple parameters,
+                              int fetchSize,
+                              Function<Row, T> mapper) {
+        return queryMetrics.timed(queryName, pool, Flux.<Row>create(fluxSink -> pool.getConnection(connected -> {
+            if (connected.failed()) {
+                fluxSink.error(failure(queryName, connected.cause()));
+                return;
+            }
+            SqlConnection connection = connected.result();
+            connection.begin().onComplete(begun -> {
+                if (begun.failed() || fluxSink.isCancelled()) {
+                    connection.close();
+                    if (begun.failed()) {
+                        fluxSink.error(failure(queryName, begun.cause()));
+                    }
+                    return;
+                }
+                connection.prepare(sql, prepared -> {
+                    if (prepared.failed() || fluxSink.isCancelled()) {
+                        // Closing rolls the transaction back
+                        connection.close();
+                        if (prepared.failed()) {
+                            fluxSink.error(failure(queryName, prepared.cause()));
+                        }
+                        return;
+                    }
+                    RowStream<Row> rows = prepared.result().createStream(fetchSize, parameters);
+                    rows.pause();
+                    rows.exceptionHandler(throwable -> {
+                        close(rows, connection);
+                        fluxSink.error(failure(queryName, throwable));
+                    });
+                    rows.endHandler(end -> begun.result().commit().onComplete(committed -> {
+                        connection.close();
+                        fluxSink.complete();
+                    }));
+                    rows.handler(fluxSink::next);
+                    fluxSink.onCancel(() -> close(rows, connection));
+                    fluxSink.onRequest(rows::fetch);
+                });
+            });
+        })).map(mapper));
+    }
+
+    /**
+     * Closes the cursor, then gives the connection back, which rolls its transaction back.
+     */
+    private static void close(RowStream<Row> rows, SqlConnection connection) {
+        rows.close().onComplete(closed -> connection.close());
+    }
+
+    public <T> Mono<T> transaction(String queryName, PgPool pool, Function<SqlConnection, Future<T>> work) {
+        return queryMetrics.timed(queryName, pool, toMono(() -> pool.withTransaction(work))
+                .onErrorMap(throwable -> failure(queryName, throwable)));
+    }
+
+    /**
+     * Adapts a Vert.x future, started on subscription. Cancelling does not stop the work the future stands for.
+     */
+    public static <T> Mono<T> toMono(Supplier<Future<T>> future) {
+        return Mono.create(monoSink -> future.get()
+                .onSuccess(monoSink::success)
+                .onFailure(monoSink::error));
+    }
+
+    /**
+     * Counts what holds the connection of a cancellable query: the query until it completed, and a cancel request
+     * until postgres acknowledged it. The connection is closed, given back to the pool, once nothing holds it.
+     */
+    private static class RunningQuery {
+        private final PgConnection connection;
+        private final AtomicInteger holds = new AtomicInteger(1);
+        private final AtomicBoolean cancelRequested = new AtomicBoolean();
+
+        private RunningQuery(PgConnection connection) {
+            this.connection = connection;
+        }
+
+        private void cancel() {
+            if (!cancelRequested.compareAndSet(false, true)) {
+                return;
+            }
+            // Only while the query still holds the connection, that is while the query is still running on it
+            if (holds.getAndUpdate(count -> count > 0 ? count + 1 : count) == 0) {
+                return;
+            }
+            connection.cancelRequest(cancelled -> {
+                if (cancelled.failed()) {
+                    logger.warn("Could not cancel a query", cancelled.cause());
+                }
+                release();
+            });
+        }
+
+        private void release() {
+            if (holds.decrementAndGet() == 0) {
+                connection.close();
+            }
+        }
+    }
+
+    private static DbOperationError failure(String queryName, Throwable cause) {
+        logger.error("Query {} failed: {}", queryName, cause.getMessage(), cause);
+        return new DbOperationError();
+    }
+}
@@ -0,0 +1,102 @@
+package in.projecteka.datanotificationsubscription.common;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.vertx.pgclient.PgPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.util.context.Context;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static in.projecteka.datanotificationsubscription.common.Constants.CORRELATION_ID;
+
+/**
+ * Times the queries of the repositories, one histogram per query name, and logs those slower than the threshold
+ * with the correlation id of the request they ran for. Also counts the queries of each registered pool between
+ * being sent and completing: those past the pool size are waiting for a connection.
+ */
+public class QueryMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(QueryMetrics.class);
+    private static final String QUERY_TIME = "subscription.db.query";
+    private static final String POOL_IN_FLIGHT = "subscription.db.pool.in.flight";
+    private static final String POOL_WAITING = "subscription.db.pool.waiting";
+    private static final String POOL_USAGE = "subscription.db.pool.usage";
+    private static final String POOL_SIZE = "subscription.db.pool.size";
+    private static final String QUERY = "query";
+    private static final String OUTCOME = "outcome";
+    private static final String POOL = "pool";
+    private static final AtomicInteger UNREGISTERED_POOL = new AtomicInteger();
+    private final MeterRegistry meterRegistry;
+    private final Duration slowQueryThreshold;
+    private final Map<PgPool, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    public QueryMetrics(MeterRegistry meterRegistry, Duration slowQueryThreshold) {
+        this.meterRegistry = meterRegistry;
+        this.slowQueryThreshold = slowQueryThreshold;
+    }
+
+    public void register(String poolName, PgPool pool, int poolSize) {
+        AtomicInteger queries = new AtomicInteger();
+        inFlight.put(pool, queries);
+        Tags tags = Tags.of(POOL, poolName);
+        meterRegistry.gauge(POOL_IN_FLIGHT, tags, queries, AtomicInteger::get);
+        meterRegistry.gauge(POOL_WAITING, tags, queries, q -> Math.max(0, q.get() - poolSize));
+        meterRegistry.gauge(POOL_USAGE, tags, queries, q -> Math.min(q.get(), poolSize) / (double) poolSize);
+        meterRegistry.gauge(POOL_SIZE, tags, queries, q -> poolSize);
+    }
+
+    public <T> Mono<T> timed(String queryName, PgPool pool, Mono<T> query) {
+        return Mono.subscriberContext().flatMap(context -> query.doFinally(started(queryName, pool, context)));
+    }
+
+    /**
+     * Times a streamed query from subscription until its last row was emitted.
+     */
+    public <T> Flux<T> timed(String queryName, PgPool pool, Flux<T> query) {
+        return Mono.subscriberContext().flatMapMany(context -> query.doFinally(started(queryName, pool, context)));
+    }
+
+    private Consumer<SignalType> started(String queryName, PgPool pool, Context context) {
+        AtomicInteger queries = inFlight.getOrDefault(pool, UNREGISTERED_POOL);
+        long startedAt = System.nanoTime();
+        queries.incrementAndGet();
+        return signal -> {
+            queries.decrementAndGet();
+            long elapsed = System.nanoTime() - startedAt;
+            timerOf(queryName, signal).record(elapsed, TimeUnit.NANOSECONDS);
+            if (elapsed > slowQueryThreshold.toNanos()) {
+                logger.warn("Slow query {} took {} ms, correlation id {}", queryName,
+                        TimeUnit.NANOSECONDS.toMillis(elapsed), context.getOrDefault(CORRELATION_ID, null));
+            }
+        };
+    }
+
+    private Timer timerOf(String queryName, SignalType signal) {
+        return Timer.builder(QUERY_TIME)
+                .tag(QUERY, queryName)
+                .tag(OUTCOME, outcomeOf(signal))
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static String outcomeOf(SignalType signal) {
+        switch (signal) {
+            case ON_ERROR:
+                return "error";
+            case CANCEL:
+                return "cancelled";
+            default:
+                return "success";
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package in.projecteka.datanotificationsubscription.common;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.vertx.pgclient.PgPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks the pool a read goes to. Reads go to the replica, except:
+ * <ul>
+ * <li>reads of a patient who wrote within the sticky window, so that they see their own writes, and likewise reads
+ * of a subscription by its id once it was granted or edited</li>
+ * <li>all reads while the last lag probe found the replica behind by more than the maximum lag, or got no answer
+ * within the probe timeout</li>
+ * </ul>
+ * Reads which decide a write, like fetching the request being approved, should not come here but go to the primary.
+ * Without a replica of its own the replica pool is just a second pool on the primary, there is then nothing to probe.
+ */
+public class ReadRouter {
+    private static final Logger logger = LoggerFactory.getLogger(ReadRouter.class);
+    // A replica which replayed all it received is caught up, however old its last replayed transaction is
+    private static final String REPLICA_LAG_QUERY = "SELECT CASE WHEN NOT pg_is_in_recovery() " +
+            "OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+            "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0) END::bigint AS lag";
+
+    private final PgPool primary;
+    private final PgPool replica;
+    private final boolean replicaReadEnabled;
+    private final Duration maximumLag;
+    private final Duration probeInterval;
+    private final Duration probeTimeout;
+    private final Cache<String, Boolean> recentWriters;
+    private volatile boolean replicaUsable = true;
+    private Disposable probing;
+
+    public ReadRouter(PgPool primary,
+                      PgPool replica,
+                      boolean replicaReadEnabled,
+                      Duration stickyWindow,
+                      Duration maximumLag,
+                      Duration probeInterval,
+                      Duration probeTimeout) {
+        this.primary = primary;
+        this.replica = replica;
+        this.replicaReadEnabled = replicaReadEnabled;
+        this.maximumLag = maximumLag;
+        this.probeInterval = probeInterval;
+        this.probeTimeout = probeTimeout;
+        this.recentWriters = CacheBuilder.newBuilder()
+                .expireAfterWrite(stickyWindow.toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!replicaReadEnabled) {
+            return;
+        }
+        probing = Flux.interval(Duration.ZERO, probeInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> probe(), 1)
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (probing != null) {
+            probing.dispose();
+        }
+    }
+
+    public PgPool primary() {
+        return primary;
+    }
+
+    public PgPool reader() {
+        return replicaUsable ? replica : primary;
+    }
+
+    public PgPool readerFor(String patientId) {
+        return patientId != null && recentWriters.getIfPresent(patientId) != null ? primary : reader();
+    }
+
+    public PgPool readerFor(Collection<String> patientIds) {
+        return patientIds.stream().anyMatch(patientId -> recentWriters.getIfPresent(patientId) != null)
+                ? primary
+                : reader();
+    }
+
+    public void wrote(String patientId) {
+        if (replicaReadEnabled && patientId != null) {
+            recentWriters.put(patientId, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Measures the replica lag and tells whether reads may go to the replica until the next probe.
+     */
+    public Mono<Boolean> probe() {
+        return Mono.<Long>create(monoSink -> replica.query(REPLICA_LAG_QUERY)
+                .execute(handler -> {
+                    if (handler.failed()) {
+                        monoSink.error(handler.cause());
+                        return;
+                    }
+                    monoSink.success(handler.result().iterator().next().getLong("lag"));
+                }))
+                .timeout(probeTimeout)
+                .map(lag -> lag <= maximumLag.toMillis())
+                .onErrorResume(throwable -> {
+                    logger.warn("Could not measure the replica lag", throwable);
+                    return Mono.just(false);
+                })
+                .doOnNext(this::replicaUsable);
+    }
+
+    private void replicaUsable(boolean usable) {
+        if (usable != replicaUsable) {
+            logger.warn(usable ? "Replica caught up, reading from it again" : "Replica is behind, reading from the primary");
+        }
+        replicaUsable = usable;
+    }
+}
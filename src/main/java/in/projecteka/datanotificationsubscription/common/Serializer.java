@@ -4,6 +4,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import lombok.SneakyThrows;
 import org.slf4j.Logger;
@@ -50,5 +51,13 @@ public final class Serializer {
         return mapper.readValue(value.getBytes(), type);
     }
 
+    /**
+     * Reader bound to the type, configured like the rest of the serializer. Readers are immutable and thread
+     * safe, keep one around instead of resolving the type on every read.
+     */
+    public static ObjectReader readerFor(TypeReference<?> type) {
+        return mapper.readerFor(type);
+    }
+
 }
 
@@ -0,0 +1,97 @@
+package in.projecteka.datanotificationsubscription.common.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size, thread safe Bloom filter over strings. The memory it takes is decided up front from the expected
+ * number of insertions and the false positive probability wanted at that size, about 9.6 bits per expected
+ * insertion at 1%. Inserting more than expected does not grow it, it only raises the false positive probability.
+ */
+public class BloomFilter {
+    private static final double LN_2 = Math.log(2);
+    private final AtomicLongArray words;
+    private final long bitSize;
+    private final int hashFunctions;
+    private final AtomicLong bitsSet = new AtomicLong();
+
+    private BloomFilter(long bitSize, int hashFunctions) {
+        this.words = new AtomicLongArray((int) ((bitSize + 63) / 64));
+        this.bitSize = bitSize;
+        this.hashFunctions = hashFunctions;
+    }
+
+    public static BloomFilter create(long expectedInsertions, double falsePositiveProbability) {
+        long insertions = Math.max(1, expectedInsertions);
+        long bitSize = Math.max(64, (long) Math.ceil(-insertions * Math.log(falsePositiveProbability) / (LN_2 * LN_2)));
+        int hashFunctions = Math.max(1, (int) Math.round((double) bitSize / insertions * LN_2));
+        return new BloomFilter(bitSize, hashFunctions);
+    }
+
+    public void put(String value) {
+        long hash = hash(value);
+        long step = mix(hash);
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = Math.floorMod(hash + i * step, bitSize);
+            if (set(bit)) {
+                bitsSet.incrementAndGet();
+            }
+        }
+    }
+
+    public boolean mightContain(String value) {
+        long hash = hash(value);
+        long step = mix(hash);
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = Math.floorMod(hash + i * step, bitSize);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Derived from how full the filter is rather than from how many values went in, so it stays right when
+     * the same value is put more than once.
+     */
+    public double expectedFalsePositiveProbability() {
+        return Math.pow((double) bitsSet.get() / bitSize, hashFunctions);
+    }
+
+    public long sizeInBytes() {
+        return words.length() * 8L;
+    }
+
+    private boolean set(long bit) {
+        int index = (int) (bit >>> 6);
+        long mask = 1L << bit;
+        long word;
+        do {
+            word = words.get(index);
+            if ((word & mask) != 0) {
+                return false;
+            }
+        } while (!words.compareAndSet(index, word, word | mask));
+        return true;
+    }
+
+    // 64 bit FNV-1a over the characters, finished with the murmur3 mixer
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -1,74 +1,333 @@
 package in.projecteka.datanotificationsubscription.hipLink;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.rabbitmq.client.AMQP;
 import in.projecteka.consentmanager.common.TraceableMessage;
 import in.projecteka.datanotificationsubscription.HIUSubscriptionManager;
 import in.projecteka.datanotificationsubscription.ListenerProperties;
-import in.projecteka.datanotificationsubscription.common.ClientError;
-import in.projecteka.datanotificationsubscription.common.Serializer;
-import lombok.AllArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SynchronousSink;
+import reactor.core.scheduler.Schedulers;
 import reactor.rabbitmq.AcknowledgableDelivery;
+import reactor.rabbitmq.BindingSpecification;
+import reactor.rabbitmq.ConsumeOptions;
+import reactor.rabbitmq.OutboundMessage;
+import reactor.rabbitmq.QueueSpecification;
 import reactor.rabbitmq.Receiver;
+import reactor.rabbitmq.Sender;
 import reactor.util.retry.Retry;
-import reactor.util.retry.RetryBackoffSpec;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static in.projecteka.datanotificationsubscription.common.Constants.CORRELATION_ID;
+import static in.projecteka.datanotificationsubscription.common.Constants.DEAD_LETTER_EXCHANGE;
+import static in.projecteka.datanotificationsubscription.common.Constants.HDR_RETRY_COUNT;
 import static in.projecteka.datanotificationsubscription.common.Constants.HIP_LINK_QUEUE;
+import static in.projecteka.datanotificationsubscription.common.Constants.PARKING_EXCHANGE;
 
-@AllArgsConstructor
 public class HipLinkNotificationListener {
     private static final Logger logger = LoggerFactory.getLogger(HipLinkNotificationListener.class);
+    private static final String IN_FLIGHT_DELIVERIES = "hip.link.deliveries.in.flight";
+    private static final String DELIVERY_PROCESSING_TIME = "hip.link.deliveries.processing";
+    private static final String RETRIED_DELIVERIES = "hip.link.deliveries.retried";
+    private static final String PARKED_DELIVERIES = "hip.link.deliveries.parked";
+    private static final String DUPLICATE_DELIVERIES = "hip.link.deliveries.duplicate";
+    private static final String COALESCED_DELIVERIES = "hip.link.deliveries.coalesced";
     private final Receiver receiver;
+    private final Sender sender;
     private final HIUSubscriptionManager subscriptionManager;
+    private final LinkEventDeduplicator linkEventDeduplicator;
     private final ListenerProperties listenerProperties;
+    private final AtomicInteger inFlightDeliveries;
+    private final Timer processingTimer;
+    private final Counter retriedDeliveries;
+    private final Counter parkedDeliveries;
+    private final Counter duplicateDeliveries;
+    private final Counter coalescedDeliveries;
+    private Disposable consumer;
+
+    public HipLinkNotificationListener(Receiver receiver,
+                                       Sender sender,
+                                       HIUSubscriptionManager subscriptionManager,
+                                       LinkEventDeduplicator linkEventDeduplicator,
+                                       ListenerProperties listenerProperties,
+                                       MeterRegistry meterRegistry) {
+        this.receiver = receiver;
+        this.sender = sender;
+        this.subscriptionManager = subscriptionManager;
+        this.linkEventDeduplicator = linkEventDeduplicator;
+        this.listenerProperties = listenerProperties;
+        this.inFlightDeliveries = meterRegistry.gauge(IN_FLIGHT_DELIVERIES, new AtomicInteger());
+        this.processingTimer = meterRegistry.timer(DELIVERY_PROCESSING_TIME);
+        this.retriedDeliveries = meterRegistry.counter(RETRIED_DELIVERIES);
+        this.parkedDeliveries = meterRegistry.counter(PARKED_DELIVERIES);
+        this.duplicateDeliveries = meterRegistry.counter(DUPLICATE_DELIVERIES);
+        this.coalescedDeliveries = meterRegistry.counter(COALESCED_DELIVERIES);
+    }
 
     @PostConstruct
     public void subscribe() {
-        receiver.consumeManualAck(HIP_LINK_QUEUE)
-                .subscribe(delivery -> {
-                            TraceableMessage traceableMessage = Serializer.to(delivery.getBody(), TraceableMessage.class);
-                            Mono.just(traceableMessage)
-                                    .map(this::extractLinkEvent)
-                                    .doOnNext(linkEvent -> logger.info("Received link event for health-id-number {} from HIP {}", linkEvent.getHealthNumber(), linkEvent.getHipId()))
-                                    .flatMap(newCCLinkEvent -> subscriptionManager.notifySubscribers(newCCLinkEvent).then())
-                                    .doOnSuccess(unused -> delivery.ack())
-                                    .doOnError(throwable -> logger.error("Error while processing link event", throwable))
-                                    .doFinally(signalType -> MDC.clear())
-                                    .retryWhen(retryConfig(delivery))
-                                    .subscriberContext(ctx -> ctx.put(CORRELATION_ID, traceableMessage.getCorrelationId()))
-                                    .subscribe();
-                        }
-                );
+        // Events are hashed by health number onto lanes. A lane is processed serially so notifications for a
+        // patient go out in the order they were linked, while the lanes themselves run in parallel. An event which
+        // failed leaves its lane for a delay queue though, so later events of the patient go out before its retry.
+        int lanes = listenerProperties.getLinkEventLanes();
+        int laneQueueDepth = listenerProperties.getLinkEventLaneQueueDepth();
+        int prefetchCount = listenerProperties.getLinkEventPrefetchCount();
+        var consumeOptions = new ConsumeOptions().qos(prefetchCount);
+        Flux<LinkEventDelivery> linkEventDeliveries = declareRetryQueues()
+                .thenMany(Flux.defer(() -> receiver.consumeManualAck(HIP_LINK_QUEUE, consumeOptions)))
+                .<LinkEventDelivery>handle(this::read)
+                .flatMapSequential(this::unlessDuplicate, prefetchCount);
+        if (listenerProperties.isLinkEventBatchEnabled()) {
+            linkEventDeliveries = batchesOf(linkEventDeliveries,
+                    listenerProperties.getLinkEventBatchSize(),
+                    Duration.ofMillis(listenerProperties.getLinkEventBatchWindow()))
+                    .concatMap(this::withSubscriptions, prefetchCount);
+        }
+        // Whatever stops the pipeline would stop consuming the link queue for good, so it is logged and consuming
+        // starts over. Deliveries it held unacknowledged are redelivered once their channel is closed.
+        consumer = linkEventDeliveries
+                .groupBy(linkEventDelivery -> laneOf(linkEventDelivery.getLinkEvent(), lanes), laneQueueDepth)
+                .flatMap(lane -> coalesce(lane.publishOn(Schedulers.parallel(), laneQueueDepth), prefetchCount)
+                        .concatMap(this::process), lanes)
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofMinutes(1))
+                        .doBeforeRetry(retrySignal -> logger.error("Link event consumer failed, consuming again",
+                                retrySignal.failure())))
+                .subscribe(unused -> {
+                }, throwable -> logger.error("Link event consumer stopped", throwable));
+    }
 
+    /**
+     * bufferTimeout emits a batch when its window elapses whether or not one was asked for, and fails with an
+     * overflow when none was. Batches are held until asked for instead; there are never more of them than
+     * unacknowledged deliveries, which the prefetch count bounds.
+     */
+    private static <T> Flux<List<T>> batchesOf(Flux<T> items, int batchSize, Duration window) {
+        return items
+                .bufferTimeout(batchSize, window)
+                .onBackpressureBuffer();
+    }
+
+    /**
+     * Holds the events of a lane for up to linkEventCoalescingWindow ms and merges those of the same patient
+     * from the same HIP, so that a burst of links sends one notification per HIU instead of one per event.
+     */
+    private Flux<LinkEventDelivery> coalesce(Flux<LinkEventDelivery> lane, int prefetchCount) {
+        long window = listenerProperties.getLinkEventCoalescingWindow();
+        if (window <= 0) {
+            return lane;
+        }
+        return batchesOf(lane, listenerProperties.getLinkEventLaneQueueDepth(), Duration.ofMillis(window))
+                .concatMapIterable(LinkEventDelivery::coalesce, prefetchCount)
+                .doOnNext(linkEventDelivery -> {
+                    if (linkEventDelivery.getParts().size() > 1) {
+                        coalescedDeliveries.increment(linkEventDelivery.getParts().size() - 1);
+                    }
+                });
     }
 
     @PreDestroy
     public void closeConnection() {
+        if (consumer != null) {
+            consumer.dispose();
+        }
         receiver.close();
+        sender.close();
+    }
+
+    /**
+     * A failed link event is acked and republished to the dead-letter exchange, which routes it to the delay
+     * queue of its attempt. Once the queue TTL (or the jittered per message expiration) elapses, the queue
+     * dead-letters it back onto the link queue through the default exchange. Delay queues are declared here so
+     * that they follow linkEventMaximumRetries; see rabbitmq/data_notification_subscription_rabbitmq.json, and
+     * rabbitmq/README.md for the binding to remove from brokers set up before the delay queues.
+     */
+    private Mono<Void> declareRetryQueues() {
+        return Flux.fromStream(IntStream.rangeClosed(1, listenerProperties.getLinkEventMaximumRetries()).boxed())
+                .concatMap(attempt -> {
+                    Map<String, Object> arguments = new HashMap<>();
+                    arguments.put("x-message-ttl", (int) Math.min(retryIntervalOf(attempt), Integer.MAX_VALUE));
+                    arguments.put("x-dead-letter-exchange", "");
+                    arguments.put("x-dead-letter-routing-key", HIP_LINK_QUEUE);
+                    String retryQueue = retryQueueOf(attempt);
+                    return sender.declareQueue(QueueSpecification.queue(retryQueue).durable(true).arguments(arguments))
+                            .then(sender.bind(BindingSpecification.binding(DEAD_LETTER_EXCHANGE, retryQueue, retryQueue)));
+                })
+                .then()
+                .onErrorResume(throwable -> {
+                    logger.error("Could not declare the link event retry queues", throwable);
+                    return Mono.empty();
+                });
+    }
+
+    private void read(AcknowledgableDelivery delivery, SynchronousSink<LinkEventDelivery> sink) {
+        try {
+            TraceableMessage<NewCCLinkEvent> traceableMessage = LinkEventDecoder.decode(delivery.getBody());
+            if (traceableMessage.getMessage() == null) {
+                throw new IllegalArgumentException("Delivery has no link event");
+            }
+            sink.next(new LinkEventDelivery(delivery, traceableMessage.getCorrelationId(), traceableMessage.getMessage()));
+        } catch (Exception exception) {
+            logger.error("Discarding link event which could not be read", exception);
+            delivery.nack(false);
+        }
+    }
+
+    private Mono<LinkEventDelivery> unlessDuplicate(LinkEventDelivery linkEventDelivery) {
+        NewCCLinkEvent linkEvent = linkEventDelivery.getLinkEvent();
+        return linkEventDeduplicator.isDuplicate(linkEvent)
+                .flatMap(duplicate -> {
+                    if (!duplicate) {
+                        return Mono.just(linkEventDelivery);
+                    }
+                    logger.info("Dropping already processed link event for health-id-number {} from HIP {}",
+                            linkEvent.getHealthNumber(), linkEvent.getHipId());
+                    duplicateDeliveries.increment();
+                    linkEventDelivery.getDelivery().ack();
+                    return Mono.empty();
+                });
+    }
+
+    private Flux<LinkEventDelivery> withSubscriptions(List<LinkEventDelivery> batch) {
+        List<NewCCLinkEvent> linkEvents = batch.stream().map(LinkEventDelivery::getLinkEvent).collect(Collectors.toList());
+        return subscriptionManager.findLinkSubscriptionsFor(linkEvents)
+                .map(linkSubscriptions -> batch.stream()
+                        .map(linkEventDelivery -> linkEventDelivery.withSubscriptions(linkSubscriptions))
+                        .collect(Collectors.toList()))
+                .onErrorResume(throwable -> {
+                    logger.error("Could not look up subscriptions for a batch of {} link events, looking them up one by one",
+                            batch.size(), throwable);
+                    return Mono.just(batch);
+                })
+                .flatMapIterable(linkEventDeliveries -> linkEventDeliveries);
     }
 
-    private NewCCLinkEvent extractLinkEvent(TraceableMessage traceableMessage) {
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.registerModule(new JavaTimeModule());
-        return mapper.convertValue(traceableMessage.getMessage(), NewCCLinkEvent.class);
+    private static int laneOf(NewCCLinkEvent linkEvent, int lanes) {
+        String healthNumber = linkEvent.getHealthNumber();
+        return healthNumber == null ? 0 : Math.floorMod(healthNumber.hashCode(), lanes);
     }
 
-    private RetryBackoffSpec retryConfig(AcknowledgableDelivery delivery) {
-        return Retry
-                .fixedDelay(listenerProperties.getLinkEventMaximumRetries(), Duration.ofMillis(listenerProperties.getLinkEventMaximumRetries()))
-                .onRetryExhaustedThrow((retryBackoffSpec, retrySignal) -> {
-                    logger.info("Exhausted Retries");
-                    delivery.nack(false);
-                    return ClientError.unknownErrorOccurred();
+    private Mono<Void> process(LinkEventDelivery linkEventDelivery) {
+        NewCCLinkEvent linkEvent = linkEventDelivery.getLinkEvent();
+        List<LinkEventDelivery> parts = linkEventDelivery.getParts();
+        long startedAt = System.nanoTime();
+        return Mono.defer(() -> {
+            logger.info("Received link event for health-id-number {} from HIP {}", linkEvent.getHealthNumber(), linkEvent.getHipId());
+            Flux<Void> notifications = linkEventDelivery.getSubscriptions() == null
+                    ? subscriptionManager.notifySubscribers(linkEvent, linkEventDelivery.getKey())
+                    : subscriptionManager.notifySubscribers(linkEvent, linkEventDelivery.getKey(),
+                            linkEventDelivery.getSubscriptions());
+            return notifications.then(Flux.fromIterable(parts)
+                    .concatMap(part -> linkEventDeduplicator.markProcessed(part.getLinkEvent()))
+                    .then());
+        })
+                .doOnSuccess(unused -> parts.forEach(part -> part.getDelivery().ack()))
+                .doOnError(throwable -> logger.error("Error while processing link event", throwable))
+                .onErrorResume(throwable -> Flux.fromIterable(parts)
+                        .concatMap(part -> retryLater(part.getDelivery()))
+                        .then())
+                .doOnSubscribe(subscription -> inFlightDeliveries.incrementAndGet())
+                .doFinally(signalType -> {
+                    inFlightDeliveries.decrementAndGet();
+                    processingTimer.record(Duration.ofNanos(System.nanoTime() - startedAt));
+                    MDC.clear();
+                })
+                .subscriberContext(ctx -> ctx.put(CORRELATION_ID, linkEventDelivery.getCorrelationId()));
+    }
+
+    /**
+     * Moves a failed delivery to the delay queue of its next attempt, or to the parking exchange once its retries are
+     * exhausted. The event is acked, so its lane goes on: events of the same patient which arrive meanwhile are
+     * notified before the retry, which comes back behind them. Holding them until the retry would stall the patient
+     * for the whole backoff, and notifications carry the timestamp of their link so HIUs can still order them.
+     */
+    private Mono<Void> retryLater(AcknowledgableDelivery delivery) {
+        int attempt = LinkEventDelivery.retryCountOf(delivery) + 1;
+        boolean exhausted = attempt > listenerProperties.getLinkEventMaximumRetries();
+        OutboundMessage message = exhausted
+                ? new OutboundMessage(PARKING_EXCHANGE, HIP_LINK_QUEUE, propertiesOf(delivery, attempt - 1, null),
+                        delivery.getBody())
+                : new OutboundMessage(DEAD_LETTER_EXCHANGE, retryQueueOf(attempt),
+                        propertiesOf(delivery, attempt, retryDelayOf(attempt)), delivery.getBody());
+        return sender.sendWithPublishConfirms(Mono.just(message))
+                .next()
+                .doOnNext(result -> {
+                    if (!result.isAck()) {
+                        logger.error("Broker did not take the link event for a retry, requeueing it");
+                        delivery.nack(true);
+                        return;
+                    }
+                    delivery.ack();
+                    if (exhausted) {
+                        logger.info("Exhausted retries, parked the link event");
+                        parkedDeliveries.increment();
+                    } else {
+                        logger.info("Link event will be retried in at most {} ms, attempt {}", retryIntervalOf(attempt), attempt);
+                        retriedDeliveries.increment();
+                    }
+                })
+                .then()
+                .onErrorResume(throwable -> {
+                    logger.error("Could not republish the link event for a retry, requeueing it", throwable);
+                    delivery.nack(true);
+                    return Mono.empty();
                 });
     }
+
+    private static AMQP.BasicProperties propertiesOf(AcknowledgableDelivery delivery, int retryCount, Long expiration) {
+        AMQP.BasicProperties properties = delivery.getProperties();
+        Map<String, Object> headers = new HashMap<>();
+        if (properties != null && properties.getHeaders() != null) {
+            headers.putAll(properties.getHeaders());
+        }
+        headers.put(HDR_RETRY_COUNT, retryCount);
+        return (properties == null ? new AMQP.BasicProperties.Builder() : properties.builder())
+                .headers(headers)
+                .deliveryMode(2)
+                .expiration(expiration == null ? null : String.valueOf(expiration))
+                .build();
+    }
+
+    private static String retryQueueOf(int attempt) {
+        return HIP_LINK_QUEUE + ".retry." + attempt;
+    }
+
+    /**
+     * Exponential backoff, doubling linkEventRetryInterval on every attempt up to linkEventMaximumRetryInterval.
+     * It is the TTL of the delay queue of the attempt.
+     */
+    long retryIntervalOf(int attempt) {
+        long interval = listenerProperties.getLinkEventRetryInterval();
+        long maximumInterval = listenerProperties.getLinkEventMaximumRetryInterval();
+        return attempt > Long.numberOfLeadingZeros(interval) - 1
+               ? maximumInterval
+               : Math.min(interval << (attempt - 1), maximumInterval);
+    }
+
+    /**
+     * Spreads retries of events which failed together over the second half of the retry interval. Expired
+     * messages only leave from the head of a queue, so a message may wait behind an earlier one expiring later,
+     * but never longer than the queue TTL.
+     */
+    long retryDelayOf(int attempt) {
+        long interval = retryIntervalOf(attempt);
+        return interval / 2 + ThreadLocalRandom.current().nextLong(interval - interval / 2 + 1);
+    }
 }
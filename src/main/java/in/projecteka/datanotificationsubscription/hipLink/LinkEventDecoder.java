@@ -0,0 +1,24 @@
+package in.projecteka.datanotificationsubscription.hipLink;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectReader;
+import in.projecteka.consentmanager.common.TraceableMessage;
+import in.projecteka.datanotificationsubscription.common.Serializer;
+
+import java.io.IOException;
+
+/**
+ * Parses link event deliveries straight from their body bytes into a typed message, in one pass.
+ */
+public final class LinkEventDecoder {
+    private static final ObjectReader reader =
+            Serializer.readerFor(new TypeReference<TraceableMessage<NewCCLinkEvent>>() {
+            });
+
+    private LinkEventDecoder() {
+    }
+
+    public static TraceableMessage<NewCCLinkEvent> decode(byte[] body) throws IOException {
+        return reader.readValue(body);
+    }
+}
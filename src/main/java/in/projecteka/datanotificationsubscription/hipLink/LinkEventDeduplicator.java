@@ -0,0 +1,80 @@
+package in.projecteka.datanotificationsubscription.hipLink;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import in.projecteka.datanotificationsubscription.common.cache.CacheAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the link events which were processed, so that redeliveries are dropped before any DB or gateway
+ * work. Keys are kept in a bounded in-memory LRU and, when a shared cache is given, in that cache too so that
+ * an event redelivered to another node is recognised as well. Shared cache failures never drop an event.
+ */
+public class LinkEventDeduplicator {
+    private static final Logger logger = LoggerFactory.getLogger(LinkEventDeduplicator.class);
+    private static final String KEY_PREFIX = "link-event:";
+    private static final String PROCESSED = "1";
+    private final boolean enabled;
+    private final Cache<String, Boolean> processedEvents;
+    private final CacheAdapter<String, String> sharedProcessedEvents;
+
+    public LinkEventDeduplicator(boolean enabled,
+                                 long maximumSize,
+                                 long expiryInMinutes,
+                                 CacheAdapter<String, String> sharedProcessedEvents) {
+        this.enabled = enabled;
+        this.processedEvents = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expiryInMinutes, TimeUnit.MINUTES)
+                .build();
+        this.sharedProcessedEvents = sharedProcessedEvents;
+    }
+
+    public Mono<Boolean> isDuplicate(NewCCLinkEvent linkEvent) {
+        if (!enabled) {
+            return Mono.just(false);
+        }
+        String key = keyOf(linkEvent);
+        if (processedEvents.getIfPresent(key) != null) {
+            return Mono.just(true);
+        }
+        if (sharedProcessedEvents == null) {
+            return Mono.just(false);
+        }
+        return sharedProcessedEvents.exists(key)
+                .defaultIfEmpty(false)
+                .doOnNext(exists -> {
+                    if (Boolean.TRUE.equals(exists)) {
+                        processedEvents.put(key, true);
+                    }
+                })
+                .onErrorResume(throwable -> {
+                    logger.error("Could not look up link event {} in the shared cache", key, throwable);
+                    return Mono.just(false);
+                });
+    }
+
+    public Mono<Void> markProcessed(NewCCLinkEvent linkEvent) {
+        if (!enabled) {
+            return Mono.empty();
+        }
+        String key = keyOf(linkEvent);
+        processedEvents.put(key, true);
+        if (sharedProcessedEvents == null) {
+            return Mono.empty();
+        }
+        return sharedProcessedEvents.put(key, PROCESSED)
+                .onErrorResume(throwable -> {
+                    logger.error("Could not remember link event {} in the shared cache", key, throwable);
+                    return Mono.empty();
+                });
+    }
+
+    private static String keyOf(NewCCLinkEvent linkEvent) {
+        return KEY_PREFIX + LinkEventKey.of(linkEvent);
+    }
+}
@@ -0,0 +1,120 @@
+package in.projecteka.datanotificationsubscription.hipLink;
+
+import com.rabbitmq.client.AMQP;
+import in.projecteka.datanotificationsubscription.LinkSubscriptions;
+import in.projecteka.datanotificationsubscription.common.model.PatientCareContext;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import reactor.rabbitmq.AcknowledgableDelivery;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static in.projecteka.datanotificationsubscription.common.Constants.HDR_RETRY_COUNT;
+
+@AllArgsConstructor
+@Getter
+public class LinkEventDelivery {
+    private final AcknowledgableDelivery delivery;
+    private final String correlationId;
+    private final NewCCLinkEvent linkEvent;
+    // Looked up together with the rest of a batch, null when the event has to look up its own subscriptions
+    private final LinkSubscriptions subscriptions;
+    // Deliveries merged into this one, null when it stands for its own delivery only
+    private final List<LinkEventDelivery> parts;
+
+    public LinkEventDelivery(AcknowledgableDelivery delivery, String correlationId, NewCCLinkEvent linkEvent) {
+        this(delivery, correlationId, linkEvent, null, null);
+    }
+
+    public LinkEventDelivery withSubscriptions(LinkSubscriptions subscriptions) {
+        return new LinkEventDelivery(delivery, correlationId, linkEvent, subscriptions, parts);
+    }
+
+    public List<LinkEventDelivery> getParts() {
+        return parts == null ? List.of(this) : parts;
+    }
+
+    /**
+     * Key the notifications of this delivery are identified by, made of the keys of the events merged into it
+     * rather than of the merged event, see {@link LinkEventKey#of(List)}.
+     */
+    public UUID getKey() {
+        return LinkEventKey.of(getParts().stream()
+                .map(part -> LinkEventKey.of(part.getLinkEvent()))
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Whether the event may already have been notified, by an attempt which failed or whose ack got lost.
+     */
+    public boolean isAttemptedBefore() {
+        return retryCountOf(delivery) > 0 || (delivery.getEnvelope() != null && delivery.getEnvelope().isRedeliver());
+    }
+
+    static int retryCountOf(AcknowledgableDelivery delivery) {
+        AMQP.BasicProperties properties = delivery.getProperties();
+        Object retryCount = properties == null || properties.getHeaders() == null
+                ? null
+                : properties.getHeaders().get(HDR_RETRY_COUNT);
+        return retryCount instanceof Number ? ((Number) retryCount).intValue() : 0;
+    }
+
+    /**
+     * Merges the link events of the same patient from the same HIP into one event carrying the union of their care
+     * contexts, stamped with the latest timestamp. Events are kept in the order their first delivery arrived.
+     * <p>
+     * Events attempted before are left alone: merged with whatever else came along this time, their notifications
+     * would get another id than they may already have been sent with, see {@link #getKey()}.
+     */
+    public static List<LinkEventDelivery> coalesce(List<LinkEventDelivery> linkEventDeliveries) {
+        Map<List<String>, List<LinkEventDelivery>> byPatientAndHip = new LinkedHashMap<>();
+        for (LinkEventDelivery linkEventDelivery : linkEventDeliveries) {
+            NewCCLinkEvent linkEvent = linkEventDelivery.getLinkEvent();
+            List<String> key = linkEventDelivery.isAttemptedBefore()
+                    ? List.of(String.valueOf(linkEventDelivery.getKey()))
+                    : List.of(String.valueOf(linkEvent.getHealthNumber()), String.valueOf(linkEvent.getHipId()));
+            byPatientAndHip.computeIfAbsent(key, unused -> new ArrayList<>()).add(linkEventDelivery);
+        }
+        List<LinkEventDelivery> coalesced = new ArrayList<>(byPatientAndHip.size());
+        for (List<LinkEventDelivery> sameEvents : byPatientAndHip.values()) {
+            coalesced.add(sameEvents.size() == 1 ? sameEvents.get(0) : merge(sameEvents));
+        }
+        return coalesced;
+    }
+
+    private static LinkEventDelivery merge(List<LinkEventDelivery> sameEvents) {
+        LinkEventDelivery first = sameEvents.get(0);
+        Set<PatientCareContext> careContexts = new LinkedHashSet<>();
+        LocalDateTime timestamp = null;
+        LinkSubscriptions subscriptions = null;
+        for (LinkEventDelivery linkEventDelivery : sameEvents) {
+            NewCCLinkEvent linkEvent = linkEventDelivery.getLinkEvent();
+            if (linkEvent.getCareContexts() != null) {
+                careContexts.addAll(linkEvent.getCareContexts());
+            }
+            if (timestamp == null || (linkEvent.getTimestamp() != null && linkEvent.getTimestamp().isAfter(timestamp))) {
+                timestamp = linkEvent.getTimestamp();
+            }
+            if (subscriptions == null) {
+                subscriptions = linkEventDelivery.getSubscriptions();
+            }
+        }
+        NewCCLinkEvent merged = NewCCLinkEvent.builder()
+                .hipId(first.getLinkEvent().getHipId())
+                .healthNumber(first.getLinkEvent().getHealthNumber())
+                .timestamp(timestamp)
+                .careContexts(new ArrayList<>(careContexts))
+                .build();
+        List<LinkEventDelivery> parts = new ArrayList<>();
+        sameEvents.forEach(linkEventDelivery -> parts.addAll(linkEventDelivery.getParts()));
+        return new LinkEventDelivery(first.getDelivery(), first.getCorrelationId(), merged, subscriptions, parts);
+    }
+}
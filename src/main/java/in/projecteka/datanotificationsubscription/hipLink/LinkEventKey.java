@@ -0,0 +1,64 @@
+package in.projecteka.datanotificationsubscription.hipLink;
+
+import in.projecteka.datanotificationsubscription.common.model.PatientCareContext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Identifies a link event by (hipId, healthNumber, care contexts, timestamp), whatever the order of its care
+ * contexts, so that a redelivered event gets the same key as the original.
+ */
+public final class LinkEventKey {
+    private LinkEventKey() {
+    }
+
+    public static UUID of(NewCCLinkEvent linkEvent) {
+        return UUID.nameUUIDFromBytes(String.join("|",
+                String.valueOf(linkEvent.getHipId()),
+                String.valueOf(linkEvent.getHealthNumber()),
+                careContextsOf(linkEvent.getCareContexts()),
+                String.valueOf(linkEvent.getTimestamp()))
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Id of the notification of a link event sent for a subscription, the same every time the event is processed
+     * so that HIUs can drop notifications they already got.
+     */
+    public static UUID of(NewCCLinkEvent linkEvent, String subscriptionId) {
+        return of(of(linkEvent), subscriptionId);
+    }
+
+    public static UUID of(UUID eventKey, String subscriptionId) {
+        return UUID.nameUUIDFromBytes((eventKey + "|" + subscriptionId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Key of link events merged into one, made of their own keys whatever the order they were merged in. The key of
+     * a single event is its own.
+     */
+    public static UUID of(List<UUID> partKeys) {
+        List<String> keys = partKeys.stream()
+                .map(UUID::toString)
+                .sorted()
+                .distinct()
+                .collect(Collectors.toList());
+        return keys.size() == 1
+               ? UUID.fromString(keys.get(0))
+               : UUID.nameUUIDFromBytes(String.join(",", keys).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String careContextsOf(List<PatientCareContext> careContexts) {
+        if (careContexts == null) {
+            return "";
+        }
+        return careContexts.stream()
+                .map(careContext -> careContext.getPatientReference() + "/" + careContext.getCareContextReference())
+                .sorted()
+                .distinct()
+                .collect(Collectors.joining(","));
+    }
+}
@@ -0,0 +1,103 @@
+package in.projecteka.datanotificationsubscription.outbox;
+
+import in.projecteka.datanotificationsubscription.OutboxProperties;
+import in.projecteka.datanotificationsubscription.common.GatewayServiceClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Drains the notification outbox into the gateway. Due notifications are claimed in batches, sent with a cap on
+ * the requests in flight overall and per HIU, and retried with an exponential backoff until they run out of
+ * attempts. Each is deleted as soon as the gateway took it, so that a slow HIU holding up the rest of the batch
+ * past the lease does not get the ones already sent claimed and sent again.
+ */
+public class NotificationOutboxDispatcher {
+    private static final Logger logger = LoggerFactory.getLogger(NotificationOutboxDispatcher.class);
+    private final NotificationOutboxRepository notificationOutboxRepository;
+    private final GatewayServiceClient gatewayServiceClient;
+    private final OutboxProperties outboxProperties;
+    private Disposable dispatcher;
+
+    public NotificationOutboxDispatcher(NotificationOutboxRepository notificationOutboxRepository,
+                                        GatewayServiceClient gatewayServiceClient,
+                                        OutboxProperties outboxProperties) {
+        this.notificationOutboxRepository = notificationOutboxRepository;
+        this.gatewayServiceClient = gatewayServiceClient;
+        this.outboxProperties = outboxProperties;
+    }
+
+    @PostConstruct
+    public void start() {
+        int batchSize = outboxProperties.getBatchSize();
+        dispatcher = Flux.interval(Duration.ofMillis(outboxProperties.getPollInterval()))
+                .onBackpressureDrop()
+                // keep claiming while batches come back full, rather than waiting for the next poll
+                .concatMap(tick -> drain()
+                        .expand(dispatched -> dispatched == batchSize ? drain() : Mono.empty())
+                        .then(), 1)
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (dispatcher != null) {
+            dispatcher.dispose();
+        }
+    }
+
+    /**
+     * Dispatches one batch of due notifications, and tells how many were claimed.
+     */
+    public Mono<Integer> drain() {
+        int batchSize = outboxProperties.getBatchSize();
+        int concurrencyPerHiu = outboxProperties.getConcurrencyPerHiu();
+        return notificationOutboxRepository.claim(batchSize, Duration.ofMillis(outboxProperties.getLeaseDuration()))
+                .flatMap(notifications -> Flux.fromIterable(notifications)
+                        .groupBy(OutboxNotification::getHiuId, batchSize)
+                        .flatMap(hiuNotifications -> hiuNotifications.flatMap(this::dispatch, concurrencyPerHiu),
+                                outboxProperties.getConcurrency())
+                        .then(Mono.just(notifications.size())))
+                .onErrorResume(throwable -> {
+                    logger.error("Could not drain the notification outbox", throwable);
+                    return Mono.just(0);
+                });
+    }
+
+    private Mono<Void> dispatch(OutboxNotification notification) {
+        return gatewayServiceClient.notifyForSubscription(notification.toRequest(), notification.getHiuId())
+                .then(Mono.defer(() -> notificationOutboxRepository.delete(notification.getId())
+                        // the lease runs out and the notification is sent again
+                        .onErrorResume(error -> {
+                            logger.error("Could not delete sent notification {}", notification.getId(), error);
+                            return Mono.empty();
+                        })))
+                .onErrorResume(throwable -> retryLater(notification, throwable)
+                        // the lease runs out and the notification is claimed again
+                        .onErrorResume(error -> {
+                            logger.error("Could not reschedule notification {}", notification.getId(), error);
+                            return Mono.empty();
+                        }));
+    }
+
+    private Mono<Void> retryLater(OutboxNotification notification, Throwable throwable) {
+        if (notification.getAttempts() >= outboxProperties.getMaximumAttempts()) {
+            logger.error("Giving up on notification {} to HIU {} after {} attempts", notification.getId(),
+                    notification.getHiuId(), notification.getAttempts(), throwable);
+            return notificationOutboxRepository.markFailed(notification.getId());
+        }
+        logger.warn("Could not notify HIU {}, attempt {}", notification.getHiuId(), notification.getAttempts(), throwable);
+        long backoff = outboxProperties.getRetryInterval() << Math.min(notification.getAttempts() - 1, 20);
+        long delay = Math.min(backoff, outboxProperties.getMaximumRetryInterval());
+        return notificationOutboxRepository.reschedule(notification.getId(),
+                LocalDateTime.now(ZoneOffset.UTC).plus(Duration.ofMillis(delay)));
+    }
+}
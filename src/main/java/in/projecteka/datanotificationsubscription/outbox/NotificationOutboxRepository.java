@@ -0,0 +1,99 @@
+package in.projecteka.datanotificationsubscription.outbox;
+
+import in.projecteka.datanotificationsubscription.common.QueryExecutor;
+import in.projecteka.datanotificationsubscription.subscription.model.NotificationEvent;
+import io.vertx.core.json.JsonObject;
+import io.vertx.pgclient.PgPool;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.Tuple;
+import lombok.AllArgsConstructor;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static in.projecteka.datanotificationsubscription.common.Serializer.from;
+import static in.projecteka.datanotificationsubscription.common.Serializer.to;
+
+@AllArgsConstructor
+public class NotificationOutboxRepository {
+    private static final String PENDING = "PENDING";
+    private static final String FAILED = "FAILED";
+
+    private static final String INSERT_NOTIFICATION = "INSERT INTO subscription_notification_outbox " +
+            "(hiu_id, event, status, next_attempt_at, date_created) VALUES ($1, $2, $3, $4, $4)";
+
+    // Leases due notifications to this node. Rows locked by another node are skipped, and a lease which was not
+    // given up (node crashed mid dispatch) expires so the rows are claimed again.
+    private static final String CLAIM_NOTIFICATIONS = "UPDATE subscription_notification_outbox " +
+            "SET claimed_until = $1, attempts = attempts + 1 WHERE id IN (SELECT id FROM subscription_notification_outbox " +
+            "WHERE status = $2 AND next_attempt_at <= $3 AND (claimed_until IS NULL OR claimed_until < $3) " +
+            "ORDER BY next_attempt_at LIMIT $4 FOR UPDATE SKIP LOCKED) " +
+            "RETURNING id, hiu_id, event, attempts";
+
+    private static final String DELETE_NOTIFICATION = "DELETE FROM subscription_notification_outbox WHERE id = $1";
+
+    private static final String RESCHEDULE_NOTIFICATION = "UPDATE subscription_notification_outbox " +
+            "SET next_attempt_at = $2, claimed_until = NULL WHERE id = $1";
+
+    private static final String FAIL_NOTIFICATION = "UPDATE subscription_notification_outbox " +
+            "SET status = $2, claimed_until = NULL WHERE id = $1";
+
+    private final PgPool readWriteClient;
+    private final QueryExecutor queryExecutor;
+
+    /**
+     * Writes all the notifications of a link event, or none of them.
+     */
+    public Mono<Void> add(List<OutboxNotification> notifications) {
+        if (notifications.isEmpty()) {
+            return Mono.empty();
+        }
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+        List<Tuple> batch = notifications.stream()
+                .map(notification -> Tuple.of(notification.getHiuId(),
+                        new JsonObject(from(notification.getEvent())),
+                        PENDING,
+                        now))
+                .collect(Collectors.toList());
+        return queryExecutor.transaction("addOutboxNotifications", readWriteClient, client -> client
+                .preparedQuery(INSERT_NOTIFICATION)
+                .executeBatch(batch))
+                .then();
+    }
+
+    public Mono<List<OutboxNotification>> claim(int limit, Duration lease) {
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+        return queryExecutor.rows("claimOutboxNotifications", readWriteClient, CLAIM_NOTIFICATIONS,
+                Tuple.of(now.plus(lease), PENDING, now, limit), this::notificationOf)
+                .collectList();
+    }
+
+    private OutboxNotification notificationOf(Row row) {
+        return OutboxNotification.builder()
+                .id(row.getLong("id"))
+                .hiuId(row.getString("hiu_id"))
+                .event(to(row.getValue("event").toString(), NotificationEvent.class))
+                .attempts(row.getInteger("attempts"))
+                .build();
+    }
+
+    public Mono<Void> delete(Long id) {
+        return update("deleteOutboxNotification", DELETE_NOTIFICATION, Tuple.of(id));
+    }
+
+    public Mono<Void> reschedule(Long id, LocalDateTime nextAttemptAt) {
+        return update("rescheduleOutboxNotification", RESCHEDULE_NOTIFICATION, Tuple.of(id, nextAttemptAt));
+    }
+
+    public Mono<Void> markFailed(Long id) {
+        return update("failOutboxNotification", FAIL_NOTIFICATION, Tuple.of(id, FAILED));
+    }
+
+    private Mono<Void> update(String queryName, String query, Tuple parameters) {
+        return queryExecutor.query(queryName, readWriteClient, query, parameters).then();
+    }
+}
@@ -0,0 +1,31 @@
+package in.projecteka.datanotificationsubscription.outbox;
+
+import in.projecteka.datanotificationsubscription.subscription.model.HIUSubscriptionNotificationRequest;
+import in.projecteka.datanotificationsubscription.subscription.model.NotificationEvent;
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+@Builder
+@Value
+public class OutboxNotification {
+    Long id;
+    String hiuId;
+    NotificationEvent event;
+    int attempts;
+
+    /**
+     * Request of one dispatch, with an id and timestamp of its own so that a retry is not sent as a replay of the
+     * attempt before.
+     */
+    public HIUSubscriptionNotificationRequest toRequest() {
+        return HIUSubscriptionNotificationRequest.builder()
+                .requestId(UUID.randomUUID())
+                .timestamp(LocalDateTime.now(ZoneOffset.UTC))
+                .event(event)
+                .build();
+    }
+}
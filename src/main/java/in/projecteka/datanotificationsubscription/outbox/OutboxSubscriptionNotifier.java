@@ -0,0 +1,28 @@
+package in.projecteka.datanotificationsubscription.outbox;
+
+import in.projecteka.datanotificationsubscription.SubscriptionNotifier;
+import in.projecteka.datanotificationsubscription.subscription.model.SubscriptionNotification;
+import lombok.AllArgsConstructor;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Leaves the notifications in the outbox, the link event can be acked as soon as they are written. Only the event is
+ * kept, the dispatcher wraps it in a request when it sends it.
+ */
+@AllArgsConstructor
+public class OutboxSubscriptionNotifier implements SubscriptionNotifier {
+    private final NotificationOutboxRepository notificationOutboxRepository;
+
+    @Override
+    public Mono<Void> send(List<SubscriptionNotification> notifications) {
+        return notificationOutboxRepository.add(notifications.stream()
+                .map(notification -> OutboxNotification.builder()
+                        .hiuId(notification.getHiuId())
+                        .event(notification.getEvent())
+                        .build())
+                .collect(Collectors.toList()));
+    }
+}
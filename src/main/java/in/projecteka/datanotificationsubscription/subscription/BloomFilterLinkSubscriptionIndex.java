@@ -0,0 +1,112 @@
+package in.projecteka.datanotificationsubscription.subscription;
+
+import in.projecteka.datanotificationsubscription.common.cache.BloomFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+
+/**
+ * Bloom filter over the patients having at least one granted link subscription. It takes a fixed amount of
+ * memory whatever the number of patients, at the cost of answering "may have subscribers" for a small share of
+ * patients who have none. It is built from the primary once this node listens to the link subscription changes
+ * and rebuilt periodically; patients whose subscriptions are granted or edited through any node are added as soon
+ * as the change reaches this one. Until built, and while the changes are not listened to, every patient may have
+ * subscribers.
+ */
+public class BloomFilterLinkSubscriptionIndex implements LinkSubscriptionIndex {
+    private static final Logger logger = LoggerFactory.getLogger(BloomFilterLinkSubscriptionIndex.class);
+    private static final String FALSE_POSITIVE_PROBABILITY = "link.subscription.filter.false.positive.probability";
+    private final SubscriptionRequestRepository subscriptionRequestRepository;
+    private final LinkSubscriptionChanges linkSubscriptionChanges;
+    private final Duration reloadInterval;
+    private final long expectedPatients;
+    private final double falsePositiveProbability;
+    private volatile BloomFilter patients;
+    private Disposable following;
+
+    public BloomFilterLinkSubscriptionIndex(SubscriptionRequestRepository subscriptionRequestRepository,
+                                            LinkSubscriptionChanges linkSubscriptionChanges,
+                                            Duration reloadInterval,
+                                            MeterRegistry meterRegistry,
+                                            long expectedPatients,
+                                            double falsePositiveProbability) {
+        this.subscriptionRequestRepository = subscriptionRequestRepository;
+        this.linkSubscriptionChanges = linkSubscriptionChanges;
+        this.reloadInterval = reloadInterval;
+        this.expectedPatients = expectedPatients;
+        this.falsePositiveProbability = falsePositiveProbability;
+        meterRegistry.gauge(FALSE_POSITIVE_PROBABILITY, this, BloomFilterLinkSubscriptionIndex::expectedFalsePositiveProbability);
+    }
+
+    @PostConstruct
+    public void start() {
+        following = linkSubscriptionChanges.follow(reloadInterval, this::reload, this::add, this::forget);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (following != null) {
+            following.dispose();
+        }
+        linkSubscriptionChanges.close();
+    }
+
+    @Override
+    public boolean mayHaveSubscribers(String patientId, String hipId) {
+        BloomFilter filter = patients;
+        return filter == null || filter.mightContain(patientId);
+    }
+
+    /**
+     * Tells every node, this one included, to add the patient.
+     */
+    @Override
+    public Mono<Void> refresh(String patientId) {
+        return linkSubscriptionChanges.publish(patientId)
+                .onErrorResume(throwable -> {
+                    logger.error("Could not tell the other nodes to add patient {} to their link subscription filter",
+                            patientId, throwable);
+                    return Mono.empty();
+                });
+    }
+
+    public double expectedFalsePositiveProbability() {
+        BloomFilter filter = patients;
+        return filter == null ? 1 : filter.expectedFalsePositiveProbability();
+    }
+
+    Mono<Void> reload() {
+        return subscriptionRequestRepository.getPatientsWithLinkSubscriptions()
+                .doOnNext(patientIds -> {
+                    BloomFilter reloaded = BloomFilter.create(expectedPatients, falsePositiveProbability);
+                    patientIds.forEach(reloaded::put);
+                    patients = reloaded;
+                    logger.info("Loaded {} patients with link subscriptions into a filter of {} bytes, false positive probability {}",
+                            patientIds.size(), reloaded.sizeInBytes(), reloaded.expectedFalsePositiveProbability());
+                })
+                .onErrorResume(throwable -> {
+                    logger.error("Could not reload patients with link subscriptions", throwable);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    Mono<Void> add(String patientId) {
+        return Mono.fromRunnable(() -> {
+            BloomFilter filter = patients;
+            if (filter != null) {
+                filter.put(patientId);
+            }
+        });
+    }
+
+    void forget() {
+        patients = null;
+    }
+}
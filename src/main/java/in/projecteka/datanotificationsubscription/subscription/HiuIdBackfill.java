@@ -0,0 +1,63 @@
+package in.projecteka.datanotificationsubscription.subscription;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+
+/**
+ * Fills hiu_id of the subscription requests written without it, those which predate the column and those written by
+ * older instances during a rolling deploy, in small batches so that no sweep holds many row locks at once. Runs at
+ * startup and then every interval.
+ */
+public class HiuIdBackfill {
+    private static final Logger logger = LoggerFactory.getLogger(HiuIdBackfill.class);
+    private final SubscriptionRequestRepository subscriptionRequestRepository;
+    private final int batchSize;
+    private final Duration interval;
+    private Disposable backfill;
+
+    public HiuIdBackfill(SubscriptionRequestRepository subscriptionRequestRepository, int batchSize, Duration interval) {
+        this.subscriptionRequestRepository = subscriptionRequestRepository;
+        this.batchSize = batchSize;
+        this.interval = interval;
+    }
+
+    @PostConstruct
+    public void start() {
+        backfill = Flux.interval(Duration.ZERO, interval)
+                .onBackpressureDrop()
+                .concatMap(tick -> sweep(), 1)
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (backfill != null) {
+            backfill.dispose();
+        }
+    }
+
+    /**
+     * Backfills batch after batch until one comes back short, and tells how many requests were filled.
+     */
+    public Mono<Integer> sweep() {
+        return subscriptionRequestRepository.backfillHiuIds(batchSize)
+                .expand(filled -> filled == batchSize ? subscriptionRequestRepository.backfillHiuIds(batchSize) : Mono.empty())
+                .reduce(0, Integer::sum)
+                .doOnNext(filled -> {
+                    if (filled > 0) {
+                        logger.info("Backfilled hiu_id of {} subscription requests", filled);
+                    }
+                })
+                .onErrorResume(throwable -> {
+                    logger.error("Could not backfill hiu_id of subscription requests", throwable);
+                    return Mono.just(0);
+                });
+    }
+}
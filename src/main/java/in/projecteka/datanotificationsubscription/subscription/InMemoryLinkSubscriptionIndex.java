@@ -0,0 +1,129 @@
+package in.projecteka.datanotificationsubscription.subscription;
+
+import in.projecteka.datanotificationsubscription.subscription.model.LinkSubscriptionEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the active link subscriptions of every patient in memory. It is loaded from the primary once this node
+ * listens to the link subscription changes, reloaded periodically, and refreshed per patient on every approval or
+ * edit, whichever node it went through. Until loaded, and while the changes are not listened to, every patient may
+ * have subscribers.
+ */
+public class InMemoryLinkSubscriptionIndex implements LinkSubscriptionIndex {
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryLinkSubscriptionIndex.class);
+    private final SubscriptionRequestRepository subscriptionRequestRepository;
+    private final LinkSubscriptionChanges linkSubscriptionChanges;
+    private final Duration reloadInterval;
+    // Patients whose refresh failed, they are treated as having subscribers until the next reload
+    private final Set<String> unknownPatients = ConcurrentHashMap.newKeySet();
+    private volatile Map<String, List<LinkSubscriptionEntry>> entriesByPatient;
+    private Disposable following;
+
+    public InMemoryLinkSubscriptionIndex(SubscriptionRequestRepository subscriptionRequestRepository,
+                                         LinkSubscriptionChanges linkSubscriptionChanges,
+                                         Duration reloadInterval) {
+        this.subscriptionRequestRepository = subscriptionRequestRepository;
+        this.linkSubscriptionChanges = linkSubscriptionChanges;
+        this.reloadInterval = reloadInterval;
+    }
+
+    @PostConstruct
+    public void start() {
+        following = linkSubscriptionChanges.follow(reloadInterval, this::reload, this::refreshPatient, this::forget);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (following != null) {
+            following.dispose();
+        }
+        linkSubscriptionChanges.close();
+    }
+
+    @Override
+    public boolean mayHaveSubscribers(String patientId, String hipId) {
+        Map<String, List<LinkSubscriptionEntry>> entries = entriesByPatient;
+        if (entries == null || unknownPatients.contains(patientId)) {
+            return true;
+        }
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+        return entries.getOrDefault(patientId, List.of())
+                .stream()
+                .anyMatch(entry -> entry.isApplicableFor(hipId, now));
+    }
+
+    /**
+     * Tells every node, this one included, to refresh the patient.
+     */
+    @Override
+    public Mono<Void> refresh(String patientId) {
+        return linkSubscriptionChanges.publish(patientId)
+                .onErrorResume(throwable -> {
+                    logger.error("Could not tell the other nodes to refresh link subscriptions of patient {}",
+                            patientId, throwable);
+                    return Mono.empty();
+                });
+    }
+
+    Mono<Void> refreshPatient(String patientId) {
+        return subscriptionRequestRepository.getActiveLinkSubscriptionEntries(patientId)
+                .doOnNext(entries -> {
+                    update(patientId, entries);
+                    unknownPatients.remove(patientId);
+                })
+                .onErrorResume(throwable -> {
+                    logger.error("Could not refresh link subscriptions of patient {}", patientId, throwable);
+                    unknownPatients.add(patientId);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    Mono<Void> reload() {
+        return subscriptionRequestRepository.getActiveLinkSubscriptionEntries()
+                .doOnNext(entries -> {
+                    Map<String, List<LinkSubscriptionEntry>> reloaded = new ConcurrentHashMap<>();
+                    for (LinkSubscriptionEntry entry : entries) {
+                        reloaded.computeIfAbsent(entry.getPatientId(), patientId -> new ArrayList<>()).add(entry);
+                    }
+                    entriesByPatient = reloaded;
+                    unknownPatients.clear();
+                    logger.info("Loaded link subscriptions of {} patients", reloaded.size());
+                })
+                .onErrorResume(throwable -> {
+                    logger.error("Could not reload link subscriptions", throwable);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    void forget() {
+        entriesByPatient = null;
+    }
+
+    private void update(String patientId, List<LinkSubscriptionEntry> entries) {
+        Map<String, List<LinkSubscriptionEntry>> current = entriesByPatient;
+        if (current == null) {
+            return;
+        }
+        if (entries.isEmpty()) {
+            current.remove(patientId);
+        } else {
+            current.put(patientId, entries);
+        }
+    }
+}
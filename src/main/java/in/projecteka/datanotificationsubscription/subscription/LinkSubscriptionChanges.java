@@ -0,0 +1,94 @@
+package in.projecteka.datanotificationsubscription.subscription;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.rabbitmq.BindingSpecification;
+import reactor.rabbitmq.ExchangeSpecification;
+import reactor.rabbitmq.OutboundMessage;
+import reactor.rabbitmq.QueueSpecification;
+import reactor.rabbitmq.Receiver;
+import reactor.rabbitmq.Sender;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static in.projecteka.datanotificationsubscription.common.Constants.LINK_SUBSCRIPTION_CHANGES_EXCHANGE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Tells every node that the link subscriptions of a patient were granted or edited, so that the link subscription
+ * index of each node picks them up and not only the one of the node which took the write. Changes go to a fanout
+ * exchange which every node consumes through a queue of its own, declared when it starts listening.
+ */
+public class LinkSubscriptionChanges {
+    private static final Logger logger = LoggerFactory.getLogger(LinkSubscriptionChanges.class);
+    // Leaves no queue behind for a node which went away before it started consuming
+    private static final int UNUSED_QUEUE_EXPIRY = 60000;
+    private final Sender sender;
+    private final Receiver receiver;
+
+    public LinkSubscriptionChanges(Sender sender, Receiver receiver) {
+        this.sender = sender;
+        this.receiver = receiver;
+    }
+
+    public Mono<Void> publish(String patientId) {
+        OutboundMessage message = new OutboundMessage(LINK_SUBSCRIPTION_CHANGES_EXCHANGE, "", patientId.getBytes(UTF_8));
+        return sender.send(Mono.just(message))
+                .retryWhen(Retry.backoff(3, Duration.ofMillis(100)));
+    }
+
+    /**
+     * Binds a queue of this node to the changes and emits an empty value once it is bound, and then the patient
+     * of every change published since. Changes published before the empty value were missed, everything has to be
+     * reloaded. Every subscription binds a queue of its own.
+     */
+    public Flux<Optional<String>> changes() {
+        return sender.declareExchange(ExchangeSpecification.exchange(LINK_SUBSCRIPTION_CHANGES_EXCHANGE)
+                .type("fanout")
+                .durable(true))
+                .then(sender.declareQueue(QueueSpecification.queue()
+                        .autoDelete(true)
+                        .arguments(Map.of("x-expires", UNUSED_QUEUE_EXPIRY))))
+                .flatMapMany(queue -> sender.bind(BindingSpecification.binding(LINK_SUBSCRIPTION_CHANGES_EXCHANGE, "", queue.getQueue()))
+                        .thenMany(Flux.concat(Mono.just(Optional.<String>empty()),
+                                receiver.consumeAutoAck(queue.getQueue())
+                                        .map(delivery -> Optional.of(new String(delivery.getBody(), UTF_8))))));
+    }
+
+    /**
+     * Keeps an index in step with the changes: reloads it once bound and then every reloadInterval, and refreshes
+     * the patient of every change in between. Reloads and refreshes run one at a time, so a reload never replaces
+     * a refresh which came after it. Once the queue is lost the index is told to forget what it holds, as changes
+     * may be missed from then on, until it is bound and reloaded again.
+     */
+    public Disposable follow(Duration reloadInterval,
+                             Supplier<Mono<Void>> reload,
+                             Function<String, Mono<Void>> refresh,
+                             Runnable forget) {
+        return Flux.defer(this::changes)
+                .mergeWith(Flux.interval(reloadInterval, reloadInterval)
+                        .onBackpressureDrop()
+                        .map(tick -> Optional.<String>empty()))
+                .concatMap(change -> change.map(refresh).orElseGet(reload), 1)
+                .doOnError(throwable -> forget.run())
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofMinutes(1))
+                        .doBeforeRetry(signal -> logger.warn("Lost the link subscription changes, listening again",
+                                signal.failure())))
+                .subscribe(unused -> {
+                }, throwable -> logger.error("Stopped following link subscription changes", throwable));
+    }
+
+    public void close() {
+        receiver.close();
+        sender.close();
+    }
+}
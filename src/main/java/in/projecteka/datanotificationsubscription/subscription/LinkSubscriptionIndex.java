@@ -0,0 +1,16 @@
+package in.projecteka.datanotificationsubscription.subscription;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Answers whether a patient can have link subscribers without going to the database. Implementations may
+ * answer true for a patient who has no subscribers, but never false for a patient who has.
+ */
+public interface LinkSubscriptionIndex {
+    boolean mayHaveSubscribers(String patientId, String hipId);
+
+    /**
+     * To be called once the link subscriptions of the patient were granted or edited.
+     */
+    Mono<Void> refresh(String patientId);
+}
@@ -0,0 +1,31 @@
+package in.projecteka.datanotificationsubscription.subscription;
+
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowSet;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Supplier;
+
+/**
+ * Page queries select the total of the whole listing next to every row with {@code count(*) OVER() AS total_count},
+ * so a page and its total come back in one round trip. A page past the end has no row to carry the total, only then
+ * is the separate count query run.
+ */
+final class ListQueries {
+    static final String TOTAL_COUNT = "total_count";
+
+    private ListQueries() {
+    }
+
+    static int countOf(RowSet<Row> rows) {
+        return rows.iterator().next().getInteger("count");
+    }
+
+    static Mono<Integer> totalOf(RowSet<Row> page, int offset, Supplier<Mono<Integer>> count) {
+        var rows = page.iterator();
+        if (rows.hasNext()) {
+            return Mono.just(rows.next().getInteger(TOTAL_COUNT));
+        }
+        return offset > 0 ? count.get() : Mono.just(0);
+    }
+}
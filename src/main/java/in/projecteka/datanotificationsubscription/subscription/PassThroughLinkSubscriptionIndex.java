@@ -0,0 +1,15 @@
+package in.projecteka.datanotificationsubscription.subscription;
+
+import reactor.core.publisher.Mono;
+
+public class PassThroughLinkSubscriptionIndex implements LinkSubscriptionIndex {
+    @Override
+    public boolean mayHaveSubscribers(String patientId, String hipId) {
+        return true;
+    }
+
+    @Override
+    public Mono<Void> refresh(String patientId) {
+        return Mono.empty();
+    }
+}
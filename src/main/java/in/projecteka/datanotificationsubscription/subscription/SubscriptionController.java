@@ -1,12 +1,14 @@
 package in.projecteka.datanotificationsubscription.subscription;
 
 import in.projecteka.datanotificationsubscription.common.Caller;
+import in.projecteka.datanotificationsubscription.subscription.model.PageCursor;
 import in.projecteka.datanotificationsubscription.subscription.model.SubscriptionEditAndApprovalRequest;
 import in.projecteka.datanotificationsubscription.subscription.model.SubscriptionEditAndApprovalRequestValidator;
 import in.projecteka.datanotificationsubscription.subscription.model.SubscriptionProperties;
 import in.projecteka.datanotificationsubscription.subscription.model.SubscriptionResponse;
 import in.projecteka.datanotificationsubscription.subscription.model.SubscriptionsRepresentation;
 import lombok.AllArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.security.core.context.ReactiveSecurityContextHolder;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -14,6 +16,7 @@ import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import javax.validation.Valid;
@@ -21,6 +24,7 @@ import javax.validation.Valid;
 import static in.projecteka.datanotificationsubscription.common.Constants.INTERNAL_PATH_SUBSCRIPTION_REQUEST_BY_ID;
 import static in.projecteka.datanotificationsubscription.common.Constants.APP_PATH_SUBSCRIPTION_DETAILS;
 import static in.projecteka.datanotificationsubscription.common.Constants.INTERNAL_PATH_SUBSCRIPTIONS;
+import static in.projecteka.datanotificationsubscription.common.Constants.INTERNAL_PATH_SUBSCRIPTIONS_EXPORT;
 
 @RestController
 @AllArgsConstructor
@@ -33,17 +37,31 @@ public class SubscriptionController {
     public Mono<SubscriptionsRepresentation> getSubscriptions(@RequestParam String patientId,
                                                               @RequestParam String hiuId,
                                                               @RequestParam(defaultValue = "-1") int limit,
-                                                              @RequestParam(defaultValue = "0") int offset) {
+                                                              @RequestParam(defaultValue = "0") int offset,
+                                                              @RequestParam(required = false) String cursor,
+                                                              @RequestParam(defaultValue = "false") boolean withTotal) {
         int pageSize = getPageSize(limit);
-        return ReactiveSecurityContextHolder.getContext()
-                .map(securityContext -> (Caller) securityContext.getAuthentication().getPrincipal())
-                .flatMap(caller -> subscriptionService.getSubscriptionsFor(patientId, hiuId, pageSize, offset))
+        return Mono.fromCallable(() -> PageCursor.decodeIfPresent(cursor))
+                .flatMap(pageCursor -> ReactiveSecurityContextHolder.getContext()
+                        .map(securityContext -> (Caller) securityContext.getAuthentication().getPrincipal())
+                        .flatMap(caller -> pageCursor.isPresent()
+                                ? subscriptionService.getSubscriptionsFor(patientId, hiuId, pageSize, pageCursor.get(), withTotal)
+                                : subscriptionService.getSubscriptionsFor(patientId, hiuId, pageSize, offset)))
 
                 .map(subscriptions -> SubscriptionsRepresentation.builder()
                         .requests(subscriptions.getResult())
                         .size(subscriptions.getTotal())
                         .limit(pageSize)
-                        .offset(offset).build());
+                        .offset(offset)
+                        .nextCursor(subscriptions.getNextCursor()).build());
+    }
+
+    /**
+     * Streams the subscriptions of an HIU as newline delimited JSON, written out as they are read.
+     */
+    @GetMapping(value = INTERNAL_PATH_SUBSCRIPTIONS_EXPORT, produces = MediaType.APPLICATION_STREAM_JSON_VALUE)
+    public Flux<SubscriptionResponse> exportSubscriptions(@RequestParam String hiuId) {
+        return subscriptionService.exportSubscriptionsOf(hiuId);
     }
 
     private int getPageSize(int limit) {
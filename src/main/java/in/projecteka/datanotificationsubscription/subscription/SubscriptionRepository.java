@@ -1,50 +1,72 @@
 package in.projecteka.datanotificationsubscription.subscription;
 
-import in.projecteka.datanotificationsubscription.common.DbOperationError;
+import in.projecteka.datanotificationsubscription.common.QueryExecutor;
+import in.projecteka.datanotificationsubscription.common.ReadRouter;
 import in.projecteka.datanotificationsubscription.subscription.model.GrantedSubscription;
 import in.projecteka.datanotificationsubscription.subscription.model.ListResult;
+import in.projecteka.datanotificationsubscription.subscription.model.PageCursor;
 import in.projecteka.datanotificationsubscription.subscription.model.SubscriptionResponse;
 import in.projecteka.datanotificationsubscription.subscription.model.SubscriptionStatus;
-import io.vertx.core.AsyncResult;
 import io.vertx.core.json.JsonArray;
 import io.vertx.pgclient.PgPool;
 import io.vertx.sqlclient.Row;
 import io.vertx.sqlclient.RowSet;
 import io.vertx.sqlclient.Tuple;
 import lombok.AllArgsConstructor;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static in.projecteka.datanotificationsubscription.common.Serializer.from;
+import static in.projecteka.datanotificationsubscription.subscription.ListQueries.totalOf;
 
 @AllArgsConstructor
 public class SubscriptionRepository {
-    private static final String GET_SUBSCRIPTIONS_FOR_PATIENT_BY_HIU_QUERY =
+    // The HIU id is read out of details for requests not backfilled yet, written by instances predating hiu_id
+    private static final String SUBSCRIPTIONS_FOR_PATIENT_BY_HIU = " FROM hiu_subscription hs WHERE hs.patient_id=$1" +
+            " AND COALESCE(hs.hiu_id, hs.details -> 'hiu' ->> 'id')=$2 AND EXISTS (SELECT 1 FROM subscription_source ss" +
+            " WHERE ss.subscription_id=hs.subscription_id AND ss.active = true)";
+    static final String PAGE_SUBSCRIPTIONS_FOR_PATIENT_BY_HIU_QUERY =
+            "SELECT hs.subscription_id, count(*) OVER() AS total_count" + SUBSCRIPTIONS_FOR_PATIENT_BY_HIU +
+                    " ORDER BY hs.date_modified DESC, hs.request_id DESC LIMIT $3 OFFSET $4";
+    private static final String PAGE_SUBSCRIPTIONS_FOR_PATIENT_BY_HIU_AFTER_CURSOR_QUERY =
+            "SELECT hs.subscription_id" + SUBSCRIPTIONS_FOR_PATIENT_BY_HIU +
+                    " AND (hs.date_modified, hs.request_id) < ($3, $4) ORDER BY hs.date_modified DESC, hs.request_id DESC LIMIT $5";
+    private static final String COUNT_SUBSCRIPTIONS_FOR_PATIENT_BY_HIU_QUERY =
+            "SELECT count(*)" + SUBSCRIPTIONS_FOR_PATIENT_BY_HIU;
+    private static final String GET_ACTIVE_SOURCES_OF_SUBSCRIPTIONS_QUERY =
             "SELECT sr.subscription_id, sr.request_id, sr.patient_id, sr.status as request_status, sr.date_created, sr.date_modified," +
                     " sr.details, sr.requester_type, s.hip_id, s.category_link, s.category_data, s.hi_types, s.period_from," +
                     " s.period_to, s.status as subscription_status, s.excluded FROM hiu_subscription sr INNER JOIN" +
-                    " subscription_source s ON sr.subscription_id=s.subscription_id WHERE sr.patient_id=$1 and" +
-                    " sr.details -> 'hiu' ->> 'id'=$2 AND s.active = true ORDER BY date_modified DESC LIMIT $3 OFFSET $4";
-    private static final String COUNT_SUBSCRIPTIONS_FOR_PATIENT_BY_HIU_QUERY =
-            "SELECT count(sr.subscription_id) FROM hiu_subscription sr INNER JOIN subscription_source s " +
-                    "ON sr.subscription_id=s.subscription_id WHERE sr.patient_id=$1 and " +
-                    "sr.details -> 'hiu' ->> 'id'=$2 AND s.active = true";
+                    " subscription_source s ON sr.subscription_id=s.subscription_id WHERE sr.subscription_id = ANY($1)" +
+                    " AND s.active = true";
     private static final String GET_SUBSCRIPTION_DETAILS_QUERY =
             "SELECT sr.subscription_id, sr.request_id, sr.patient_id, sr.status as request_status, sr.date_created, sr.date_modified," +
                     " sr.details, sr.requester_type, s.hip_id, s.category_link, s.category_data, s.hi_types, s.period_from," +
                     " s.period_to, s.status as subscription_status, s.excluded FROM hiu_subscription sr INNER JOIN" +
                     " subscription_source s ON sr.subscription_id=s.subscription_id WHERE sr.subscription_id=$1 AND (s.active = true OR $2 = false)";
+    // Spelled out rather than with COALESCE, so that the (hiu_id, subscription_id) index and the partial index of
+    // the requests still lacking hiu_id can both serve it
+    private static final String EXPORT_SUBSCRIPTIONS_OF_HIU_QUERY =
+            "SELECT sr.subscription_id, sr.request_id, sr.patient_id, sr.status as request_status, sr.date_created, sr.date_modified," +
+                    " sr.details, sr.requester_type, s.hip_id, s.category_link, s.category_data, s.hi_types, s.period_from," +
+                    " s.period_to, s.status as subscription_status, s.excluded FROM hiu_subscription sr INNER JOIN" +
+                    " subscription_source s ON sr.subscription_id=s.subscription_id WHERE (sr.hiu_id=$1" +
+                    " OR (sr.hiu_id IS NULL AND sr.details -> 'hiu' ->> 'id'=$1))" +
+                    " AND s.active = true ORDER BY sr.subscription_id";
 
     private static final String DEACTIVATE_SUBSCRIPTION_SOURCES = "UPDATE subscription_source SET active = false" +
-            " WHERE (hip_id IN ( %s ) OR hip_id is NULL) AND subscription_id = $1";
+            " WHERE (hip_id = ANY($2) OR hip_id is NULL) AND subscription_id = $1";
 
     private static final String UPSERT_SUBSCRIPTION_SOURCE = "INSERT INTO subscription_source " +
             "(subscription_id, status, category_link, category_data, hip_id, excluded, period_from, period_to, hi_types) " +
@@ -54,8 +76,6 @@ public class SubscriptionRepository {
             "category_data = EXCLUDED.category_data, excluded = EXCLUDED.excluded, period_from = EXCLUDED.period_from, " +
             "period_to = EXCLUDED.period_to";
 
-    private static final Logger logger = LoggerFactory.getLogger(SubscriptionRequestService.class);
-
     public static final String SUBSCRIPTION_ID = "subscription_id";
     public static final String SUBSCRIPTION_REQUEST_ID = "request_id";
     public static final String DETAILS = "details";
@@ -73,67 +93,132 @@ public class SubscriptionRepository {
     public static final String REQUESTER_TYPE = "requester_type";
     public static final String EXCLUDED = "excluded";
 
-    public static final String FAILED_TO_UPDATE_SUBSCRIPTION_SOURCES = "Failed to update subscription sources";
-
-    private final PgPool readOnlyClient;
+    private final ReadRouter readRouter;
+    private final QueryExecutor queryExecutor;
     private final PgPool readWriteClient;
+    private final PgPool streamClient;
     private final SubscriptionResponseMapper subscriptionResponseMapper;
+    private final int streamFetchSize;
+    private final Duration streamStallTimeout;
 
+    /**
+     * Pages in two steps: the ids of the page's subscriptions first, then the active sources of all of them in one
+     * query. Limit and offset count subscriptions, so a subscription never straddles two pages.
+     */
     public Mono<ListResult<List<SubscriptionResponse>>> getSubscriptionsFor(String patientId, String hiuId, int limit, int offset) {
-        return Mono.create(monoSink -> readOnlyClient.preparedQuery(GET_SUBSCRIPTIONS_FOR_PATIENT_BY_HIU_QUERY)
-                .execute(Tuple.of(patientId, hiuId, limit, offset), handler -> {
-                    List<SubscriptionResponse> subscriptions = mapToSubscriptions(handler);
-                    readOnlyClient.preparedQuery(COUNT_SUBSCRIPTIONS_FOR_PATIENT_BY_HIU_QUERY)
-                            .execute(Tuple.of(patientId, hiuId), counter -> {
-                                if (counter.failed()) {
-                                    logger.error(counter.cause().getMessage(), counter.cause());
-                                    monoSink.error(new DbOperationError());
-                                    return;
-                                }
-                                Integer count = counter.result().iterator().next().getInteger("count");
-                                monoSink.success(new ListResult<>(subscriptions, count));
-                            });
-                }));
+        PgPool reader = readRouter.readerFor(patientId);
+        return queryExecutor.cancellableQuery("getSubscriptionsFor", reader, PAGE_SUBSCRIPTIONS_FOR_PATIENT_BY_HIU_QUERY,
+                Tuple.of(patientId, hiuId, limit, offset))
+                .flatMap(page -> Mono.zip(
+                        totalOf(page, offset, () -> countOf(reader, patientId, hiuId)),
+                        subscriptionsOf(reader, subscriptionIdsOf(page)),
+                        (total, subscriptions) -> listResultOf(subscriptions, page.size() == limit, total)));
+    }
 
+    public Mono<ListResult<List<SubscriptionResponse>>> getSubscriptionsFor(String patientId,
+                                                                           String hiuId,
+                                                                           int limit,
+                                                                           PageCursor cursor,
+                                                                           boolean withTotal) {
+        PgPool reader = readRouter.readerFor(patientId);
+        Mono<List<SubscriptionResponse>> page = queryExecutor.query("getSubscriptionsForAfterCursor", reader,
+                PAGE_SUBSCRIPTIONS_FOR_PATIENT_BY_HIU_AFTER_CURSOR_QUERY,
+                Tuple.of(patientId, hiuId, cursor.getDateModified(), cursor.getRequestId(), limit))
+                .flatMap(rows -> subscriptionsOf(reader, subscriptionIdsOf(rows)));
+        Mono<Integer> total = withTotal
+                ? countOf(reader, patientId, hiuId)
+                : Mono.just(ListResult.UNKNOWN_TOTAL);
+        return Mono.zip(page, total,
+                (subscriptions, count) -> listResultOf(subscriptions, subscriptions.size() == limit, count));
     }
 
-    public Mono<SubscriptionResponse> getSubscriptionDetailsForID(String subscriptionId, boolean onlyActive) {
-        return Mono.create(monoSink -> readOnlyClient.preparedQuery(GET_SUBSCRIPTION_DETAILS_QUERY)
-                .execute(Tuple.of(subscriptionId, onlyActive), handler -> {
-                    if (handler.failed()) {
-                        logger.error(handler.cause().getMessage(), handler.cause());
-                        monoSink.error(new DbOperationError());
-                        return;
-                    }
-
-                    if(handler.result().rowCount() == 0){
-                        monoSink.success();
-                        return;
-                    }
-
-                    List<SubscriptionResponse> subscriptions = mapToSubscriptions(handler);
-                    monoSink.success(subscriptions.get(0));
-                }));
+    private Mono<Integer> countOf(PgPool reader, String patientId, String hiuId) {
+        return queryExecutor.cancellableQuery("countSubscriptionsFor", reader, COUNT_SUBSCRIPTIONS_FOR_PATIENT_BY_HIU_QUERY,
+                Tuple.of(patientId, hiuId))
+                .map(ListQueries::countOf);
+    }
+
+    private List<String> subscriptionIdsOf(RowSet<Row> page) {
+        List<String> subscriptionIds = new ArrayList<>(page.size());
+        for (Row row : page) {
+            subscriptionIds.add(row.getString(SUBSCRIPTION_ID));
+        }
+        return subscriptionIds;
+    }
+
+    /**
+     * Returns the subscriptions in the order of the given ids. A subscription whose sources were all deactivated
+     * since its id was paged is left out.
+     */
+    private Mono<List<SubscriptionResponse>> subscriptionsOf(PgPool reader, List<String> subscriptionIds) {
+        if (subscriptionIds.isEmpty()) {
+            return Mono.just(new ArrayList<>());
+        }
+        return queryExecutor.query("getActiveSourcesOfSubscriptions", reader, GET_ACTIVE_SOURCES_OF_SUBSCRIPTIONS_QUERY,
+                Tuple.of(subscriptionIds.toArray(new String[0])))
+                .map(rows -> {
+                    Map<String, SubscriptionResponse> byId = new HashMap<>();
+                    mapToSubscriptions(rows).forEach(subscription ->
+                            byId.put(subscription.getSubscriptionId().toString(), subscription));
+                    return subscriptionIds.stream()
+                            .map(byId::get)
+                            .filter(Objects::nonNull)
+                            .collect(Collectors.toList());
+                });
     }
 
-    private List<SubscriptionResponse> mapToSubscriptions(AsyncResult<RowSet<Row>> handler) {
-        if (handler.failed()) {
-            return new ArrayList<>();
+    private ListResult<List<SubscriptionResponse>> listResultOf(List<SubscriptionResponse> subscriptions,
+                                                                boolean fullPage,
+                                                                int total) {
+        if (subscriptions.isEmpty() || !fullPage) {
+            return new ListResult<>(subscriptions, total);
         }
+        SubscriptionResponse last = subscriptions.get(subscriptions.size() - 1);
+        return new ListResult<>(subscriptions, total,
+                new PageCursor(last.getDateGranted(), last.getSubscriptionRequestId()).encode());
+    }
+
+    /**
+     * Streams all the subscriptions of an HIU with their active sources, read through a cursor and mapped as the
+     * rows arrive, so that a large export is never held in memory whole. Exports run on a pool of their own, and one
+     * whose client stops reading for streamStallTimeout is cancelled so that it does not keep its connection.
+     */
+    public Flux<SubscriptionResponse> streamSubscriptionsOf(String hiuId) {
+        return subscriptionResponseMapper.mapRowsToSubscriptionResponses(
+                queryExecutor.stream("streamSubscriptionsOf", streamClient, EXPORT_SUBSCRIPTIONS_OF_HIU_QUERY,
+                        Tuple.of(hiuId), streamFetchSize, Function.identity())
+                        .timeout(streamStallTimeout));
+    }
+
+    /**
+     * Inactive sources are only asked for by edits, which write right after reading, so those read from the primary.
+     * Active ones read from the primary only while the subscription was written within the sticky window.
+     */
+    public Mono<SubscriptionResponse> getSubscriptionDetailsForID(String subscriptionId, boolean onlyActive) {
+        PgPool reader = onlyActive ? readRouter.readerFor(subscriptionId) : readRouter.primary();
+        return queryExecutor.query("getSubscriptionDetailsForID", reader, GET_SUBSCRIPTION_DETAILS_QUERY,
+                Tuple.of(subscriptionId, onlyActive))
+                .filter(rows -> rows.rowCount() > 0)
+                .map(rows -> mapToSubscriptions(rows).get(0));
+    }
+
+    private List<SubscriptionResponse> mapToSubscriptions(RowSet<Row> results) {
         List<Row> rows = new ArrayList<>();
-        handler.result().iterator().forEachRemaining(rows::add);
+        results.iterator().forEachRemaining(rows::add);
         return subscriptionResponseMapper.mapRowsToSubscriptionResponses(rows);
     }
 
     public Mono<Void> editSubscriptionNotApplicableForAllHIPs(String subscriptionId,
+                                                              String patientId,
                                                               List<GrantedSubscription> includedSources,
                                                               Set<String> hipsToBeDeactivated) {
         var batch = includedSources.stream().map(source -> toTuple(source, subscriptionId, false))
                 .collect(Collectors.toList());
-        return editSubscriptionSourcesInBatch(subscriptionId, hipsToBeDeactivated, batch);
+        return editSubscriptionSourcesInBatch(subscriptionId, patientId, hipsToBeDeactivated, batch);
     }
 
     public Mono<Void> editSubscriptionApplicableForAllHIPs(String subscriptionId,
+                                                           String patientId,
                                                            Set<String> hipsToBeDeactivated,
                                                            GrantedSubscription includedSource,
                                                            List<GrantedSubscription> excludedSources) {
@@ -142,34 +227,30 @@ public class SubscriptionRepository {
 
         batch.add(toTuple(includedSource, subscriptionId, false));
 
-        return editSubscriptionSourcesInBatch(subscriptionId, hipsToBeDeactivated, batch);
+        return editSubscriptionSourcesInBatch(subscriptionId, patientId, hipsToBeDeactivated, batch);
     }
 
-    private Mono<Void> editSubscriptionSourcesInBatch(String subscriptionId, Set<String> hipsToBeDeactivated, List<Tuple> batch) {
-        String hipsInClause = joinByComma(hipsToBeDeactivated);
-
-        if(hipsInClause.isEmpty()) {
-            hipsInClause = null;
-        }
+    /**
+     * Once committed, reads of the patient and of the subscription go to the primary for the sticky window, so that
+     * they see the edit.
+     */
+    private Mono<Void> editSubscriptionSourcesInBatch(String subscriptionId,
+                                                      String patientId,
+                                                      Set<String> hipsToBeDeactivated,
+                                                      List<Tuple> batch) {
+        var hipIds = hipsToBeDeactivated.toArray(new String[0]);
 
-        var queryToDeactivateSources = String.format(DEACTIVATE_SUBSCRIPTION_SOURCES, hipsInClause);
-
-        return Mono.create(monoSink ->
-                readWriteClient.withTransaction(client -> client
-                        .preparedQuery(queryToDeactivateSources)
-                        .execute(Tuple.of(subscriptionId))
-                        .flatMap(discard -> client
-                                .preparedQuery(UPSERT_SUBSCRIPTION_SOURCE)
-                                .executeBatch(batch)
-                        ))
-                        .onSuccess(result -> {
-                            monoSink.success();
-                        })
-                        .onFailure(err -> {
-                            logger.error(FAILED_TO_UPDATE_SUBSCRIPTION_SOURCES + " ---> {}", err.getMessage());
-                            monoSink.error(new Exception(FAILED_TO_UPDATE_SUBSCRIPTION_SOURCES));
-                        })
-        );
+        return queryExecutor.transaction("editSubscriptionSources", readWriteClient, client -> client
+                .preparedQuery(DEACTIVATE_SUBSCRIPTION_SOURCES)
+                .execute(Tuple.of(subscriptionId, hipIds))
+                .flatMap(discard -> client
+                        .preparedQuery(UPSERT_SUBSCRIPTION_SOURCE)
+                        .executeBatch(batch)))
+                .doOnNext(edited -> {
+                    readRouter.wrote(patientId);
+                    readRouter.wrote(subscriptionId);
+                })
+                .then();
     }
 
     private Tuple toTuple(GrantedSubscription source, String subscriptionId, boolean isExcluded){
@@ -184,10 +265,6 @@ public class SubscriptionRepository {
                 new JsonArray(from(source.getHiTypes())));
     }
 
-    private String joinByComma(Collection<String> list) {
-        return list.stream().map(e -> String.format("'%s'", e)).collect(Collectors.joining(", "));
-    }
-
     private String getHIPId(GrantedSubscription grantedSubscription) {
         if (grantedSubscription.getHip() == null || StringUtils.isEmpty(grantedSubscription.getHip().getId())) {
             return null;
@@ -5,6 +5,7 @@ import in.projecteka.datanotificationsubscription.common.ClientError;
 import in.projecteka.datanotificationsubscription.common.RequestValidator;
 import in.projecteka.datanotificationsubscription.subscription.model.HIUSubscriptionNotifyResponse;
 import in.projecteka.datanotificationsubscription.subscription.model.HIUSubscriptionRequestNotifyResponse;
+import in.projecteka.datanotificationsubscription.subscription.model.PageCursor;
 import in.projecteka.datanotificationsubscription.subscription.model.PatientSubscriptionRequestsRepresentation;
 import in.projecteka.datanotificationsubscription.subscription.model.SubscriptionEditAndApprovalRequest;
 import in.projecteka.datanotificationsubscription.subscription.model.SubscriptionEditAndApprovalRequestValidator;
@@ -69,17 +70,23 @@ public class SubscriptionRequestController {
     @GetMapping(value = APP_PATH_SUBSCRIPTION_REQUESTS)
     public Mono<SubscriptionRequestsRepresentation> getSubscriptionRequest(@RequestParam(defaultValue = "-1") int limit,
                                                                            @RequestParam(defaultValue = "0") int offset,
-                                                                           @RequestParam(defaultValue = "ALL") String status) {
+                                                                           @RequestParam(defaultValue = "ALL") String status,
+                                                                           @RequestParam(required = false) String cursor,
+                                                                           @RequestParam(defaultValue = "false") boolean withTotal) {
         int pageSize = getPageSize(limit);
-        return ReactiveSecurityContextHolder.getContext()
-                .map(securityContext -> (Caller) securityContext.getAuthentication().getPrincipal())
-                .flatMap(caller -> requestService.getAllSubscriptions(caller.getUsername(), pageSize, offset, status))
+        return Mono.fromCallable(() -> PageCursor.decodeIfPresent(cursor))
+                .flatMap(pageCursor -> ReactiveSecurityContextHolder.getContext()
+                        .map(securityContext -> (Caller) securityContext.getAuthentication().getPrincipal())
+                        .flatMap(caller -> pageCursor.isPresent()
+                                ? requestService.getAllSubscriptions(caller.getUsername(), pageSize, pageCursor.get(), status, withTotal)
+                                : requestService.getAllSubscriptions(caller.getUsername(), pageSize, offset, status)))
 
                 .map(subscriptions -> SubscriptionRequestsRepresentation.builder()
                         .requests(subscriptions.getResult())
                         .size(subscriptions.getTotal())
                         .limit(pageSize)
-                        .offset(offset).build());
+                        .offset(offset)
+                        .nextCursor(subscriptions.getNextCursor()).build());
     }
 
     @GetMapping(value = INTERNAL_PATH_SUBSCRIPTION_REQUEST_DETAILS)
@@ -99,24 +106,34 @@ public class SubscriptionRequestController {
             @PathVariable(value = "patient-id") String patientId,
             @RequestParam(defaultValue = "-1") int subscriptionLimit,
             @RequestParam(defaultValue = "0") int subscriptionOffset,
+            @RequestParam(required = false) String subscriptionCursor,
             @RequestParam(defaultValue = "-1") int lockerLimit,
             @RequestParam(defaultValue = "0") int lockerOffset,
-            @RequestParam(defaultValue = "ALL") String status) {
+            @RequestParam(required = false) String lockerCursor,
+            @RequestParam(defaultValue = "ALL") String status,
+            @RequestParam(defaultValue = "false") boolean withTotal) {
         int hiuRequestsPageSize = getInternalSubscriptionPageSize(subscriptionLimit);
         int lockerRequestsPageSize = getInternalSubscriptionPageSize(lockerLimit);
 
-        return requestService.getPatientSubscriptions(patientId, hiuRequestsPageSize, subscriptionOffset, lockerRequestsPageSize, lockerOffset, status)
+        return Mono.fromCallable(() -> PageCursor.decodeIfPresent(subscriptionCursor))
+                .zipWith(Mono.fromCallable(() -> PageCursor.decodeIfPresent(lockerCursor)))
+                .flatMap(cursors -> requestService.getPatientSubscriptions(patientId,
+                        hiuRequestsPageSize, subscriptionOffset, cursors.getT1().orElse(null),
+                        lockerRequestsPageSize, lockerOffset, cursors.getT2().orElse(null),
+                        status, withTotal))
                 .map(subscriptions -> PatientSubscriptionRequestsRepresentation.builder()
                         .hiuSubscriptionRequestsRepresentation(SubscriptionRequestsRepresentation.builder()
                                 .requests(subscriptions.getT1().getResult())
                                 .size(subscriptions.getT1().getTotal())
                                 .limit(hiuRequestsPageSize)
-                                .offset(subscriptionOffset).build())
+                                .offset(subscriptionOffset)
+                                .nextCursor(subscriptions.getT1().getNextCursor()).build())
                         .lockerSubscriptionRequestsRepresentation(SubscriptionRequestsRepresentation.builder()
                                 .requests(subscriptions.getT2().getResult())
                                 .size(subscriptions.getT2().getTotal())
-                                .limit(hiuRequestsPageSize)
-                                .offset(subscriptionOffset).build())
+                                .limit(lockerRequestsPageSize)
+                                .offset(lockerOffset)
+                                .nextCursor(subscriptions.getT2().getNextCursor()).build())
                         .build());
     }
 
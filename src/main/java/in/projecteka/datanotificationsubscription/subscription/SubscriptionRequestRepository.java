@@ -1,18 +1,20 @@
 package in.projecteka.datanotificationsubscription.subscription;
 
-import in.projecteka.datanotificationsubscription.common.DbOperationError;
+import in.projecteka.datanotificationsubscription.common.QueryExecutor;
+import in.projecteka.datanotificationsubscription.common.ReadRouter;
 import in.projecteka.datanotificationsubscription.common.model.RequesterType;
 import in.projecteka.datanotificationsubscription.subscription.model.GrantedSubscription;
 import in.projecteka.datanotificationsubscription.subscription.model.HipDetail;
 import in.projecteka.datanotificationsubscription.subscription.model.HiuDetail;
+import in.projecteka.datanotificationsubscription.subscription.model.LinkSubscriptionEntry;
 import in.projecteka.datanotificationsubscription.subscription.model.ListResult;
+import in.projecteka.datanotificationsubscription.subscription.model.PageCursor;
 import in.projecteka.datanotificationsubscription.subscription.model.PatientDetail;
 import in.projecteka.datanotificationsubscription.subscription.model.RequestStatus;
 import in.projecteka.datanotificationsubscription.subscription.model.SubscriptionDetail;
 import in.projecteka.datanotificationsubscription.subscription.model.SubscriptionRequestDetails;
 import in.projecteka.datanotificationsubscription.subscription.model.SubscriptionStatus;
-import io.vertx.core.AsyncResult;
-import io.vertx.core.Handler;
+import io.vertx.core.Future;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.pgclient.PgPool;
@@ -20,11 +22,8 @@ import io.vertx.sqlclient.Row;
 import io.vertx.sqlclient.RowSet;
 import io.vertx.sqlclient.Tuple;
 import lombok.AllArgsConstructor;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.util.StringUtils;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.MonoSink;
 
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
@@ -37,6 +36,7 @@ import java.util.stream.Collectors;
 import static in.projecteka.datanotificationsubscription.common.Constants.INCLUDE_ALL_HIPS_CODE;
 import static in.projecteka.datanotificationsubscription.common.Serializer.from;
 import static in.projecteka.datanotificationsubscription.common.Serializer.to;
+import static in.projecteka.datanotificationsubscription.subscription.ListQueries.totalOf;
 
 @AllArgsConstructor
 public class SubscriptionRequestRepository {
@@ -48,97 +48,140 @@ public class SubscriptionRequestRepository {
     public static final String REQUEST_ID = "request_id";
     public static final String SUBSCRIPTION_ID = "subscription_id";
     private static final String REQUESTER_TYPE = "requester_type";
-    private static final String UNKNOWN_ERROR_OCCURRED = "Unknown error occurred";
-    private static final Logger logger = LoggerFactory.getLogger(SubscriptionRequestRepository.class);
 
     private static final String INSERT_SUBSCRIPTION_REQUEST_QUERY = "INSERT INTO hiu_subscription " +
-            "(request_id, patient_id, status, details, requester_type) VALUES ($1, $2, $3, $4, $5)";
+            "(request_id, patient_id, status, details, requester_type, hiu_id) VALUES ($1, $2, $3, $4, $5, $6)";
 
     private static final String INSERT_SOURCES_REQUEST_QUERY = "INSERT INTO subscription_source " +
             "(subscription_id, period_from, period_to, category_link, category_data, hip_id, hi_types, status, excluded) VALUES ($1, $2, $3, $4, $5, $6, $7, $8, $9)";
 
-    private static final String GET_SUBSCRIPTION_REQUEST_QUERY = "SELECT details, request_id, status, date_created, date_modified, requester_type, subscription_id FROM "
+    static final String GET_SUBSCRIPTION_REQUEST_QUERY = "SELECT details, request_id, status, date_created, date_modified, requester_type, subscription_id, " +
+            "count(*) OVER() AS total_count FROM "
             + "hiu_subscription WHERE patient_id=$1 and (status=$4 OR $4 IS NULL) " +
-            "ORDER BY date_modified DESC" +
+            "ORDER BY date_modified DESC, request_id DESC" +
             " LIMIT $2 OFFSET $3";
 
-    private static final String GET_PATIENT_SUBSCRIPTION_REQUEST_QUERY = "SELECT details, request_id, status, date_created, date_modified, requester_type, subscription_id FROM "
-            + "hiu_subscription WHERE patient_id=$1 and (status=$4 OR $4 IS NULL) and requester_type IN ( %s ) " +
-            "ORDER BY date_modified DESC" +
+    private static final String GET_SUBSCRIPTION_REQUEST_AFTER_CURSOR_QUERY = "SELECT details, request_id, status, date_created, date_modified, requester_type, subscription_id FROM "
+            + "hiu_subscription WHERE patient_id=$1 and (status=$2 OR $2 IS NULL) and (date_modified, request_id) < ($3, $4) " +
+            "ORDER BY date_modified DESC, request_id DESC" +
+            " LIMIT $5";
+
+    private static final String GET_PATIENT_SUBSCRIPTION_REQUEST_QUERY = "SELECT details, request_id, status, date_created, date_modified, requester_type, subscription_id, " +
+            "count(*) OVER() AS total_count FROM "
+            + "hiu_subscription WHERE patient_id=$1 and (status=$4 OR $4 IS NULL) and requester_type = ANY($5) " +
+            "ORDER BY date_modified DESC, request_id DESC" +
             " LIMIT $2 OFFSET $3";
 
-    private static final String GET_ACTIVE_LINK_SUBSCRIPTION_QUERY = "SELECT hs.request_id, hs.patient_id, hs.subscription_id, " +
-            "hs.details -> 'hiu' -> 'id' AS hiu_id, ss.hip_id, ss.excluded FROM hiu_subscription hs INNER JOIN subscription_source ss " +
+    private static final String GET_PATIENT_SUBSCRIPTION_REQUEST_AFTER_CURSOR_QUERY = "SELECT details, request_id, status, date_created, date_modified, requester_type, subscription_id FROM "
+            + "hiu_subscription WHERE patient_id=$1 and (status=$2 OR $2 IS NULL) and requester_type = ANY($6) " +
+            "and (date_modified, request_id) < ($3, $4) " +
+            "ORDER BY date_modified DESC, request_id DESC" +
+            " LIMIT $5";
+
+    // Requests written by instances predating the hiu_id column lack it until the backfill reached them, their HIU id
+    // is read out of details until then
+    static final String GET_ACTIVE_LINK_SUBSCRIPTION_QUERY = "SELECT hs.request_id, hs.patient_id, hs.subscription_id, " +
+            "COALESCE(hs.hiu_id, hs.details -> 'hiu' ->> 'id') AS hiu_id, ss.hip_id, ss.excluded FROM hiu_subscription hs INNER JOIN subscription_source ss " +
             "ON hs.subscription_id = ss.subscription_id WHERE hs.patient_id=$1 AND hs.status=$2 AND (ss.hip_id=$3 OR ss.hip_id IS NULL) " +
             "AND ss.status=$4 AND ss.category_link=$5 AND ss.period_from<=$6 AND ss.period_to>= $7 AND ss.active = true";
 
+    static final String GET_ACTIVE_LINK_SUBSCRIPTIONS_FOR_PATIENTS_QUERY = "SELECT hs.request_id, hs.patient_id, hs.subscription_id, " +
+            "COALESCE(hs.hiu_id, hs.details -> 'hiu' ->> 'id') AS hiu_id, ss.hip_id, ss.excluded FROM hiu_subscription hs INNER JOIN subscription_source ss " +
+            "ON hs.subscription_id = ss.subscription_id WHERE hs.patient_id = ANY($1) AND hs.status=$2 AND (ss.hip_id = ANY($3) OR ss.hip_id IS NULL) " +
+            "AND ss.status=$4 AND ss.category_link=$5 AND ss.period_from<=$6 AND ss.period_to>= $7 AND ss.active = true";
+
+    private static final String SELECT_ACTIVE_LINK_SUBSCRIPTION_ENTRIES = "SELECT hs.patient_id, " +
+            "COALESCE(hs.hiu_id, hs.details -> 'hiu' ->> 'id') AS hiu_id, ss.hip_id, ss.excluded, ss.period_from, ss.period_to FROM hiu_subscription hs " +
+            "INNER JOIN subscription_source ss ON hs.subscription_id = ss.subscription_id WHERE hs.status=$1 AND ss.status=$2 " +
+            "AND ss.category_link=$3 AND ss.period_to>=$4 AND ss.active = true";
+
+    private static final String SELECT_ACTIVE_LINK_SUBSCRIPTION_ENTRIES_OF_PATIENT = SELECT_ACTIVE_LINK_SUBSCRIPTION_ENTRIES +
+            " AND hs.patient_id=$5";
+
+    private static final String SELECT_PATIENTS_WITH_LINK_SUBSCRIPTIONS = "SELECT DISTINCT hs.patient_id FROM hiu_subscription hs " +
+            "INNER JOIN subscription_source ss ON hs.subscription_id = ss.subscription_id WHERE hs.status=$1 AND ss.status=$2 " +
+            "AND ss.category_link=$3 AND ss.period_to>=$4 AND ss.active = true AND ss.excluded = false";
+
     private static final String SELECT_SUBSCRIPTION_REQUEST_COUNT = "SELECT COUNT(*) FROM hiu_subscription " +
             "WHERE patient_id=$1 AND (status=$2 OR $2 IS NULL)";
 
     private static final String SELECT_PATIENT_SUBSCRIPTION_REQUEST_COUNT = "SELECT COUNT(*) FROM hiu_subscription " +
-            "WHERE patient_id=$1 AND (status=$2 OR $2 IS NULL) AND requester_type IN ( %s )";
+            "WHERE patient_id=$1 AND (status=$2 OR $2 IS NULL) AND requester_type = ANY($3)";
 
     private static final String SELECT_SUBSCRIPTION_REQUEST_BY_ID_AND_STATUS = "SELECT request_id, status, details, requester_type, date_created, date_modified, subscription_id FROM hiu_subscription " +
             "where request_id=$1 and status=$2 and patient_id=$3";
 
     private static final String UPDATE_SUBSCRIPTION_REQUEST_STATUS_QUERY = "UPDATE hiu_subscription SET status=$1, " +
-            "subscription_id=$2, date_modified=$3 WHERE request_id=$4";
+            "subscription_id=$2, date_modified=$3 WHERE request_id=$4 RETURNING patient_id";
 
     private static final String SELECT_SUBSCRIPTION_REQUEST_BY_REQUEST_ID = "SELECT " +
             "request_id, status, details, requester_type, date_created, date_modified, subscription_id FROM hiu_subscription " +
             "WHERE request_id=$1";
 
-    private static final String SELECT_SUBSCRIPTION_REQUESTS_BY_PATIENT_ID_AND_HIU_ID = "SELECT " +
+    static final String SELECT_SUBSCRIPTION_REQUESTS_BY_PATIENT_ID_AND_HIU_ID = "SELECT " +
             "request_id, status, details, requester_type, date_created, date_modified, subscription_id FROM hiu_subscription " +
-            "WHERE patient_id=$1 AND details -> 'hiu' ->> 'id' = $2";
+            "WHERE patient_id=$1 AND COALESCE(hiu_id, details -> 'hiu' ->> 'id')=$2";
 
 
-    private static final String FAILED_TO_SAVE_SUBSCRIPTION_REQUEST = "Failed to save subscription request";
-    private static final String FAILED_TO_SAVE_SOURCES = "Failed to save sources table";
+    private static final String BACKFILL_HIU_IDS = "UPDATE hiu_subscription SET hiu_id = details -> 'hiu' ->> 'id' " +
+            "WHERE request_id IN (SELECT request_id FROM hiu_subscription WHERE hiu_id IS NULL " +
+            "AND details -> 'hiu' ->> 'id' IS NOT NULL LIMIT $1)";
 
     private final PgPool readWriteClient;
-    private final PgPool readOnlyClient;
+    private final ReadRouter readRouter;
+    private final QueryExecutor queryExecutor;
 
 
     public Mono<Void> insert(SubscriptionDetail requestedDetail, UUID requestId, RequesterType type, String patientId) {
-        return Mono.create(monoSink ->
-                readWriteClient.preparedQuery(INSERT_SUBSCRIPTION_REQUEST_QUERY)
-                        .execute(Tuple.of(requestId.toString(),
-                                patientId,
-                                RequestStatus.REQUESTED.name(),
-                                new JsonObject(from(requestedDetail)),
-                                type.name()),
-                                handler -> {
-                                    if (handler.failed()) {
-                                        logger.error(handler.cause().getMessage(), handler.cause());
-                                        monoSink.error(new Exception(FAILED_TO_SAVE_SUBSCRIPTION_REQUEST));
-                                        return;
-                                    }
-                                    monoSink.success();
-                                }));
+        return queryExecutor.query("insert", readWriteClient, INSERT_SUBSCRIPTION_REQUEST_QUERY,
+                Tuple.of(requestId.toString(),
+                        patientId,
+                        RequestStatus.REQUESTED.name(),
+                        new JsonObject(from(requestedDetail)),
+                        type.name(),
+                        requestedDetail.getHiu() == null ? null : requestedDetail.getHiu().getId()))
+                .doOnNext(inserted -> readRouter.wrote(patientId))
+                .then();
     }
 
-    public Mono<Void> insertIntoSubscriptionSource(String subscriptionId, GrantedSubscription grantedSubscription, boolean excluded) {
-        return Mono.create(monoSink ->
-                readWriteClient.preparedQuery(INSERT_SOURCES_REQUEST_QUERY)
-                        .execute(Tuple.of(subscriptionId,
-                                grantedSubscription.getPeriod().getFromDate(),
-                                grantedSubscription.getPeriod().getToDate(),
-                                grantedSubscription.isLinkCategory(),
-                                grantedSubscription.isDataCategory(),
-                                getHIPId(grantedSubscription),
-                                new JsonArray(from(grantedSubscription.getHiTypes())),
-                                SubscriptionStatus.GRANTED.name(),
-                                excluded
-                                ),
-                                handler -> {
-                                    if (handler.failed()) {
-                                        logger.error(handler.cause().getMessage(), handler.cause());
-                                        monoSink.error(new Exception(FAILED_TO_SAVE_SOURCES));
-                                        return;
-                                    }
-                                    monoSink.success();
-                                }));
+    /**
+     * Marks the request granted and writes all of its sources in one transaction, the sources going in as a single
+     * batch. Either the whole approval is saved or nothing is.
+     */
+    public Mono<Void> grantSubscription(String requestId,
+                                        String subscriptionId,
+                                        List<GrantedSubscription> includedSources,
+                                        List<GrantedSubscription> excludedSources) {
+        List<Tuple> batch = new ArrayList<>(includedSources.size() + excludedSources.size());
+        includedSources.forEach(source -> batch.add(toSourceTuple(subscriptionId, source, false)));
+        excludedSources.forEach(source -> batch.add(toSourceTuple(subscriptionId, source, true)));
+        Tuple statusUpdate = Tuple.of(RequestStatus.GRANTED.name(), subscriptionId,
+                LocalDateTime.now(ZoneOffset.UTC), requestId);
+
+        return queryExecutor.transaction("grantSubscription", readWriteClient, client -> client
+                .preparedQuery(UPDATE_SUBSCRIPTION_REQUEST_STATUS_QUERY)
+                .execute(statusUpdate)
+                .flatMap(updated -> batch.isEmpty()
+                        ? Future.succeededFuture(updated)
+                        : client.preparedQuery(INSERT_SOURCES_REQUEST_QUERY).executeBatch(batch)
+                        .map(inserted -> updated)))
+                .doOnNext(updated -> {
+                    wroteFor(updated);
+                    readRouter.wrote(subscriptionId);
+                })
+                .then();
+    }
+
+    Tuple toSourceTuple(String subscriptionId, GrantedSubscription grantedSubscription, boolean excluded) {
+        return Tuple.of(subscriptionId,
+                grantedSubscription.getPeriod().getFromDate(),
+                grantedSubscription.getPeriod().getToDate(),
+                grantedSubscription.isLinkCategory(),
+                grantedSubscription.isDataCategory(),
+                getHIPId(grantedSubscription),
+                new JsonArray(from(grantedSubscription.getHiTypes())),
+                SubscriptionStatus.GRANTED.name(),
+                excluded);
     }
 
     private String getHIPId(GrantedSubscription grantedSubscription) {
@@ -149,59 +192,63 @@ public class SubscriptionRequestRepository {
     }
 
     public Mono<ListResult<List<SubscriptionRequestDetails>>> getAllSubscriptionRequests(String patientId, int limit, int offset, String status) {
-        return Mono.create(monoSink -> readOnlyClient.preparedQuery(GET_SUBSCRIPTION_REQUEST_QUERY)
-                .execute(Tuple.of(patientId, limit, offset, status), handler -> {
-                    List<SubscriptionRequestDetails> subscriptions = getSubscriptionRequestRepresentation(handler);
-                    readOnlyClient.preparedQuery(SELECT_SUBSCRIPTION_REQUEST_COUNT)
-                            .execute(Tuple.of(patientId, status), counter -> {
-                                if (counter.failed()) {
-                                    logger.error(counter.cause().getMessage(), counter.cause());
-                                    monoSink.error(new DbOperationError());
-                                    return;
-                                }
-                                Integer count = counter.result().iterator().next().getInteger("count");
-                                monoSink.success(new ListResult<>(subscriptions, count));
-                            });
-                }));
+        PgPool pool = readRouter.readerFor(patientId);
+        return queryExecutor.cancellableQuery("getAllSubscriptionRequests", pool, GET_SUBSCRIPTION_REQUEST_QUERY,
+                Tuple.of(patientId, limit, offset, status))
+                .flatMap(page -> totalOf(page, offset,
+                        () -> queryExecutor.cancellableQuery("countSubscriptionRequests", pool, SELECT_SUBSCRIPTION_REQUEST_COUNT,
+                                Tuple.of(patientId, status)).map(ListQueries::countOf))
+                        .map(total -> listResultOf(getSubscriptionRequestRepresentation(page), limit, total)));
+    }
+
+    /**
+     * Reads the page after the cursor. The total costs a count query of its own, run next to the page query,
+     * and is left unknown unless asked for.
+     */
+    public Mono<ListResult<List<SubscriptionRequestDetails>>> getAllSubscriptionRequests(String patientId,
+                                                                                        int limit,
+                                                                                        PageCursor cursor,
+                                                                                        String status,
+                                                                                        boolean withTotal) {
+        PgPool pool = readRouter.readerFor(patientId);
+        Mono<List<SubscriptionRequestDetails>> page = queryExecutor.rows("getAllSubscriptionRequestsAfterCursor", pool,
+                GET_SUBSCRIPTION_REQUEST_AFTER_CURSOR_QUERY,
+                Tuple.of(patientId, status, cursor.getDateModified(), cursor.getRequestId(), limit),
+                this::getSubscriptionRequestRepresentation)
+                .collectList();
+        Mono<Integer> total = withTotal
+                ? queryExecutor.cancellableQuery("countSubscriptionRequests", pool, SELECT_SUBSCRIPTION_REQUEST_COUNT,
+                Tuple.of(patientId, status)).map(ListQueries::countOf)
+                : Mono.just(ListResult.UNKNOWN_TOTAL);
+        return Mono.zip(page, total, (requests, count) -> listResultOf(requests, limit, count));
+    }
+
+    private ListResult<List<SubscriptionRequestDetails>> listResultOf(List<SubscriptionRequestDetails> requests,
+                                                                     int limit,
+                                                                     int total) {
+        if (requests.isEmpty() || requests.size() < limit) {
+            return new ListResult<>(requests, total);
+        }
+        SubscriptionRequestDetails last = requests.get(requests.size() - 1);
+        return new ListResult<>(requests, total, new PageCursor(last.getLastUpdated(), last.getId().toString()).encode());
     }
 
     public Mono<List<SubscriptionRequestDetails>> getPatientSubscriptionRequestsByHIU(String patientId, String hiuId) {
-        return Mono.create(monoSink -> readOnlyClient.preparedQuery(SELECT_SUBSCRIPTION_REQUESTS_BY_PATIENT_ID_AND_HIU_ID)
-                .execute(Tuple.of(patientId, hiuId), handler -> {
-                    List<SubscriptionRequestDetails> subscriptions = getSubscriptionRequestRepresentation(handler);
-                    if (handler.failed()) {
-                        logger.error(handler.cause().getMessage(), handler.cause());
-                        monoSink.error(new DbOperationError());
-                        return;
-                    }
-                    monoSink.success(subscriptions);
-                }));
+        return queryExecutor.rows("getPatientSubscriptionRequestsByHIU", readRouter.readerFor(patientId),
+                SELECT_SUBSCRIPTION_REQUESTS_BY_PATIENT_ID_AND_HIU_ID, Tuple.of(patientId, hiuId),
+                this::getSubscriptionRequestRepresentation)
+                .collectList();
     }
 
     public Mono<SubscriptionRequestDetails> getSubscriptionRequest(String requestId) {
-        return Mono.create(monoSink -> readOnlyClient.preparedQuery(SELECT_SUBSCRIPTION_REQUEST_BY_REQUEST_ID)
-                .execute(Tuple.of(requestId), handler -> {
-                    if (handler.failed()) {
-                        logger.error(handler.cause().getMessage(), handler.cause());
-                        monoSink.error(new DbOperationError("Couldn't fetch subscription request by id"));
-                        return;
-                    }
-
-                    if (handler.result().rowCount() == 0) {
-                        monoSink.success();
-                        return;
-                    }
-                    var firstRow = handler.result().iterator().next();
-                    monoSink.success(getSubscriptionRequestRepresentation(firstRow));
-                }));
+        return queryExecutor.rows("getSubscriptionRequest", readRouter.reader(),
+                SELECT_SUBSCRIPTION_REQUEST_BY_REQUEST_ID, Tuple.of(requestId),
+                this::getSubscriptionRequestRepresentation)
+                .next();
     }
 
-    private List<SubscriptionRequestDetails> getSubscriptionRequestRepresentation(AsyncResult<RowSet<Row>> handler) {
-        if (handler.failed()) {
-            return new ArrayList<>();
-        }
+    private List<SubscriptionRequestDetails> getSubscriptionRequestRepresentation(RowSet<Row> results) {
         List<SubscriptionRequestDetails> subscriptions = new ArrayList<>();
-        RowSet<Row> results = handler.result();
         for (Row result : results) {
             subscriptions.add(getSubscriptionRequestRepresentation(result));
         }
@@ -233,75 +280,111 @@ public class SubscriptionRequestRepository {
     }
 
     public Mono<Void> updateHIUSubscription(String requestId, String subscriptionId, String status) {
-        return Mono.create(monoSink -> readWriteClient.preparedQuery(UPDATE_SUBSCRIPTION_REQUEST_STATUS_QUERY)
-                .execute(Tuple.of(status, subscriptionId, LocalDateTime.now(ZoneOffset.UTC), requestId),
-                        updateHandler -> {
-                            if (updateHandler.failed()) {
-                                monoSink.error(new Exception("Failed to update status", updateHandler.cause()));
-                                return;
-                            }
-                            monoSink.success();
-                        }));
+        return queryExecutor.query("updateHIUSubscription", readWriteClient, UPDATE_SUBSCRIPTION_REQUEST_STATUS_QUERY,
+                Tuple.of(status, subscriptionId, LocalDateTime.now(ZoneOffset.UTC), requestId))
+                .doOnNext(this::wroteFor)
+                .then();
     }
 
-    public Mono<SubscriptionRequestDetails> requestOf(String requestId, String status, String patientId) {
-        return Mono.create(monoSink -> readOnlyClient.preparedQuery(SELECT_SUBSCRIPTION_REQUEST_BY_ID_AND_STATUS)
-                .execute(Tuple.of(requestId, status, patientId),
-                        subscriptionRequestHandler(monoSink)));
+    private void wroteFor(RowSet<Row> updatedRequests) {
+        for (Row row : updatedRequests) {
+            readRouter.wrote(row.getString("patient_id"));
+        }
     }
 
-    private Handler<AsyncResult<RowSet<Row>>> subscriptionRequestHandler(MonoSink<SubscriptionRequestDetails> monoSink) {
-        return handler -> {
-            if (handler.failed()) {
-                logger.error(handler.cause().getMessage(), handler.cause());
-                monoSink.error(new RuntimeException(UNKNOWN_ERROR_OCCURRED));
-                return;
-            }
-            RowSet<Row> results = handler.result();
-            SubscriptionRequestDetails subscriptionRequestDetails = null;
-            for (Row result : results) {
-                subscriptionRequestDetails = getSubscriptionRequestRepresentation(result);
-            }
-            monoSink.success(subscriptionRequestDetails);
-        };
+    /**
+     * Copies the HIU id out of details for up to batchSize requests written without it, and tells how many were.
+     */
+    public Mono<Integer> backfillHiuIds(int batchSize) {
+        return queryExecutor.query("backfillHiuIds", readWriteClient, BACKFILL_HIU_IDS, Tuple.of(batchSize))
+                .map(RowSet::rowCount);
+    }
+
+    /**
+     * Reads from the primary, the request is approved or denied right after.
+     */
+    public Mono<SubscriptionRequestDetails> requestOf(String requestId, String status, String patientId) {
+        return queryExecutor.rows("requestOf", readWriteClient, SELECT_SUBSCRIPTION_REQUEST_BY_ID_AND_STATUS,
+                Tuple.of(requestId, status, patientId), this::getSubscriptionRequestRepresentation)
+                .next();
     }
 
     public Mono<List<Subscription>> findLinkSubscriptionsFor(String patientId, String hipId) {
         LocalDateTime currentTimestamp = LocalDateTime.now(ZoneOffset.UTC);
         Tuple parameters = Tuple.of(patientId, RequestStatus.GRANTED.name(), hipId,
                 SubscriptionStatus.GRANTED.name(), true, currentTimestamp, currentTimestamp);
-        return Mono.create(monoSink -> {
-            readOnlyClient.preparedQuery(GET_ACTIVE_LINK_SUBSCRIPTION_QUERY)
-                    .execute(parameters, subscriptionRowHandler(monoSink));
-        });
+        return queryExecutor.rows("findLinkSubscriptionsFor", readRouter.readerFor(patientId),
+                GET_ACTIVE_LINK_SUBSCRIPTION_QUERY, parameters, this::subscriptionOf)
+                .collectList()
+                .filter(subscriptions -> !subscriptions.isEmpty());
+    }
+
+    /**
+     * Looks up the active link subscriptions of several patients in one round trip. The result is a superset,
+     * a subscription of one patient may be for a HIP linked by another patient of the batch. Like the lookup of a
+     * single patient, it reads from the primary when any patient of the batch wrote within the sticky window.
+     */
+    public Mono<List<Subscription>> findLinkSubscriptionsFor(Collection<String> patientIds, Collection<String> hipIds) {
+        LocalDateTime currentTimestamp = LocalDateTime.now(ZoneOffset.UTC);
+        Tuple parameters = Tuple.of(patientIds.toArray(new String[0]), RequestStatus.GRANTED.name(), hipIds.toArray(new String[0]),
+                SubscriptionStatus.GRANTED.name(), true, currentTimestamp, currentTimestamp);
+        return queryExecutor.rows("findLinkSubscriptionsForPatients", readRouter.readerFor(patientIds),
+                GET_ACTIVE_LINK_SUBSCRIPTIONS_FOR_PATIENTS_QUERY, parameters, this::subscriptionOf)
+                .collectList();
+    }
+
+    /**
+     * Reads from the primary, a lagging replica would miss approvals and edits which were already refreshed.
+     */
+    public Mono<List<LinkSubscriptionEntry>> getActiveLinkSubscriptionEntries() {
+        Tuple parameters = Tuple.of(RequestStatus.GRANTED.name(), SubscriptionStatus.GRANTED.name(), true,
+                LocalDateTime.now(ZoneOffset.UTC));
+        return queryExecutor.rows("getActiveLinkSubscriptionEntries", readWriteClient,
+                SELECT_ACTIVE_LINK_SUBSCRIPTION_ENTRIES, parameters, this::linkSubscriptionEntryOf)
+                .collectList();
+    }
+
+    /**
+     * Reads from the primary, so that it sees the approval or edit which was just written.
+     */
+    public Mono<List<LinkSubscriptionEntry>> getActiveLinkSubscriptionEntries(String patientId) {
+        Tuple parameters = Tuple.of(RequestStatus.GRANTED.name(), SubscriptionStatus.GRANTED.name(), true,
+                LocalDateTime.now(ZoneOffset.UTC), patientId);
+        return queryExecutor.rows("getActiveLinkSubscriptionEntriesOfPatient", readWriteClient,
+                SELECT_ACTIVE_LINK_SUBSCRIPTION_ENTRIES_OF_PATIENT, parameters, this::linkSubscriptionEntryOf)
+                .collectList();
     }
 
-    private Handler<AsyncResult<RowSet<Row>>> subscriptionRowHandler(MonoSink<List<Subscription>> monoSink) {
-        return handler -> {
-            if (handler.failed()) {
-                logger.error(handler.cause().getMessage(), handler.cause());
-                monoSink.error(new DbOperationError());
-                return;
-            }
-            var iterator = handler.result().iterator();
-            if (!iterator.hasNext()) {
-                monoSink.success();
-                return;
-            }
-            List<Subscription> subscriptions = new ArrayList<>();
-            RowSet<Row> rows = handler.result();
-            for (Row row : rows) {
-                Subscription subscription = Subscription.builder()
-                        .id(UUID.fromString(row.getString("subscription_id")))
-                        .hip(buildHip(row.getString("hip_id")))
-                        .patient(PatientDetail.builder().id(row.getString("patient_id")).build())
-                        .hiu(HiuDetail.builder().id(row.getString("hiu_id")).build())
-                        .excluded(row.getBoolean("excluded"))
-                        .build();
-                subscriptions.add(subscription);
-            }
-            monoSink.success(subscriptions);
-        };
+    /**
+     * Reads from the primary, a lagging replica would miss approvals and edits which were already added.
+     */
+    public Mono<List<String>> getPatientsWithLinkSubscriptions() {
+        Tuple parameters = Tuple.of(RequestStatus.GRANTED.name(), SubscriptionStatus.GRANTED.name(), true,
+                LocalDateTime.now(ZoneOffset.UTC));
+        return queryExecutor.rows("getPatientsWithLinkSubscriptions", readWriteClient,
+                SELECT_PATIENTS_WITH_LINK_SUBSCRIPTIONS, parameters, row -> row.getString("patient_id"))
+                .collectList();
+    }
+
+    private LinkSubscriptionEntry linkSubscriptionEntryOf(Row row) {
+        return LinkSubscriptionEntry.builder()
+                .patientId(row.getString("patient_id"))
+                .hiuId(row.getString("hiu_id"))
+                .hipId(row.getString("hip_id"))
+                .excluded(row.getBoolean("excluded"))
+                .periodFrom(row.getLocalDateTime("period_from"))
+                .periodTo(row.getLocalDateTime("period_to"))
+                .build();
+    }
+
+    private Subscription subscriptionOf(Row row) {
+        return Subscription.builder()
+                .id(UUID.fromString(row.getString("subscription_id")))
+                .hip(buildHip(row.getString("hip_id")))
+                .patient(PatientDetail.builder().id(row.getString("patient_id")).build())
+                .hiu(HiuDetail.builder().id(row.getString("hiu_id")).build())
+                .excluded(row.getBoolean("excluded"))
+                .build();
     }
 
     private HipDetail buildHip(String hipId) {
@@ -316,24 +399,34 @@ public class SubscriptionRequestRepository {
                                                                                              int offset,
                                                                                              String status,
                                                                                              List<String> requesterType) {
-        var requesterStr = joinByComma(requesterType);
-        return Mono.create(monoSink -> readOnlyClient.preparedQuery(String.format(GET_PATIENT_SUBSCRIPTION_REQUEST_QUERY, requesterStr))
-                .execute(Tuple.of(patientId, limit, offset, status), handler -> {
-                    List<SubscriptionRequestDetails> subscriptions = getSubscriptionRequestRepresentation(handler);
-                    readOnlyClient.preparedQuery(String.format(SELECT_PATIENT_SUBSCRIPTION_REQUEST_COUNT, requesterStr))
-                            .execute(Tuple.of(patientId, status), counter -> {
-                                if (counter.failed()) {
-                                    logger.error(counter.cause().getMessage(), counter.cause());
-                                    monoSink.error(new DbOperationError());
-                                    return;
-                                }
-                                Integer count = counter.result().iterator().next().getInteger("count");
-                                monoSink.success(new ListResult<>(subscriptions, count));
-                            });
-                }));
+        PgPool pool = readRouter.readerFor(patientId);
+        var requesterTypes = requesterType.toArray(new String[0]);
+        return queryExecutor.cancellableQuery("getPatientSubscriptionRequests", pool, GET_PATIENT_SUBSCRIPTION_REQUEST_QUERY,
+                Tuple.of(patientId, limit, offset, status, requesterTypes))
+                .flatMap(page -> totalOf(page, offset,
+                        () -> queryExecutor.cancellableQuery("countPatientSubscriptionRequests", pool,
+                                SELECT_PATIENT_SUBSCRIPTION_REQUEST_COUNT, Tuple.of(patientId, status, requesterTypes))
+                                .map(ListQueries::countOf))
+                        .map(total -> listResultOf(getSubscriptionRequestRepresentation(page), limit, total)));
     }
 
-    private String joinByComma(Collection<String> list) {
-        return list.stream().map(e -> String.format("'%s'", e)).collect(Collectors.joining(", "));
+    public Mono<ListResult<List<SubscriptionRequestDetails>>> getPatientSubscriptionRequests(String patientId,
+                                                                                             int limit,
+                                                                                             PageCursor cursor,
+                                                                                             String status,
+                                                                                             List<String> requesterType,
+                                                                                             boolean withTotal) {
+        PgPool pool = readRouter.readerFor(patientId);
+        var requesterTypes = requesterType.toArray(new String[0]);
+        Mono<List<SubscriptionRequestDetails>> page = queryExecutor.rows("getPatientSubscriptionRequestsAfterCursor", pool,
+                GET_PATIENT_SUBSCRIPTION_REQUEST_AFTER_CURSOR_QUERY,
+                Tuple.of(patientId, status, cursor.getDateModified(), cursor.getRequestId(), limit, requesterTypes),
+                this::getSubscriptionRequestRepresentation)
+                .collectList();
+        Mono<Integer> total = withTotal
+                ? queryExecutor.cancellableQuery("countPatientSubscriptionRequests", pool, SELECT_PATIENT_SUBSCRIPTION_REQUEST_COUNT,
+                Tuple.of(patientId, status, requesterTypes)).map(ListQueries::countOf)
+                : Mono.just(ListResult.UNKNOWN_TOTAL);
+        return Mono.zip(page, total, (requests, count) -> listResultOf(requests, limit, count));
     }
 }
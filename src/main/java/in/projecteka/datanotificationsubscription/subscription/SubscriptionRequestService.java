@@ -23,6 +23,7 @@ import in.projecteka.datanotificationsubscription.subscription.model.HIUSubscrip
 import in.projecteka.datanotificationsubscription.subscription.model.HIUSubscriptionRequestNotifyResponse;
 import in.projecteka.datanotificationsubscription.subscription.model.HipDetail;
 import in.projecteka.datanotificationsubscription.subscription.model.ListResult;
+import in.projecteka.datanotificationsubscription.subscription.model.PageCursor;
 import in.projecteka.datanotificationsubscription.subscription.model.SubscriptionApprovalResponse;
 import in.projecteka.datanotificationsubscription.subscription.model.SubscriptionDetail;
 import in.projecteka.datanotificationsubscription.subscription.model.SubscriptionEditAndApprovalRequest;
@@ -34,7 +35,6 @@ import lombok.AllArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.StringUtils;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 import reactor.util.function.Tuple2;
@@ -68,6 +68,7 @@ public class SubscriptionRequestService {
     private final AppPushNotificationPublisher appPushNotificationPublisher;
     private final UserAuthorizationServiceClient userAuthorizationServiceClient;
     private final LinkServiceClient linkServiceClient;
+    private final LinkSubscriptionIndex linkSubscriptionIndex;
 
     private static final Logger logger = LoggerFactory.getLogger(SubscriptionRequestService.class);
     public static final String ALL_SUBSCRIPTION_REQUESTS = "ALL";
@@ -176,22 +177,59 @@ public class SubscriptionRequestService {
                                                                                                                                             int lockerRequestsLimit,
                                                                                                                                             int lockerRequestsOffset,
                                                                                                                                             String status) {
+        return getPatientSubscriptions(username, hiuRequestsLimit, hiuRequestsOffset, null,
+                lockerRequestsLimit, lockerRequestsOffset, null, status, true);
+    }
+
+    public Mono<ListResult<List<SubscriptionRequestDetails>>> getAllSubscriptions(String username,
+                                                                                 int limit,
+                                                                                 PageCursor cursor,
+                                                                                 String status,
+                                                                                 boolean withTotal) {
+        String statusFilter = status.equals(ALL_SUBSCRIPTION_REQUESTS) ? null : status;
+        return findPatient(username)
+                .flatMap(user -> subscriptionRequestRepository.getAllSubscriptionRequests(getPatientId(username, user),
+                        limit, cursor, statusFilter, withTotal));
+    }
+
+    /**
+     * Each of the two listings is read after its own cursor when one is given, from its offset otherwise.
+     */
+    public Mono<Tuple2<ListResult<List<SubscriptionRequestDetails>>, ListResult<List<SubscriptionRequestDetails>>>> getPatientSubscriptions(String username,
+                                                                                                                                            int hiuRequestsLimit,
+                                                                                                                                            int hiuRequestsOffset,
+                                                                                                                                            PageCursor hiuRequestsCursor,
+                                                                                                                                            int lockerRequestsLimit,
+                                                                                                                                            int lockerRequestsOffset,
+                                                                                                                                            PageCursor lockerRequestsCursor,
+                                                                                                                                            String status,
+                                                                                                                                            boolean withTotal) {
         var subscriptionRequesters = List.of(RequesterType.HIU.toString(), RequesterType.HIP_AND_HIU.toString());
         var lockerSetupRequesters = List.of(RequesterType.HEALTH_LOCKER.toString());
+        String statusFilter = status.equals(ALL_SUBSCRIPTION_REQUESTS) ? null : status;
         return findPatient(username)
                 .flatMap(user -> {
                     String patientId = getPatientId(username, user);
-                    Mono<ListResult<List<SubscriptionRequestDetails>>> listHIUSubscriptionRequests = status.equals(ALL_SUBSCRIPTION_REQUESTS)
-                            ? subscriptionRequestRepository.getPatientSubscriptionRequests(patientId, hiuRequestsLimit, hiuRequestsOffset, null, subscriptionRequesters)
-                            : subscriptionRequestRepository.getPatientSubscriptionRequests(patientId, hiuRequestsLimit, hiuRequestsOffset, status, subscriptionRequesters);
-                    Mono<ListResult<List<SubscriptionRequestDetails>>> listHLSubscriptionRequests = status.equals(ALL_SUBSCRIPTION_REQUESTS)
-                            ? subscriptionRequestRepository.getPatientSubscriptionRequests(patientId, lockerRequestsLimit, lockerRequestsOffset, null, lockerSetupRequesters)
-                            : subscriptionRequestRepository.getPatientSubscriptionRequests(patientId, lockerRequestsLimit, lockerRequestsOffset, status, lockerSetupRequesters);
-                    return Mono.zip(listHIUSubscriptionRequests, listHLSubscriptionRequests);
-
+                    return Mono.zip(
+                            patientSubscriptionRequests(patientId, hiuRequestsLimit, hiuRequestsOffset, hiuRequestsCursor,
+                                    statusFilter, subscriptionRequesters, withTotal),
+                            patientSubscriptionRequests(patientId, lockerRequestsLimit, lockerRequestsOffset, lockerRequestsCursor,
+                                    statusFilter, lockerSetupRequesters, withTotal));
                 });
     }
 
+    private Mono<ListResult<List<SubscriptionRequestDetails>>> patientSubscriptionRequests(String patientId,
+                                                                                          int limit,
+                                                                                          int offset,
+                                                                                          PageCursor cursor,
+                                                                                          String status,
+                                                                                          List<String> requesterTypes,
+                                                                                          boolean withTotal) {
+        return cursor == null
+                ? subscriptionRequestRepository.getPatientSubscriptionRequests(patientId, limit, offset, status, requesterTypes)
+                : subscriptionRequestRepository.getPatientSubscriptionRequests(patientId, limit, cursor, status, requesterTypes, withTotal);
+    }
+
     private String getPatientId(String username, User user) {
         return StringUtils.isEmpty(user.getHealthIdNumber())
                 ? username :
@@ -247,8 +285,11 @@ public class SubscriptionRequestService {
         //TODO: What type of notification should be sent in case of ALL, should it have exclusions as well
         String subscriptionId = UUID.randomUUID().toString();
         String hiuId = subscriptionRequest.getHiu().getId();
-        return updateHIUSubscription(requestId, subscriptionId)
-                .then(insertIntoSubscriptionSource(subscriptionId, subscriptionApprovalRequest))
+        return subscriptionRequestRepository.grantSubscription(requestId,
+                subscriptionId,
+                subscriptionApprovalRequest.getIncludedSources(),
+                subscriptionApprovalRequest.getExcludedSources())
+                .then(linkSubscriptionIndex.refresh(patientId))
                 .then(deduceGrantedSubscriptions(subscriptionApprovalRequest, patientId))
                 .flatMap(grantedSubscriptions -> gatewayServiceClient.subscriptionRequestNotify(subscriptionRequestNotifyRequest(subscriptionRequest, subscriptionId, grantedSubscriptions), hiuId))
                 .thenReturn(new SubscriptionApprovalResponse(subscriptionId));
@@ -312,21 +353,6 @@ public class SubscriptionRequestService {
                 .build();
     }
 
-    private Mono<Void> insertIntoSubscriptionSource(String subscriptionId, SubscriptionEditAndApprovalRequest subscriptionApprovalRequest) {
-        Mono<List<Void>> sources = Flux.fromIterable(subscriptionApprovalRequest.getIncludedSources())
-                .flatMap(grantedSubscription -> subscriptionRequestRepository.insertIntoSubscriptionSource(subscriptionId, grantedSubscription, false))
-                .collectList();
-        Mono<List<Void>> excludeSources = Flux.fromIterable(subscriptionApprovalRequest.getExcludedSources())
-                .flatMap(excludedSubscription -> subscriptionRequestRepository.insertIntoSubscriptionSource(subscriptionId, excludedSubscription, true))
-                .collectList();
-        return Mono.zip(sources, excludeSources).then();
-    }
-
-
-    private Mono<Void> updateHIUSubscription(String requestId, String subscriptionId) {
-        return subscriptionRequestRepository.updateHIUSubscription(requestId, subscriptionId, GRANTED.name());
-    }
-
     private boolean isSubscriptionRequestExpired(LocalDateTime createdAt) {
         LocalDateTime requestExpiry = createdAt.plusMinutes(subscriptionProperties.getSubscriptionRequestExpiry());
         return requestExpiry.isBefore(LocalDateTime.now(ZoneOffset.UTC));
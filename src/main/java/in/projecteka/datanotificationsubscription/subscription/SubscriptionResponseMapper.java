@@ -12,11 +12,14 @@ import in.projecteka.datanotificationsubscription.subscription.model.Subscriptio
 import in.projecteka.datanotificationsubscription.subscription.model.SubscriptionSource;
 import in.projecteka.datanotificationsubscription.subscription.model.SubscriptionStatus;
 import io.vertx.sqlclient.Row;
+import reactor.core.publisher.Flux;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 import static in.projecteka.datanotificationsubscription.common.Serializer.to;
@@ -40,13 +43,28 @@ import static in.projecteka.datanotificationsubscription.subscription.Subscripti
 public class SubscriptionResponseMapper {
     public List<SubscriptionResponse> mapRowsToSubscriptionResponses(List<Row> rows) {
         Map<String, List<Row>> rowBySubscriptionId = rows.stream()
-                .collect(Collectors.groupingBy(row -> row.getString(SUBSCRIPTION_ID)));
+                .collect(Collectors.groupingBy(row -> row.getString(SUBSCRIPTION_ID), LinkedHashMap::new, Collectors.toList()));
 
         return rowBySubscriptionId.entrySet().stream()
                 .map(entry -> getSubscription(entry.getKey(), entry.getValue()))
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Groups consecutive rows of the same subscription as they arrive, so the rows have to come ordered by
+     * subscription id. Only the rows of one subscription are held at a time.
+     */
+    public Flux<SubscriptionResponse> mapRowsToSubscriptionResponses(Flux<Row> rows) {
+        return Flux.defer(() -> {
+            AtomicReference<String> current = new AtomicReference<>();
+            return rows.bufferUntil(row -> {
+                String subscriptionId = row.getString(SUBSCRIPTION_ID);
+                String previous = current.getAndSet(subscriptionId);
+                return previous != null && !previous.equals(subscriptionId);
+            }, true);
+        }).map(rowsForId -> getSubscription(rowsForId.get(0).getString(SUBSCRIPTION_ID), rowsForId));
+    }
+
     private SubscriptionResponse getSubscription(String subscriptionId, List<Row> rowsForId) {
         Row firstRow = rowsForId.get(0); //Few details are common for each row
         SubscriptionDetail subscriptionDetail = to(firstRow.getValue(DETAILS).toString(),
@@ -12,12 +12,14 @@ import in.projecteka.datanotificationsubscription.subscription.model.HIUSubscrip
 import in.projecteka.datanotificationsubscription.subscription.model.HipDetail;
 import in.projecteka.datanotificationsubscription.subscription.model.HiuDetail;
 import in.projecteka.datanotificationsubscription.subscription.model.ListResult;
+import in.projecteka.datanotificationsubscription.subscription.model.PageCursor;
 import in.projecteka.datanotificationsubscription.subscription.model.RequestStatus;
 import in.projecteka.datanotificationsubscription.subscription.model.SubscriptionEditAndApprovalRequest;
 import in.projecteka.datanotificationsubscription.subscription.model.SubscriptionResponse;
 import in.projecteka.datanotificationsubscription.subscription.model.SubscriptionSource;
 import lombok.AllArgsConstructor;
 import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.LocalDateTime;
@@ -34,6 +36,7 @@ public class SubscriptionService {
     private final GatewayServiceClient gatewayServiceClient;
     private final SubscriptionRepository subscriptionRepository;
     private final LinkServiceClient linkServiceClient;
+    private final LinkSubscriptionIndex linkSubscriptionIndex;
 
     public Mono<ListResult<List<SubscriptionResponse>>> getSubscriptionsFor(String patientId, String hiuId, int limit, int offset) {
         //TODO: Cache findPatient
@@ -44,12 +47,26 @@ public class SubscriptionService {
                 });
     }
 
+    public Mono<ListResult<List<SubscriptionResponse>>> getSubscriptionsFor(String patientId,
+                                                                           String hiuId,
+                                                                           int limit,
+                                                                           PageCursor cursor,
+                                                                           boolean withTotal) {
+        return userServiceClient.userOf(patientId)
+                .flatMap(user -> subscriptionRepository.getSubscriptionsFor(getPatientId(patientId, user),
+                        hiuId, limit, cursor, withTotal));
+    }
+
     private String getPatientId(String username, User user) {
         return StringUtils.isEmpty(user.getHealthIdNumber())
                 ? username :
                 user.getHealthIdNumber();
     }
 
+    public Flux<SubscriptionResponse> exportSubscriptionsOf(String hiuId) {
+        return subscriptionRepository.streamSubscriptionsOf(hiuId);
+    }
+
     public Mono<SubscriptionResponse> getSubscriptionDetailsForID(String subscriptionId) {
         return subscriptionRepository.getSubscriptionDetailsForID(subscriptionId, true)
                 .switchIfEmpty(Mono.error(ClientError.subscriptionRequestNotFound()));
@@ -68,6 +85,7 @@ public class SubscriptionService {
 
                     var hiuId = subscriptionResponse.getRequester().getId();
                     return subscriptionEditPublisher
+                            .then(linkSubscriptionIndex.refresh(subscriptionResponse.getPatient().getId()))
                             .then(buildHIUSubscriptionNotifyRequest(subscriptionEditRequest, subscriptionResponse))
                             .flatMap(notifyRequest -> gatewayServiceClient.subscriptionRequestNotify(notifyRequest, hiuId));
                 });
@@ -142,7 +160,7 @@ public class SubscriptionService {
                                                                SubscriptionResponse subscriptionResponse) {
         Set<String> hipsToBeSetAsInactive = getHIPsToBeDeactivated(subscriptionResponse, subscriptionEditRequest.getIncludedSources());
         return subscriptionRepository.editSubscriptionNotApplicableForAllHIPs(subscriptionId,
-                subscriptionEditRequest.getIncludedSources(), hipsToBeSetAsInactive);
+                subscriptionResponse.getPatient().getId(), subscriptionEditRequest.getIncludedSources(), hipsToBeSetAsInactive);
     }
 
     private Mono<Void> editSubscriptionApplicableForAllHIPs(String subscriptionId,
@@ -151,8 +169,9 @@ public class SubscriptionService {
         Set<String> hipsToBeSetAsInactive = getHIPsToBeDeactivated(subscriptionResponse, subscriptionEditRequest.getExcludedSources());
         var includedSource = subscriptionEditRequest.getIncludedSources().get(0);
 
-        return subscriptionRepository.editSubscriptionApplicableForAllHIPs(subscriptionId, hipsToBeSetAsInactive,
-                includedSource, subscriptionEditRequest.getExcludedSources());
+        return subscriptionRepository.editSubscriptionApplicableForAllHIPs(subscriptionId,
+                subscriptionResponse.getPatient().getId(), hipsToBeSetAsInactive, includedSource,
+                subscriptionEditRequest.getExcludedSources());
     }
 
     private Set<String> getHIPsToBeDeactivated(SubscriptionResponse subscriptionResponse, List<GrantedSubscription> grantedSubscriptions) {
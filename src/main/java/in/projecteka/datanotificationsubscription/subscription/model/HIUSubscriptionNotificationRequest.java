@@ -2,6 +2,7 @@ package in.projecteka.datanotificationsubscription.subscription.model;
 
 import lombok.AllArgsConstructor;
 import lombok.Builder;
+import lombok.NoArgsConstructor;
 import lombok.Value;
 
 import java.time.LocalDateTime;
@@ -9,6 +10,7 @@ import java.util.UUID;
 
 @Value
 @AllArgsConstructor
+@NoArgsConstructor(force = true)
 @Builder
 public class HIUSubscriptionNotificationRequest {
     UUID requestId;
@@ -0,0 +1,26 @@
+package in.projecteka.datanotificationsubscription.subscription.model;
+
+import lombok.Builder;
+import lombok.Value;
+import org.springframework.util.StringUtils;
+
+import java.time.LocalDateTime;
+
+@Builder
+@Value
+public class LinkSubscriptionEntry {
+    String patientId;
+    String hiuId;
+    // Empty when the subscription is for all HIPs of the patient
+    String hipId;
+    boolean excluded;
+    LocalDateTime periodFrom;
+    LocalDateTime periodTo;
+
+    public boolean isApplicableFor(String hipId, LocalDateTime at) {
+        return !excluded
+                && (StringUtils.isEmpty(this.hipId) || this.hipId.equals(hipId))
+                && !at.isBefore(periodFrom)
+                && !at.isAfter(periodTo);
+    }
+}
@@ -1,12 +1,21 @@
 package in.projecteka.datanotificationsubscription.subscription.model;
 
 public class ListResult<T> {
+    // Total of a cursor page when it was not asked for
+    public static final int UNKNOWN_TOTAL = -1;
+
     private final int total;
     private final T result;
+    private final String nextCursor;
 
     public ListResult(T result, int total) {
+        this(result, total, null);
+    }
+
+    public ListResult(T result, int total, String nextCursor) {
         this.result = result;
         this.total = total;
+        this.nextCursor = nextCursor;
     }
 
     public int getTotal() {
@@ -16,4 +25,8 @@ public class ListResult<T> {
     public T getResult() {
         return this.result;
     }
-}
\ No newline at end of file
+
+    public String getNextCursor() {
+        return this.nextCursor;
+    }
+}
@@ -2,12 +2,14 @@ package in.projecteka.datanotificationsubscription.subscription.model;
 
 import lombok.AllArgsConstructor;
 import lombok.Builder;
+import lombok.NoArgsConstructor;
 import lombok.Value;
 
 import java.util.List;
 
 @Value
 @AllArgsConstructor
+@NoArgsConstructor(force = true)
 @Builder
 public class NotificationContent {
     PatientDetail patient;
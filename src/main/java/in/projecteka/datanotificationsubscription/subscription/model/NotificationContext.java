@@ -3,12 +3,14 @@ package in.projecteka.datanotificationsubscription.subscription.model;
 import in.projecteka.datanotificationsubscription.common.model.PatientCareContext;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
+import lombok.NoArgsConstructor;
 import lombok.Value;
 
 import java.util.List;
 
 @Value
 @AllArgsConstructor
+@NoArgsConstructor(force = true)
 @Builder
 public class NotificationContext {
     PatientCareContext careContext;
@@ -0,0 +1,50 @@
+package in.projecteka.datanotificationsubscription.subscription.model;
+
+import in.projecteka.datanotificationsubscription.common.ClientError;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Optional;
+
+/**
+ * Position in a listing ordered by date_modified and request_id, both descending. The next page holds the rows
+ * strictly after it. Clients get it as an opaque string and hand it back unchanged.
+ */
+@AllArgsConstructor
+@EqualsAndHashCode
+@Getter
+public class PageCursor {
+    private static final String SEPARATOR = "|";
+
+    private final LocalDateTime dateModified;
+    private final String requestId;
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((dateModified + SEPARATOR + requestId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Optional<PageCursor> decodeIfPresent(String cursor) throws ClientError {
+        return StringUtils.isEmpty(cursor) ? Optional.empty() : Optional.of(decode(cursor));
+    }
+
+    public static PageCursor decode(String cursor) throws ClientError {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = decoded.indexOf(SEPARATOR);
+            if (separator < 0 || separator == decoded.length() - 1) {
+                throw ClientError.invalidPageCursor();
+            }
+            return new PageCursor(LocalDateTime.parse(decoded.substring(0, separator)),
+                    decoded.substring(separator + 1));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw ClientError.invalidPageCursor();
+        }
+    }
+}
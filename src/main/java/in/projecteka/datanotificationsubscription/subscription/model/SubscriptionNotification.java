@@ -3,9 +3,21 @@ package in.projecteka.datanotificationsubscription.subscription.model;
 import lombok.Builder;
 import lombok.Data;
 
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
 @Builder
 @Data
 public class SubscriptionNotification {
     String hiuId;
     NotificationEvent event;
+
+    public HIUSubscriptionNotificationRequest toRequest() {
+        return HIUSubscriptionNotificationRequest.builder()
+                .requestId(UUID.randomUUID())
+                .timestamp(LocalDateTime.now(ZoneOffset.UTC))
+                .event(event)
+                .build();
+    }
 }
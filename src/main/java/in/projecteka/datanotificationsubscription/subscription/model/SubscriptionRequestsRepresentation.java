@@ -19,5 +19,6 @@ public class SubscriptionRequestsRepresentation {
     private int size;
     private int limit;
     private int offset;
+    private String nextCursor;
     private List<SubscriptionRequestDetails> requests;
 }
@@ -17,5 +17,6 @@ public class SubscriptionsRepresentation {
     private int size;
     private int limit;
     private int offset;
+    private String nextCursor;
     private List<SubscriptionResponse> requests;
 }
@@ -0,0 +1,32 @@
+-- The schema the service started from, owned by a separate initializer before migrations moved here. A database
+-- created by it is baselined at this version and skips this script.
+CREATE TABLE IF NOT EXISTS hiu_subscription (
+    id SERIAL PRIMARY KEY,
+    request_id VARCHAR UNIQUE NOT NULL,
+    patient_id VARCHAR NOT NULL,
+    status VARCHAR NOT NULL,
+    details JSONB NOT NULL,
+    requester_type VARCHAR NOT NULL,
+    subscription_id VARCHAR UNIQUE,
+    date_created TIMESTAMP NOT NULL DEFAULT (now() AT TIME ZONE 'utc'),
+    date_modified TIMESTAMP NOT NULL DEFAULT (now() AT TIME ZONE 'utc')
+);
+
+CREATE TABLE IF NOT EXISTS subscription_source (
+    id SERIAL PRIMARY KEY,
+    subscription_id VARCHAR NOT NULL,
+    hip_id VARCHAR,
+    category_link BOOLEAN NOT NULL DEFAULT false,
+    category_data BOOLEAN NOT NULL DEFAULT false,
+    hi_types JSONB,
+    period_from TIMESTAMP NOT NULL,
+    period_to TIMESTAMP NOT NULL,
+    status VARCHAR NOT NULL,
+    excluded BOOLEAN NOT NULL DEFAULT false,
+    active BOOLEAN NOT NULL DEFAULT true,
+    date_created TIMESTAMP NOT NULL DEFAULT (now() AT TIME ZONE 'utc')
+);
+
+-- Target of the ON CONFLICT of the source upsert, at most one source per HIP (or for all HIPs) in a subscription
+CREATE UNIQUE INDEX IF NOT EXISTS subscription_source_hip_id_subscription_id_key
+    ON subscription_source (COALESCE(hip_id, ''), subscription_id);
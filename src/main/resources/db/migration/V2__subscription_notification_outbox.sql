@@ -0,0 +1,13 @@
+CREATE TABLE IF NOT EXISTS subscription_notification_outbox (
+    id BIGSERIAL PRIMARY KEY,
+    hiu_id VARCHAR NOT NULL,
+    event JSONB NOT NULL,
+    status VARCHAR NOT NULL,
+    attempts INTEGER NOT NULL DEFAULT 0,
+    next_attempt_at TIMESTAMP NOT NULL,
+    claimed_until TIMESTAMP,
+    date_created TIMESTAMP NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS subscription_notification_outbox_pending_idx
+    ON subscription_notification_outbox (next_attempt_at) WHERE status = 'PENDING';
@@ -0,0 +1,11 @@
+-- The HIU id is read out of details on every lookup by HIU, keep it in a column of its own instead. Existing rows
+-- are filled by the backfill job in small batches, until then lookups fall back to details.
+ALTER TABLE hiu_subscription ADD COLUMN IF NOT EXISTS hiu_id VARCHAR;
+
+-- Lookups and listings of a patient's requests for an HIU, in the order they are listed
+CREATE INDEX CONCURRENTLY IF NOT EXISTS hiu_subscription_patient_id_hiu_id_idx
+    ON hiu_subscription (patient_id, hiu_id, date_modified DESC, request_id DESC);
+
+-- Rows still without the column, picked up by the backfill job
+CREATE INDEX CONCURRENTLY IF NOT EXISTS hiu_subscription_missing_hiu_id_idx
+    ON hiu_subscription (request_id) WHERE hiu_id IS NULL;
@@ -0,0 +1,12 @@
+-- Listings of a patient's requests, newest first
+CREATE INDEX CONCURRENTLY IF NOT EXISTS hiu_subscription_patient_id_date_modified_idx
+    ON hiu_subscription (patient_id, date_modified DESC, request_id DESC);
+
+-- Granted subscriptions of the patients of link events
+CREATE INDEX CONCURRENTLY IF NOT EXISTS hiu_subscription_patient_id_status_idx
+    ON hiu_subscription (patient_id, status, subscription_id);
+
+-- Active link sources of those subscriptions for the HIP of the event, or for all HIPs, covering the period check
+CREATE INDEX CONCURRENTLY IF NOT EXISTS subscription_source_active_link_idx
+    ON subscription_source (subscription_id, hip_id, category_link, status, period_from, period_to)
+    WHERE active = true;
@@ -0,0 +1,3 @@
+-- Exports of the subscriptions of an HIU, read in subscription order so that the sources of one come together
+CREATE INDEX CONCURRENTLY IF NOT EXISTS hiu_subscription_hiu_id_subscription_id_idx
+    ON hiu_subscription (hiu_id, subscription_id);
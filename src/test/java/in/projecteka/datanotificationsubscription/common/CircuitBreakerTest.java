@@ -0,0 +1,153 @@
+package in.projecteka.datanotificationsubscription.common;
+
+import in.projecteka.datanotificationsubscription.CircuitBreakerProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static in.projecteka.datanotificationsubscription.common.ClientError.hiuNotificationsThrottled;
+import static in.projecteka.datanotificationsubscription.common.ClientError.networkServiceCallFailed;
+import static in.projecteka.datanotificationsubscription.common.ClientError.unprocessableEntity;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+    private final AtomicLong now = new AtomicLong();
+    private CircuitBreakerProperties properties;
+    private CircuitBreaker circuitBreaker;
+
+    @BeforeEach
+    void setUp() {
+        properties = new CircuitBreakerProperties(true, 4, 4, 50, 1000, 1);
+        circuitBreaker = new CircuitBreaker(properties, now::get);
+    }
+
+    @Test
+    void shouldOpenOnceTheFailureRateReachesTheThreshold() {
+        succeed();
+        succeed();
+        fail();
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        fail();
+
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void shouldFailFastWithoutCallingWhileOpen() {
+        open();
+        AtomicInteger calls = new AtomicInteger();
+
+        StepVerifier.create(circuitBreaker.protect(Mono.fromCallable(calls::incrementAndGet), GatewayCircuitBreakers::isFailure))
+                .expectErrorMatches(error -> ((ClientError) error).getErrorCode() == ErrorCode.GATEWAY_CIRCUIT_OPEN)
+                .verify();
+
+        assertThat(calls.get()).isZero();
+    }
+
+    @Test
+    void shouldCloseWhenTheHalfOpenProbeSucceeds() {
+        open();
+        now.addAndGet(1000);
+
+        succeed();
+
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void shouldOpenAgainWhenTheHalfOpenProbeFails() {
+        open();
+        now.addAndGet(1000);
+
+        StepVerifier.create(circuitBreaker.protect(Mono.error(new TimeoutException()), GatewayCircuitBreakers::isFailure))
+                .expectError(TimeoutException.class)
+                .verify();
+
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void shouldNotCountClientErrorsOfTheHIUAsFailures() {
+        for (int i = 0; i < 4; i++) {
+            StepVerifier.create(circuitBreaker.protect(Mono.error(unprocessableEntity()), GatewayCircuitBreakers::isFailure))
+                    .expectError(ClientError.class)
+                    .verify();
+        }
+
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void shouldNotCountNotificationsThrottledBeforeReachingTheGateway() {
+        fail();
+        fail();
+        throttle();
+        throttle();
+
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void shouldNotCloseOnAHalfOpenProbeWhichWasThrottled() {
+        open();
+        now.addAndGet(1000);
+
+        throttle();
+
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        succeed();
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void shouldKeepTheCircuitsOfOtherHIUsClosed() {
+        var gatewayCircuitBreakers = new GatewayCircuitBreakers(
+                new CircuitBreakerProperties(true, 4, 2, 75, 1000, 1), new SimpleMeterRegistry());
+        for (int i = 0; i < 2; i++) {
+            StepVerifier.create(gatewayCircuitBreakers.protect("/notify", "other-hiu", Mono.just("sent")))
+                    .expectNext("sent")
+                    .verifyComplete();
+            StepVerifier.create(gatewayCircuitBreakers.protect("/notify", "failing-hiu", Mono.error(networkServiceCallFailed())))
+                    .expectError(ClientError.class)
+                    .verify();
+        }
+        StepVerifier.create(gatewayCircuitBreakers.protect("/notify", "other-hiu", Mono.just("sent")))
+                .expectNext("sent")
+                .verifyComplete();
+
+        assertThat(gatewayCircuitBreakers.stateOf("/notify", "failing-hiu")).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(gatewayCircuitBreakers.stateOf("/notify", "other-hiu")).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            fail();
+        }
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    private void succeed() {
+        StepVerifier.create(circuitBreaker.protect(Mono.just("ok"), GatewayCircuitBreakers::isFailure))
+                .expectNext("ok")
+                .verifyComplete();
+    }
+
+    private void throttle() {
+        StepVerifier.create(circuitBreaker.protect(Mono.error(hiuNotificationsThrottled()), GatewayCircuitBreakers::isFailure))
+                .expectError(ClientError.class)
+                .verify();
+    }
+
+    private void fail() {
+        StepVerifier.create(circuitBreaker.protect(Mono.error(networkServiceCallFailed()), GatewayCircuitBreakers::isFailure))
+                .expectError(ClientError.class)
+                .verify();
+    }
+}
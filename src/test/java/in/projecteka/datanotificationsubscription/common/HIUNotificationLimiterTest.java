@@ -0,0 +1,144 @@
+package in.projecteka.datanotificationsubscription.common;
+
+import in.projecteka.datanotificationsubscription.HIUNotificationLimitProperties;
+import in.projecteka.datanotificationsubscription.HIUNotificationLimitProperties.Limits;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HIUNotificationLimiterTest {
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void shouldPassCallsThroughWhenDisabled() {
+        var limiter = new HIUNotificationLimiter(new HIUNotificationLimitProperties(false, null, null), meterRegistry);
+
+        StepVerifier.create(limiter.limit("hiu", Mono.just("sent")))
+                .expectNext("sent")
+                .verifyComplete();
+
+        assertThat(meterRegistry.find("hiu.notification.in.flight").gauge()).isNull();
+    }
+
+    @Test
+    void shouldQueueCallsBeyondMaxInFlightAndShedWhenTheQueueIsFull() {
+        var limiter = limiterWith(new Limits(1000, 1000, 1, 1, 5000));
+        MonoProcessor<String> first = MonoProcessor.create();
+        AtomicInteger secondSent = new AtomicInteger();
+
+        var firstCall = limiter.limit("hiu", first).subscribe();
+        var secondCall = limiter.limit("hiu", Mono.fromCallable(secondSent::incrementAndGet)).subscribe();
+
+        StepVerifier.create(limiter.limit("hiu", Mono.just("third")))
+                .expectErrorMatches(error -> error instanceof ClientError &&
+                        ((ClientError) error).getErrorCode() == ErrorCode.HIU_NOTIFICATIONS_THROTTLED)
+                .verify();
+        assertThat(secondSent.get()).isZero();
+        assertThat(gauge("hiu.notification.in.flight", "hiu")).isEqualTo(1);
+        assertThat(gauge("hiu.notification.queued", "hiu")).isEqualTo(1);
+        assertThat(shed("hiu", "bulkhead")).isEqualTo(1);
+
+        first.onNext("first");
+
+        assertThat(secondSent.get()).isEqualTo(1);
+        assertThat(gauge("hiu.notification.in.flight", "hiu")).isZero();
+        assertThat(gauge("hiu.notification.queued", "hiu")).isZero();
+        firstCall.dispose();
+        secondCall.dispose();
+    }
+
+    @Test
+    void shouldStartTheCallOutsideOfTheLockOfTheHIU() {
+        var limiter = limiterWith(new Limits(1000, 1000, 1, 1, 5000));
+
+        StepVerifier.create(limiter.limit("hiu", Mono.fromCallable(() -> CompletableFuture
+                .supplyAsync(() -> gauge("hiu.notification.in.flight", "hiu"))
+                .get(1, TimeUnit.SECONDS))))
+                .expectNext(1.0)
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldNotLetOneHIUHoldTheSlotsOfAnother() {
+        var limiter = limiterWith(new Limits(1000, 1000, 1, 1, 5000));
+        var blocked = limiter.limit("slow-hiu", Mono.never()).subscribe();
+
+        StepVerifier.create(limiter.limit("other-hiu", Mono.just("sent")))
+                .expectNext("sent")
+                .verifyComplete();
+        blocked.dispose();
+        assertThat(gauge("hiu.notification.in.flight", "slow-hiu")).isZero();
+    }
+
+    @Test
+    void shouldShedCallsWaitingLongerThanMaxQueueWaitForASlot() {
+        var limiter = limiterWith(new Limits(1000, 1000, 1, 10, 100));
+        var blocked = limiter.limit("hiu", Mono.never()).subscribe();
+
+        StepVerifier.create(limiter.limit("hiu", Mono.just("second")))
+                .expectError(ClientError.class)
+                .verify(Duration.ofSeconds(5));
+
+        assertThat(shed("hiu", "queue-timeout")).isEqualTo(1);
+        assertThat(gauge("hiu.notification.queued", "hiu")).isZero();
+        blocked.dispose();
+    }
+
+    @Test
+    void shouldShedCallsBeyondTheRateLimit() {
+        var limiter = limiterWith(new Limits(1, 1, 10, 10, 100));
+
+        StepVerifier.create(limiter.limit("hiu", Mono.just("first")))
+                .expectNext("first")
+                .verifyComplete();
+        StepVerifier.create(limiter.limit("hiu", Mono.just("second")))
+                .expectError(ClientError.class)
+                .verify();
+
+        assertThat(shed("hiu", "rate")).isEqualTo(1);
+    }
+
+    @Test
+    void shouldUseTheLimitsConfiguredForTheHIU() {
+        var properties = new HIUNotificationLimitProperties(true,
+                new Limits(1000, 1000, 10, 10, 100),
+                Map.of("hiu", new Limits(1000, 1000, 3, 10, 100)));
+        var limiter = new HIUNotificationLimiter(properties, meterRegistry);
+
+        StepVerifier.create(limiter.limit("hiu", Mono.just("sent")).then(limiter.limit("other-hiu", Mono.just("sent"))))
+                .expectNext("sent")
+                .verifyComplete();
+
+        assertThat(gauge("hiu.notification.limit.in.flight", "hiu")).isEqualTo(3);
+        assertThat(gauge("hiu.notification.limit.in.flight", "other-hiu")).isEqualTo(10);
+    }
+
+    private HIUNotificationLimiter limiterWith(Limits limits) {
+        return new HIUNotificationLimiter(new HIUNotificationLimitProperties(true, limits, null), meterRegistry);
+    }
+
+    private double gauge(String name, String hiuId) {
+        return meterRegistry.get(name).tag("hiu", hiuId).gauge().value();
+    }
+
+    private double shed(String hiuId, String reason) {
+        return meterRegistry.get("hiu.notification.shed").tag("hiu", hiuId).tag("reason", reason).counter().count();
+    }
+}
@@ -0,0 +1,267 @@
+package in.projecteka.datanotificationsubscription.common;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.pgclient.PgConnection;
+import io.vertx.pgclient.PgPool;
+import io.vertx.sqlclient.PreparedQuery;
+import io.vertx.sqlclient.PreparedStatement;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.RowStream;
+import io.vertx.sqlclient.SqlConnection;
+import io.vertx.sqlclient.Transaction;
+import io.vertx.sqlclient.Tuple;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class QueryExecutorTest {
+    private static final String QUERY = "SELECT 1";
+
+    private PgPool pool;
+    private PgConnection connection;
+    private PreparedQuery<RowSet<Row>> preparedQuery;
+    private Transaction transaction;
+    private PreparedStatement preparedStatement;
+    private RowStream<Row> rows;
+    private QueryExecutor queryExecutor;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        pool = mock(PgPool.class);
+        connection = mock(PgConnection.class);
+        preparedQuery = mock(PreparedQuery.class);
+        transaction = mock(Transaction.class);
+        preparedStatement = mock(PreparedStatement.class);
+        rows = mock(RowStream.class);
+        when(pool.preparedQuery(anyString())).thenReturn(preparedQuery);
+        when(connection.preparedQuery(anyString())).thenReturn(preparedQuery);
+        queryExecutor = new QueryExecutor(new QueryMetrics(new SimpleMeterRegistry(), Duration.ofSeconds(1)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldRunQueriesThroughThePool() {
+        RowSet<Row> rows = rowSet();
+        executes(Future.succeededFuture(rows));
+
+        StepVerifier.create(queryExecutor.query("select", pool, QUERY, Tuple.tuple()))
+                .expectNext(rows)
+                .verifyComplete();
+
+        verify(pool, never()).getConnection(any(Handler.class));
+    }
+
+    @Test
+    void shouldFailWithDbOperationErrorWhenTheQueryFails() {
+        executes(Future.failedFuture(new IllegalStateException("syntax error")));
+
+        StepVerifier.create(queryExecutor.query("select", pool, QUERY, Tuple.tuple()))
+                .expectError(DbOperationError.class)
+                .verify();
+    }
+
+    @Test
+    void shouldReturnTheRowsOfACancellableQueryAndReleaseItsConnection() {
+        RowSet<Row> rows = rowSet();
+        connects(Future.<SqlConnection>succeededFuture(connection));
+        executes(Future.succeededFuture(rows));
+
+        StepVerifier.create(queryExecutor.cancellableQuery("select", pool, QUERY, Tuple.tuple()))
+                .expectNext(rows)
+                .verifyComplete();
+
+        verify(connection).close();
+        verify(connection, never()).cancelRequest(any());
+    }
+
+    @Test
+    void shouldFailWithDbOperationErrorWhenNoConnectionIsGiven() {
+        connects(Future.failedFuture(new IllegalStateException("connection refused")));
+
+        StepVerifier.create(queryExecutor.cancellableQuery("select", pool, QUERY, Tuple.tuple()))
+                .expectError(DbOperationError.class)
+                .verify();
+    }
+
+    @Test
+    void shouldHoldTheConnectionUntilTheCancelIsAcknowledged() {
+        connects(Future.<SqlConnection>succeededFuture(connection));
+        AtomicReference<Handler<AsyncResult<RowSet<Row>>>> running = runs();
+        AtomicReference<Handler<AsyncResult<Void>>> cancelling = cancels();
+
+        StepVerifier.create(queryExecutor.cancellableQuery("select", pool, QUERY, Tuple.tuple()))
+                .thenCancel()
+                .verify();
+
+        running.get().handle(Future.failedFuture(new IllegalStateException("canceling statement due to user request")));
+        verify(connection, never()).close();
+
+        cancelling.get().handle(Future.succeededFuture());
+        verify(connection).close();
+    }
+
+    @Test
+    void shouldHoldTheConnectionUntilTheCancelledQueryCompleted() {
+        connects(Future.<SqlConnection>succeededFuture(connection));
+        AtomicReference<Handler<AsyncResult<RowSet<Row>>>> running = runs();
+        AtomicReference<Handler<AsyncResult<Void>>> cancelling = cancels();
+
+        StepVerifier.create(queryExecutor.cancellableQuery("select", pool, QUERY, Tuple.tuple()))
+                .thenCancel()
+                .verify();
+
+        cancelling.get().handle(Future.succeededFuture());
+        verify(connection, never()).close();
+
+        running.get().handle(Future.failedFuture(new IllegalStateException("canceling statement due to user request")));
+        verify(connection).close();
+    }
+
+    @Test
+    void shouldStreamRowsAsTheyAreAskedForAndCommitAfterTheLast() {
+        Row row = mock(Row.class);
+        connects(Future.<SqlConnection>succeededFuture(connection));
+        StreamHandlers handlers = opensStream();
+
+        StepVerifier.create(queryExecutor.stream("export", pool, QUERY, Tuple.tuple(), 10, Function.identity()), 0)
+                .thenRequest(1)
+                .then(() -> verify(rows).fetch(1))
+                .then(() -> handlers.row.get().handle(row))
+                .expectNext(row)
+                .then(() -> handlers.end.get().handle(null))
+                .verifyComplete();
+
+        InOrder inOrder = inOrder(transaction, connection);
+        inOrder.verify(transaction).commit();
+        inOrder.verify(connection).close();
+        verify(rows, never()).close();
+    }
+
+    @Test
+    void shouldCloseTheCursorThenTheConnectionWhenTheStreamIsCancelled() {
+        connects(Future.<SqlConnection>succeededFuture(connection));
+        opensStream();
+
+        StepVerifier.create(queryExecutor.stream("export", pool, QUERY, Tuple.tuple(), 10, Function.identity()), 0)
+                .thenRequest(1)
+                .thenCancel()
+                .verify();
+
+        InOrder inOrder = inOrder(rows, connection);
+        inOrder.verify(rows).close();
+        inOrder.verify(connection).close();
+        verify(transaction, never()).commit();
+    }
+
+    @Test
+    void shouldCloseTheCursorThenTheConnectionWhenTheStreamFails() {
+        connects(Future.<SqlConnection>succeededFuture(connection));
+        StreamHandlers handlers = opensStream();
+
+        StepVerifier.create(queryExecutor.stream("export", pool, QUERY, Tuple.tuple(), 10, Function.identity()), 0)
+                .thenRequest(1)
+                .then(() -> handlers.failure.get().handle(new IllegalStateException("connection reset")))
+                .expectError(DbOperationError.class)
+                .verify();
+
+        InOrder inOrder = inOrder(rows, connection);
+        inOrder.verify(rows).close();
+        inOrder.verify(connection).close();
+        verify(transaction, never()).commit();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void connects(AsyncResult<SqlConnection> connected) {
+        doAnswer(invocation -> {
+            Handler<AsyncResult<SqlConnection>> handler = invocation.getArgument(0);
+            handler.handle(connected);
+            return null;
+        }).when(pool).getConnection(any(Handler.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void executes(AsyncResult<RowSet<Row>> executed) {
+        doAnswer(invocation -> {
+            Handler<AsyncResult<RowSet<Row>>> handler = invocation.getArgument(1);
+            handler.handle(executed);
+            return null;
+        }).when(preparedQuery).execute(any(Tuple.class), any(Handler.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private AtomicReference<Handler<AsyncResult<RowSet<Row>>>> runs() {
+        AtomicReference<Handler<AsyncResult<RowSet<Row>>>> running = new AtomicReference<>();
+        doAnswer(invocation -> {
+            running.set(invocation.getArgument(1));
+            return null;
+        }).when(preparedQuery).execute(any(Tuple.class), any(Handler.class));
+        return running;
+    }
+
+    private AtomicReference<Handler<AsyncResult<Void>>> cancels() {
+        AtomicReference<Handler<AsyncResult<Void>>> cancelling = new AtomicReference<>();
+        doAnswer(invocation -> {
+            cancelling.set(invocation.getArgument(0));
+            return connection;
+        }).when(connection).cancelRequest(any());
+        return cancelling;
+    }
+
+    @SuppressWarnings("unchecked")
+    private StreamHandlers opensStream() {
+        StreamHandlers handlers = new StreamHandlers();
+        when(connection.begin()).thenReturn(Future.succeededFuture(transaction));
+        when(transaction.commit()).thenReturn(Future.succeededFuture());
+        doAnswer(invocation -> {
+            Handler<AsyncResult<PreparedStatement>> handler = invocation.getArgument(1);
+            handler.handle(Future.succeededFuture(preparedStatement));
+            return connection;
+        }).when(connection).prepare(anyString(), any(Handler.class));
+        when(preparedStatement.createStream(anyInt(), any(Tuple.class))).thenReturn(rows);
+        when(rows.close()).thenReturn(Future.succeededFuture());
+        doAnswer(invocation -> {
+            handlers.row.set(invocation.getArgument(0));
+            return rows;
+        }).when(rows).handler(any());
+        doAnswer(invocation -> {
+            handlers.end.set(invocation.getArgument(0));
+            return rows;
+        }).when(rows).endHandler(any());
+        doAnswer(invocation -> {
+            handlers.failure.set(invocation.getArgument(0));
+            return rows;
+        }).when(rows).exceptionHandler(any());
+        return handlers;
+    }
+
+    private static class StreamHandlers {
+        private final AtomicReference<Handler<Row>> row = new AtomicReference<>();
+        private final AtomicReference<Handler<Void>> end = new AtomicReference<>();
+        private final AtomicReference<Handler<Throwable>> failure = new AtomicReference<>();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RowSet<Row> rowSet() {
+        return mock(RowSet.class);
+    }
+}
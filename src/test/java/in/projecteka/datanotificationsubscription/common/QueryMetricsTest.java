@@ -0,0 +1,62 @@
+package in.projecteka.datanotificationsubscription.common;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.pgclient.PgPool;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class QueryMetricsTest {
+    private SimpleMeterRegistry meterRegistry;
+    private PgPool pool;
+    private QueryMetrics queryMetrics;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        pool = mock(PgPool.class);
+        queryMetrics = new QueryMetrics(meterRegistry, Duration.ofSeconds(1));
+        queryMetrics.register("readOnly", pool, 2);
+    }
+
+    @Test
+    void shouldTimeQueriesByNameAndOutcome() {
+        StepVerifier.create(queryMetrics.timed("getSubscriptionRequest", pool, Mono.just(1)))
+                .expectNext(1)
+                .verifyComplete();
+        StepVerifier.create(queryMetrics.timed("getSubscriptionRequest", pool, Mono.error(new DbOperationError())))
+                .expectError(DbOperationError.class)
+                .verify();
+
+        assertThat(meterRegistry.get("subscription.db.query")
+                .tags("query", "getSubscriptionRequest", "outcome", "success").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("subscription.db.query")
+                .tags("query", "getSubscriptionRequest", "outcome", "error").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldCountTheQueriesInFlightOnAPool() {
+        Mono<Double> inFlight = Mono.fromCallable(() -> gauge("subscription.db.pool.in.flight"));
+        Mono<Double> waiting = Mono.fromCallable(() -> gauge("subscription.db.pool.waiting"));
+        Mono<Double> nested = queryMetrics.timed("first", pool,
+                queryMetrics.timed("second", pool,
+                        queryMetrics.timed("third", pool, Mono.zip(inFlight, waiting, Double::sum))));
+
+        StepVerifier.create(nested)
+                .expectNext(4.0)
+                .verifyComplete();
+
+        assertThat(gauge("subscription.db.pool.in.flight")).isZero();
+        assertThat(gauge("subscription.db.pool.usage")).isZero();
+    }
+
+    private double gauge(String name) {
+        return meterRegistry.get(name).tags("pool", "readOnly").gauge().value();
+    }
+}
@@ -0,0 +1,126 @@
+package in.projecteka.datanotificationsubscription.common;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.pgclient.PgPool;
+import io.vertx.sqlclient.Query;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowIterator;
+import io.vertx.sqlclient.RowSet;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReadRouterTest {
+    private PgPool primary;
+    private PgPool replica;
+    private ReadRouter readRouter;
+
+    @BeforeEach
+    void setUp() {
+        primary = mock(PgPool.class);
+        replica = mock(PgPool.class);
+        readRouter = new ReadRouter(primary, replica, true, Duration.ofMinutes(1), Duration.ofMillis(2000),
+                Duration.ofSeconds(1), Duration.ofMillis(500));
+    }
+
+    @Test
+    void shouldReadFromTheReplica() {
+        assertThat(readRouter.reader()).isSameAs(replica);
+        assertThat(readRouter.readerFor("patient@ncg")).isSameAs(replica);
+    }
+
+    @Test
+    void shouldReadTheOwnWritesOfAPatientFromThePrimary() {
+        readRouter.wrote("patient@ncg");
+
+        assertThat(readRouter.readerFor("patient@ncg")).isSameAs(primary);
+        assertThat(readRouter.readerFor("other-patient@ncg")).isSameAs(replica);
+    }
+
+    @Test
+    void shouldReadABatchFromThePrimaryWhenAnyOfItsPatientsWrote() {
+        readRouter.wrote("patient@ncg");
+
+        assertThat(readRouter.readerFor(List.of("other-patient@ncg", "patient@ncg"))).isSameAs(primary);
+        assertThat(readRouter.readerFor(List.of("other-patient@ncg", "another-patient@ncg"))).isSameAs(replica);
+    }
+
+    @Test
+    void shouldNotStickToThePrimaryWithoutAReplica() {
+        readRouter = new ReadRouter(primary, replica, false, Duration.ofMinutes(1), Duration.ofMillis(2000),
+                Duration.ofSeconds(1), Duration.ofMillis(500));
+
+        readRouter.wrote("patient@ncg");
+
+        assertThat(readRouter.readerFor("patient@ncg")).isSameAs(replica);
+    }
+
+    @Test
+    void shouldReadFromThePrimaryWhileTheReplicaLags() {
+        lagOf(5000L);
+
+        StepVerifier.create(readRouter.probe())
+                .expectNext(false)
+                .verifyComplete();
+
+        assertThat(readRouter.reader()).isSameAs(primary);
+        assertThat(readRouter.readerFor("patient@ncg")).isSameAs(primary);
+    }
+
+    @Test
+    void shouldReadFromTheReplicaAgainOnceItCaughtUp() {
+        lagOf(5000L);
+        readRouter.probe().block();
+        lagOf(100L);
+
+        StepVerifier.create(readRouter.probe())
+                .expectNext(true)
+                .verifyComplete();
+
+        assertThat(readRouter.reader()).isSameAs(replica);
+    }
+
+    @Test
+    void shouldReadFromThePrimaryWhenTheProbeFails() {
+        probeResult(Future.failedFuture(new RuntimeException("connection refused")));
+
+        StepVerifier.create(readRouter.probe())
+                .expectNext(false)
+                .verifyComplete();
+
+        assertThat(readRouter.reader()).isSameAs(primary);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void lagOf(long lag) {
+        Row row = mock(Row.class);
+        when(row.getLong("lag")).thenReturn(lag);
+        RowIterator<Row> iterator = mock(RowIterator.class);
+        when(iterator.next()).thenReturn(row);
+        RowSet<Row> rows = mock(RowSet.class);
+        when(rows.iterator()).thenReturn(iterator);
+        probeResult(Future.succeededFuture(rows));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void probeResult(AsyncResult<RowSet<Row>> result) {
+        Query<RowSet<Row>> query = mock(Query.class);
+        doAnswer(invocation -> {
+            ((Handler<AsyncResult<RowSet<Row>>>) invocation.getArgument(0)).handle(result);
+            return null;
+        }).when(query).execute(any(Handler.class));
+        when(replica.query(anyString())).thenReturn(query);
+    }
+}
@@ -0,0 +1,43 @@
+package in.projecteka.datanotificationsubscription.common.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BloomFilterTest {
+
+    @Test
+    void shouldContainEveryValuePut() {
+        BloomFilter filter = BloomFilter.create(1000, 0.01);
+
+        IntStream.range(0, 1000).forEach(i -> filter.put("patient-" + i + "@ncg"));
+
+        assertThat(IntStream.range(0, 1000).allMatch(i -> filter.mightContain("patient-" + i + "@ncg"))).isTrue();
+    }
+
+    @Test
+    void shouldKeepFalsePositivesNearTheConfiguredProbability() {
+        BloomFilter filter = BloomFilter.create(10000, 0.01);
+        IntStream.range(0, 10000).forEach(i -> filter.put("patient-" + i + "@ncg"));
+
+        long falsePositives = IntStream.range(0, 10000)
+                .filter(i -> filter.mightContain("unsubscribed-" + i + "@ncg"))
+                .count();
+
+        assertThat(falsePositives).isLessThan(200);
+        assertThat(filter.expectedFalsePositiveProbability()).isBetween(0.005, 0.02);
+    }
+
+    @Test
+    void shouldNotGrowBeyondItsInitialSize() {
+        BloomFilter filter = BloomFilter.create(100, 0.01);
+        long sizeInBytes = filter.sizeInBytes();
+
+        IntStream.range(0, 10000).forEach(i -> filter.put("patient-" + i + "@ncg"));
+
+        assertThat(filter.sizeInBytes()).isEqualTo(sizeInBytes);
+        assertThat(filter.expectedFalsePositiveProbability()).isGreaterThan(0.5);
+    }
+}
@@ -1,15 +1,18 @@
 package in.projecteka.datanotificationsubscription.hipLink;
 
+import in.projecteka.datanotificationsubscription.GatewaySubscriptionNotifier;
 import in.projecteka.datanotificationsubscription.HIUSubscriptionManager;
 import in.projecteka.datanotificationsubscription.clients.UserServiceClient;
 import in.projecteka.datanotificationsubscription.clients.model.User;
 import in.projecteka.datanotificationsubscription.common.GatewayServiceClient;
+import in.projecteka.datanotificationsubscription.subscription.LinkSubscriptionIndex;
 import in.projecteka.datanotificationsubscription.subscription.Subscription;
 import in.projecteka.datanotificationsubscription.subscription.SubscriptionRequestRepository;
 import in.projecteka.datanotificationsubscription.subscription.model.Category;
 import in.projecteka.datanotificationsubscription.subscription.model.HIUSubscriptionNotificationRequest;
 import in.projecteka.datanotificationsubscription.subscription.model.HipDetail;
 import in.projecteka.datanotificationsubscription.subscription.model.HiuDetail;
+import in.projecteka.datanotificationsubscription.subscription.model.PatientDetail;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
@@ -19,6 +22,8 @@ import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
 
 import static in.projecteka.datanotificationsubscription.subscription.model.TestBuilder.newCCLinkEvent;
 import static in.projecteka.datanotificationsubscription.subscription.model.TestBuilder.patientCareContext;
@@ -27,7 +32,10 @@ import static in.projecteka.datanotificationsubscription.subscription.model.Test
 import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -40,13 +48,19 @@ class HIUSubscriptionManagerTest {
     private GatewayServiceClient gatewayServiceClient;
     @Mock
     private UserServiceClient userServiceClient;
+    @Mock
+    private LinkSubscriptionIndex linkSubscriptionIndex;
 
     HIUSubscriptionManager hiuSubscriptionManager;
 
     @BeforeEach
     void setUp() {
         initMocks(this);
-        hiuSubscriptionManager = new HIUSubscriptionManager(subscriptionRequestRepository, gatewayServiceClient, userServiceClient);
+        hiuSubscriptionManager = new HIUSubscriptionManager(subscriptionRequestRepository,
+                new GatewaySubscriptionNotifier(gatewayServiceClient),
+                userServiceClient,
+                linkSubscriptionIndex);
+        when(linkSubscriptionIndex.mayHaveSubscribers(anyString(), anyString())).thenReturn(true);
     }
 
     @Test
@@ -82,6 +96,8 @@ class HIUSubscriptionManagerTest {
 
         assertThat(notificationRequests.get(0).getEvent().getCategory()).isEqualTo(Category.LINK);
         assertThat(notificationRequests.get(0).getEvent().getSubscriptionId()).isEqualTo(subscription1.getId());
+        assertThat(notificationRequests.get(0).getEvent().getId())
+                .isEqualTo(LinkEventKey.of(linkEvent, subscription1.getId().toString()));
         assertThat(notificationRequests.get(0).getEvent().getContent().getHip().getId()).isEqualTo(linkEvent.getHipId());
         assertThat(notificationRequests.get(0).getEvent().getContent().getContext().get(0).getCareContext()).isEqualTo(linkEvent.getCareContexts().get(0));
         assertThat(notificationRequests.get(0).getEvent().getContent().getContext().get(0).getHiTypes()).isNullOrEmpty();
@@ -137,6 +153,27 @@ class HIUSubscriptionManagerTest {
         assertThat(hiuId).isEqualTo(subscription1.getHiu().getId());
     }
 
+    @Test
+    void shouldIdentifyNotificationsByTheGivenEventKey() {
+        NewCCLinkEvent linkEvent = newCCLinkEvent()
+                .careContexts(asList(patientCareContext().build()))
+                .build();
+        UUID eventKey = UUID.randomUUID();
+        HipDetail hipDetail = HipDetail.builder().id(linkEvent.getHipId()).build();
+        Subscription subscription = subscription().hiu(HiuDetail.builder().id("first").build()).hip(hipDetail).excluded(false).build();
+        when(userServiceClient.userOf(anyString())).thenReturn(Mono.just(user().build()));
+        when(subscriptionRequestRepository.findLinkSubscriptionsFor(anyString(), anyString())).thenReturn(Mono.just(List.of(subscription)));
+        when(gatewayServiceClient.notifyForSubscription(any(HIUSubscriptionNotificationRequest.class), anyString())).thenReturn(Mono.empty());
+
+        StepVerifier.create(hiuSubscriptionManager.notifySubscribers(linkEvent, eventKey))
+                .verifyComplete();
+
+        ArgumentCaptor<HIUSubscriptionNotificationRequest> notificationRequestCaptor = ArgumentCaptor.forClass(HIUSubscriptionNotificationRequest.class);
+        verify(gatewayServiceClient).notifyForSubscription(notificationRequestCaptor.capture(), eq("first"));
+        assertThat(notificationRequestCaptor.getValue().getEvent().getId())
+                .isEqualTo(LinkEventKey.of(eventKey, subscription.getId().toString()));
+    }
+
     @Test
     void shouldNotNotifySubscribersWhichAreExcludedForCurrentHIP() {
         NewCCLinkEvent linkEvent = newCCLinkEvent()
@@ -218,4 +255,109 @@ class HIUSubscriptionManagerTest {
         assertThat(notificationRequest.getEvent().getContent().getPatient().getId()).isEqualTo(user.getIdentifier());
         assertThat(hiuId).isEqualTo(subscription2.getHiu().getId());
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldLookUpSubscriptionsOfAllLinkEventsInOneQuery() {
+        NewCCLinkEvent firstEvent = newCCLinkEvent().healthNumber("first@ncg").build();
+        NewCCLinkEvent secondEvent = newCCLinkEvent().healthNumber("second@ncg").build();
+        Subscription forFirstPatient = subscription()
+                .patient(PatientDetail.builder().id(firstEvent.getHealthNumber()).build())
+                .hip(HipDetail.builder().id(firstEvent.getHipId()).build())
+                .build();
+        Subscription forAllHIPsOfSecondPatient = subscription()
+                .patient(PatientDetail.builder().id(secondEvent.getHealthNumber()).build())
+                .hip(null)
+                .build();
+        Subscription forOtherHIPOfSecondPatient = subscription()
+                .patient(PatientDetail.builder().id(secondEvent.getHealthNumber()).build())
+                .hip(HipDetail.builder().id(firstEvent.getHipId()).build())
+                .build();
+        when(subscriptionRequestRepository.findLinkSubscriptionsFor(anyCollection(), anyCollection()))
+                .thenReturn(Mono.just(asList(forFirstPatient, forAllHIPsOfSecondPatient, forOtherHIPOfSecondPatient)));
+
+        StepVerifier.create(hiuSubscriptionManager.findLinkSubscriptionsFor(asList(firstEvent, secondEvent)))
+                .assertNext(linkSubscriptions -> {
+                    assertThat(linkSubscriptions.of(firstEvent)).containsExactly(forFirstPatient);
+                    assertThat(linkSubscriptions.of(secondEvent)).containsExactly(forAllHIPsOfSecondPatient);
+                })
+                .verifyComplete();
+
+        verify(subscriptionRequestRepository, times(1)).findLinkSubscriptionsFor(
+                Set.of(firstEvent.getHealthNumber(), secondEvent.getHealthNumber()),
+                Set.of(firstEvent.getHipId(), secondEvent.getHipId()));
+    }
+
+    @Test
+    void shouldNotLookUpSubscriptionsOfPatientWithoutSubscribers() {
+        NewCCLinkEvent linkEvent = newCCLinkEvent().build();
+        when(linkSubscriptionIndex.mayHaveSubscribers(linkEvent.getHealthNumber(), linkEvent.getHipId())).thenReturn(false);
+
+        StepVerifier.create(hiuSubscriptionManager.notifySubscribers(linkEvent))
+                .verifyComplete();
+        StepVerifier.create(hiuSubscriptionManager.findLinkSubscriptionsFor(List.of(linkEvent)))
+                .assertNext(linkSubscriptions -> assertThat(linkSubscriptions.of(linkEvent)).isEmpty())
+                .verifyComplete();
+
+        verify(subscriptionRequestRepository, never()).findLinkSubscriptionsFor(anyString(), anyString());
+        verify(subscriptionRequestRepository, never()).findLinkSubscriptionsFor(anyCollection(), anyCollection());
+        verify(userServiceClient, never()).userOf(anyString());
+    }
+
+    @Test
+    void shouldNotIdentifyPatientWhenNoSubscriberIsToBeNotified() {
+        NewCCLinkEvent linkEvent = newCCLinkEvent().build();
+        HipDetail hipDetail = HipDetail.builder().id(linkEvent.getHipId()).build();
+        Subscription excluded = subscription().hiu(HiuDetail.builder().id("first").build()).hip(hipDetail).excluded(true).build();
+        when(subscriptionRequestRepository.findLinkSubscriptionsFor(anyString(), anyString())).thenReturn(Mono.just(List.of(excluded)));
+
+        StepVerifier.create(hiuSubscriptionManager.notifySubscribers(linkEvent))
+                .verifyComplete();
+
+        verify(userServiceClient, never()).userOf(anyString());
+        verify(gatewayServiceClient, never()).notifyForSubscription(any(HIUSubscriptionNotificationRequest.class), anyString());
+    }
+
+    @Test
+    void shouldSkipSubscriptionsWithoutHIUId() {
+        NewCCLinkEvent linkEvent = newCCLinkEvent().build();
+        HipDetail hipDetail = HipDetail.builder().id(linkEvent.getHipId()).build();
+        Subscription withoutHIU = subscription().hiu(HiuDetail.builder().build()).hip(hipDetail).excluded(false).build();
+        Subscription withHIU = subscription().hiu(HiuDetail.builder().id("second").build()).hip(hipDetail).excluded(false).build();
+        when(userServiceClient.userOf(anyString())).thenReturn(Mono.just(user().build()));
+        when(subscriptionRequestRepository.findLinkSubscriptionsFor(anyString(), anyString()))
+                .thenReturn(Mono.just(asList(withoutHIU, withHIU)));
+        when(gatewayServiceClient.notifyForSubscription(any(HIUSubscriptionNotificationRequest.class), anyString())).thenReturn(Mono.empty());
+
+        StepVerifier.create(hiuSubscriptionManager.notifySubscribers(linkEvent))
+                .verifyComplete();
+
+        verify(gatewayServiceClient, times(1)).notifyForSubscription(any(HIUSubscriptionNotificationRequest.class), eq("second"));
+        verify(gatewayServiceClient, times(1)).notifyForSubscription(any(HIUSubscriptionNotificationRequest.class), anyString());
+    }
+
+    @Test
+    void shouldIdentifyPatientOnceForAllLinkEventsOfABatch() {
+        NewCCLinkEvent firstEvent = newCCLinkEvent().healthNumber("patient@ncg").hipId("first-hip").build();
+        NewCCLinkEvent secondEvent = newCCLinkEvent().healthNumber("patient@ncg").hipId("second-hip").build();
+        Subscription forAllHIPs = subscription()
+                .patient(PatientDetail.builder().id("patient@ncg").build())
+                .hiu(HiuDetail.builder().id("hiu").build())
+                .hip(null)
+                .excluded(false)
+                .build();
+        when(subscriptionRequestRepository.findLinkSubscriptionsFor(anyCollection(), anyCollection()))
+                .thenReturn(Mono.just(List.of(forAllHIPs)));
+        when(userServiceClient.userOf("patient@ncg")).thenReturn(Mono.just(user().build()));
+        when(gatewayServiceClient.notifyForSubscription(any(HIUSubscriptionNotificationRequest.class), anyString())).thenReturn(Mono.empty());
+
+        Flux<Void> notifications = hiuSubscriptionManager.findLinkSubscriptionsFor(List.of(firstEvent, secondEvent))
+                .flatMapMany(linkSubscriptions -> Flux.concat(
+                        hiuSubscriptionManager.notifySubscribers(firstEvent, LinkEventKey.of(firstEvent), linkSubscriptions),
+                        hiuSubscriptionManager.notifySubscribers(secondEvent, LinkEventKey.of(secondEvent), linkSubscriptions)));
+        StepVerifier.create(notifications)
+                .verifyComplete();
+
+        verify(userServiceClient, times(1)).userOf("patient@ncg");
+        verify(gatewayServiceClient, times(2)).notifyForSubscription(any(HIUSubscriptionNotificationRequest.class), anyString());
+    }
+}
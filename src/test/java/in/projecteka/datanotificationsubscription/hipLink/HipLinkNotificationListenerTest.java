@@ -0,0 +1,444 @@
+package in.projecteka.datanotificationsubscription.hipLink;
+
+import com.rabbitmq.client.AMQP;
+import in.projecteka.consentmanager.common.TraceableMessage;
+import in.projecteka.datanotificationsubscription.HIUSubscriptionManager;
+import in.projecteka.datanotificationsubscription.LinkSubscriptions;
+import in.projecteka.datanotificationsubscription.ListenerProperties;
+import in.projecteka.datanotificationsubscription.PatientIdentities;
+import in.projecteka.datanotificationsubscription.clients.UserServiceClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.rabbitmq.AcknowledgableDelivery;
+import reactor.rabbitmq.BindingSpecification;
+import reactor.rabbitmq.ConsumeOptions;
+import reactor.rabbitmq.OutboundMessage;
+import reactor.rabbitmq.OutboundMessageResult;
+import reactor.rabbitmq.QueueSpecification;
+import reactor.rabbitmq.Receiver;
+import reactor.rabbitmq.Sender;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static in.projecteka.datanotificationsubscription.common.Constants.DEAD_LETTER_EXCHANGE;
+import static in.projecteka.datanotificationsubscription.common.Constants.HDR_RETRY_COUNT;
+import static in.projecteka.datanotificationsubscription.common.Constants.HIP_LINK_QUEUE;
+import static in.projecteka.datanotificationsubscription.common.Constants.PARKING_EXCHANGE;
+import static in.projecteka.datanotificationsubscription.common.Serializer.from;
+import static in.projecteka.datanotificationsubscription.subscription.model.TestBuilder.newCCLinkEvent;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+class HipLinkNotificationListenerTest {
+    @Mock
+    private Receiver receiver;
+    @Mock
+    private Sender sender;
+    @Mock
+    private HIUSubscriptionManager subscriptionManager;
+    @Mock
+    private UserServiceClient userServiceClient;
+
+    private LinkEventDeduplicator linkEventDeduplicator;
+    private HipLinkNotificationListener listener;
+
+    @BeforeEach
+    void setUp() {
+        initMocks(this);
+        linkEventDeduplicator = new LinkEventDeduplicator(true, 100, 10, null);
+        listener = listenerWith(new ListenerProperties(2, 1000, 0, 10, 4, 8, false, 0, 0, 0));
+        when(sender.declareQueue(any(QueueSpecification.class))).thenReturn(Mono.empty());
+        when(sender.bind(any(BindingSpecification.class))).thenReturn(Mono.empty());
+    }
+
+    @AfterEach
+    void tearDown() {
+        listener.closeConnection();
+    }
+
+    @Test
+    void shouldConsumeTheLinkQueueWithThePrefetchCountAsQos() {
+        ArgumentCaptor<ConsumeOptions> consumeOptions = ArgumentCaptor.forClass(ConsumeOptions.class);
+        when(receiver.consumeManualAck(anyString(), any(ConsumeOptions.class))).thenReturn(Flux.empty());
+
+        listener.subscribe();
+
+        verify(receiver, timeout(2000)).consumeManualAck(eq(HIP_LINK_QUEUE), consumeOptions.capture());
+        assertThat(consumeOptions.getValue().getQos()).isEqualTo(10);
+    }
+
+    @Test
+    void shouldPrefetchTheDefaultCountWhenNoneIsConfigured() {
+        listener = listenerWith(new ListenerProperties(2, 1000, 0, 0, 4, 8, false, 0, 0, 0));
+        ArgumentCaptor<ConsumeOptions> consumeOptions = ArgumentCaptor.forClass(ConsumeOptions.class);
+        when(receiver.consumeManualAck(anyString(), any(ConsumeOptions.class))).thenReturn(Flux.empty());
+
+        listener.subscribe();
+
+        verify(receiver, timeout(2000)).consumeManualAck(eq(HIP_LINK_QUEUE), consumeOptions.capture());
+        assertThat(consumeOptions.getValue().getQos()).isEqualTo(20);
+    }
+
+    @Test
+    void shouldNotProcessMoreLinkEventsAtOnceThanThereAreLanes() {
+        listener = listenerWith(new ListenerProperties(2, 1000, 0, 10, 2, 8, false, 0, 0, 0));
+        List<AcknowledgableDelivery> deliveries = IntStream.range(0, 8)
+                .mapToObj(patient -> deliveryOf(newCCLinkEvent().healthNumber("patient-" + patient + "@ncg").build()))
+                .collect(Collectors.toList());
+        AtomicInteger processing = new AtomicInteger();
+        AtomicInteger mostProcessedAtOnce = new AtomicInteger();
+        when(receiver.consumeManualAck(anyString(), any(ConsumeOptions.class))).thenReturn(Flux.fromIterable(deliveries));
+        when(subscriptionManager.notifySubscribers(any(NewCCLinkEvent.class), any(UUID.class)))
+                .thenAnswer(invocation -> Mono.delay(Duration.ofMillis(50))
+                        .doOnSubscribe(subscription ->
+                                mostProcessedAtOnce.accumulateAndGet(processing.incrementAndGet(), Math::max))
+                        .doFinally(signalType -> processing.decrementAndGet())
+                        .then()
+                        .flux());
+
+        listener.subscribe();
+
+        deliveries.forEach(delivery -> verify(delivery, timeout(3000)).ack());
+        assertThat(mostProcessedAtOnce.get()).isBetween(1, 2);
+    }
+
+    @Test
+    void shouldProcessLinkEventsOfSamePatientInTheOrderTheyArrived() {
+        NewCCLinkEvent firstEvent = newCCLinkEvent().healthNumber("patient@ncg").build();
+        NewCCLinkEvent secondEvent = newCCLinkEvent().healthNumber("patient@ncg").build();
+        AcknowledgableDelivery firstDelivery = deliveryOf(firstEvent);
+        AcknowledgableDelivery secondDelivery = deliveryOf(secondEvent);
+        List<String> processedHips = new CopyOnWriteArrayList<>();
+
+        when(receiver.consumeManualAck(anyString(), any(ConsumeOptions.class)))
+                .thenReturn(Flux.just(firstDelivery, secondDelivery));
+        when(subscriptionManager.notifySubscribers(any(NewCCLinkEvent.class), any(UUID.class))).thenAnswer(invocation -> {
+            NewCCLinkEvent linkEvent = invocation.getArgument(0);
+            Duration delay = linkEvent.getHipId().equals(firstEvent.getHipId()) ? Duration.ofMillis(200) : Duration.ZERO;
+            return Mono.delay(delay)
+                    .doOnNext(tick -> processedHips.add(linkEvent.getHipId()))
+                    .then()
+                    .flux();
+        });
+
+        listener.subscribe();
+
+        verify(firstDelivery, timeout(2000)).ack();
+        verify(secondDelivery, timeout(2000)).ack();
+        assertThat(processedHips).containsExactly(firstEvent.getHipId(), secondEvent.getHipId());
+    }
+
+    @Test
+    void shouldLookUpSubscriptionsOfABatchOfLinkEventsTogether() {
+        listener = listenerWith(new ListenerProperties(2, 1000, 0, 10, 4, 8, true, 2, 1000, 0));
+        NewCCLinkEvent firstEvent = newCCLinkEvent().build();
+        NewCCLinkEvent secondEvent = newCCLinkEvent().build();
+        AcknowledgableDelivery firstDelivery = deliveryOf(firstEvent);
+        AcknowledgableDelivery secondDelivery = deliveryOf(secondEvent);
+        var linkSubscriptions = new LinkSubscriptions(Map.of(), new PatientIdentities(userServiceClient));
+
+        when(receiver.consumeManualAck(anyString(), any(ConsumeOptions.class)))
+                .thenReturn(Flux.just(firstDelivery, secondDelivery));
+        when(subscriptionManager.findLinkSubscriptionsFor(anyList())).thenReturn(Mono.just(linkSubscriptions));
+        when(subscriptionManager.notifySubscribers(any(NewCCLinkEvent.class), any(UUID.class), any(LinkSubscriptions.class)))
+                .thenReturn(Flux.empty());
+
+        listener.subscribe();
+
+        verify(firstDelivery, timeout(2000)).ack();
+        verify(secondDelivery, timeout(2000)).ack();
+        verify(subscriptionManager, times(1)).findLinkSubscriptionsFor(List.of(firstEvent, secondEvent));
+        verify(subscriptionManager).notifySubscribers(eq(firstEvent), any(UUID.class), eq(linkSubscriptions));
+        verify(subscriptionManager).notifySubscribers(eq(secondEvent), any(UUID.class), eq(linkSubscriptions));
+        verify(subscriptionManager, never()).notifySubscribers(any(NewCCLinkEvent.class), any(UUID.class));
+    }
+
+    @Test
+    void shouldHoldBatchesWhichPileUpBehindASlowLookUp() {
+        listener = listenerWith(new ListenerProperties(2, 1000, 0, 1, 4, 8, true, 10, 10, 0));
+        AcknowledgableDelivery firstDelivery = deliveryOf(newCCLinkEvent().build());
+        AcknowledgableDelivery secondDelivery = deliveryOf(newCCLinkEvent().build());
+        AcknowledgableDelivery thirdDelivery = deliveryOf(newCCLinkEvent().build());
+        var linkSubscriptions = new LinkSubscriptions(Map.of(), new PatientIdentities(userServiceClient));
+
+        when(receiver.consumeManualAck(anyString(), any(ConsumeOptions.class)))
+                .thenReturn(Flux.just(firstDelivery, secondDelivery, thirdDelivery).delayElements(Duration.ofMillis(50)));
+        when(subscriptionManager.findLinkSubscriptionsFor(anyList()))
+                .thenReturn(Mono.just(linkSubscriptions).delayElement(Duration.ofMillis(300)));
+        when(subscriptionManager.notifySubscribers(any(NewCCLinkEvent.class), any(UUID.class), any(LinkSubscriptions.class)))
+                .thenReturn(Flux.empty());
+
+        listener.subscribe();
+
+        verify(firstDelivery, timeout(3000)).ack();
+        verify(secondDelivery, timeout(3000)).ack();
+        verify(thirdDelivery, timeout(3000)).ack();
+        verify(subscriptionManager, times(3)).findLinkSubscriptionsFor(anyList());
+    }
+
+    @Test
+    void shouldConsumeAgainWhenTheConsumerFailed() {
+        NewCCLinkEvent linkEvent = newCCLinkEvent().build();
+        AcknowledgableDelivery delivery = deliveryOf(linkEvent);
+        when(receiver.consumeManualAck(anyString(), any(ConsumeOptions.class)))
+                .thenReturn(Flux.error(new IllegalStateException("channel closed")), Flux.just(delivery));
+        when(subscriptionManager.notifySubscribers(any(NewCCLinkEvent.class), any(UUID.class))).thenReturn(Flux.empty());
+
+        listener.subscribe();
+
+        verify(delivery, timeout(5000)).ack();
+        verify(receiver, times(2)).consumeManualAck(anyString(), any(ConsumeOptions.class));
+    }
+
+    @Test
+    void shouldNotifyOnceForLinkEventsOfTheSamePatientAndHipWithinTheCoalescingWindow() {
+        listener = listenerWith(new ListenerProperties(2, 1000, 0, 10, 4, 8, false, 0, 0, 200));
+        NewCCLinkEvent firstEvent = newCCLinkEvent().build();
+        NewCCLinkEvent secondEvent = newCCLinkEvent()
+                .healthNumber(firstEvent.getHealthNumber())
+                .hipId(firstEvent.getHipId())
+                .timestamp(firstEvent.getTimestamp().plusSeconds(1))
+                .build();
+        AcknowledgableDelivery firstDelivery = deliveryOf(firstEvent);
+        AcknowledgableDelivery secondDelivery = deliveryOf(secondEvent);
+        List<NewCCLinkEvent> notifiedEvents = new CopyOnWriteArrayList<>();
+        List<UUID> notifiedKeys = new CopyOnWriteArrayList<>();
+        when(receiver.consumeManualAck(anyString(), any(ConsumeOptions.class)))
+                .thenReturn(Flux.just(firstDelivery, secondDelivery));
+        whenNotified(notifiedEvents, notifiedKeys);
+
+        listener.subscribe();
+
+        verify(firstDelivery, timeout(2000)).ack();
+        verify(secondDelivery, timeout(2000)).ack();
+        assertThat(notifiedEvents).hasSize(1);
+        NewCCLinkEvent coalescedEvent = notifiedEvents.get(0);
+        assertThat(coalescedEvent.getTimestamp()).isEqualTo(secondEvent.getTimestamp());
+        assertThat(coalescedEvent.getCareContexts())
+                .containsAll(firstEvent.getCareContexts())
+                .containsAll(secondEvent.getCareContexts());
+        assertThat(notifiedKeys).containsExactly(
+                LinkEventKey.of(List.of(LinkEventKey.of(secondEvent), LinkEventKey.of(firstEvent))));
+    }
+
+    @Test
+    void shouldNotCoalesceLinkEventsWhichWereAttemptedBefore() {
+        listener = listenerWith(new ListenerProperties(2, 1000, 0, 10, 4, 8, false, 0, 0, 200));
+        NewCCLinkEvent retriedEvent = newCCLinkEvent().build();
+        NewCCLinkEvent newEvent = newCCLinkEvent()
+                .healthNumber(retriedEvent.getHealthNumber())
+                .hipId(retriedEvent.getHipId())
+                .build();
+        AcknowledgableDelivery retriedDelivery = deliveryOf(retriedEvent, 1);
+        AcknowledgableDelivery newDelivery = deliveryOf(newEvent);
+        List<NewCCLinkEvent> notifiedEvents = new CopyOnWriteArrayList<>();
+        List<UUID> notifiedKeys = new CopyOnWriteArrayList<>();
+        when(receiver.consumeManualAck(anyString(), any(ConsumeOptions.class)))
+                .thenReturn(Flux.just(retriedDelivery, newDelivery));
+        whenNotified(notifiedEvents, notifiedKeys);
+
+        listener.subscribe();
+
+        verify(retriedDelivery, timeout(2000)).ack();
+        verify(newDelivery, timeout(2000)).ack();
+        assertThat(notifiedEvents).containsExactly(retriedEvent, newEvent);
+        assertThat(notifiedKeys).containsExactly(LinkEventKey.of(retriedEvent), LinkEventKey.of(newEvent));
+    }
+
+    @Test
+    void shouldDiscardDeliveriesWithoutALinkEvent() {
+        AcknowledgableDelivery delivery = mock(AcknowledgableDelivery.class);
+        when(delivery.getBody()).thenReturn("{\"correlationId\":\"correlation-id\"}".getBytes());
+        when(receiver.consumeManualAck(anyString(), any(ConsumeOptions.class))).thenReturn(Flux.just(delivery));
+
+        listener.subscribe();
+
+        verify(delivery, timeout(2000)).nack(false);
+        verify(subscriptionManager, never()).notifySubscribers(any(NewCCLinkEvent.class), any(UUID.class));
+    }
+
+    @Test
+    void shouldAckRedeliveredLinkEventsWithoutNotifyingAgain() {
+        NewCCLinkEvent linkEvent = newCCLinkEvent().build();
+        NewCCLinkEvent redeliveredEvent = new NewCCLinkEvent(linkEvent.getHipId(),
+                linkEvent.getHealthNumber(),
+                linkEvent.getTimestamp(),
+                reversed(linkEvent.getCareContexts()));
+        AcknowledgableDelivery delivery = deliveryOf(linkEvent);
+        AcknowledgableDelivery redelivery = deliveryOf(redeliveredEvent);
+        when(subscriptionManager.notifySubscribers(any(NewCCLinkEvent.class), any(UUID.class))).thenReturn(Flux.empty());
+        when(receiver.consumeManualAck(anyString(), any(ConsumeOptions.class)))
+                .thenReturn(Flux.just(delivery).concatWith(Flux.just(redelivery).delaySubscription(Duration.ofMillis(200))));
+
+        listener.subscribe();
+
+        verify(delivery, timeout(2000)).ack();
+        verify(redelivery, timeout(2000)).ack();
+        verify(subscriptionManager, times(1)).notifySubscribers(any(NewCCLinkEvent.class), any(UUID.class));
+    }
+
+    @Test
+    void shouldAckAndRepublishFailedLinkEventsToTheDelayQueueOfTheNextAttempt() {
+        NewCCLinkEvent linkEvent = newCCLinkEvent().build();
+        AcknowledgableDelivery delivery = deliveryOf(linkEvent, 1);
+        List<OutboundMessage> republished = new CopyOnWriteArrayList<>();
+        when(receiver.consumeManualAck(anyString(), any(ConsumeOptions.class))).thenReturn(Flux.just(delivery));
+        when(subscriptionManager.notifySubscribers(any(NewCCLinkEvent.class), any(UUID.class)))
+                .thenReturn(Flux.error(new RuntimeException("gateway is down")));
+        whenRepublished(republished);
+
+        listener.subscribe();
+
+        verify(delivery, timeout(2000)).ack();
+        verify(delivery, never()).nack(anyBoolean());
+        assertThat(republished).hasSize(1);
+        OutboundMessage message = republished.get(0);
+        assertThat(message.getExchange()).isEqualTo(DEAD_LETTER_EXCHANGE);
+        assertThat(message.getRoutingKey()).isEqualTo("cm-hip-link-queue.retry.2");
+        assertThat(message.getProperties().getHeaders()).containsEntry(HDR_RETRY_COUNT, 2);
+        assertThat(Long.parseLong(message.getProperties().getExpiration())).isBetween(1000L, 2000L);
+        assertThat(message.getBody()).isEqualTo(delivery.getBody());
+    }
+
+    @Test
+    void shouldGoOnWithLaterLinkEventsOfThePatientWhileAFailedOneWaitsForItsRetry() {
+        NewCCLinkEvent failingEvent = newCCLinkEvent().healthNumber("patient@ncg").build();
+        NewCCLinkEvent laterEvent = newCCLinkEvent().healthNumber("patient@ncg").build();
+        AcknowledgableDelivery failingDelivery = deliveryOf(failingEvent);
+        AcknowledgableDelivery laterDelivery = deliveryOf(laterEvent);
+        List<OutboundMessage> republished = new CopyOnWriteArrayList<>();
+        when(receiver.consumeManualAck(anyString(), any(ConsumeOptions.class)))
+                .thenReturn(Flux.just(failingDelivery, laterDelivery));
+        when(subscriptionManager.notifySubscribers(eq(failingEvent), any(UUID.class)))
+                .thenReturn(Flux.error(new RuntimeException("gateway is down")));
+        when(subscriptionManager.notifySubscribers(eq(laterEvent), any(UUID.class))).thenReturn(Flux.empty());
+        whenRepublished(republished);
+
+        listener.subscribe();
+
+        verify(failingDelivery, timeout(2000)).ack();
+        verify(laterDelivery, timeout(2000)).ack();
+        verify(subscriptionManager).notifySubscribers(eq(laterEvent), any(UUID.class));
+        assertThat(republished).hasSize(1);
+        assertThat(republished.get(0).getRoutingKey()).isEqualTo("cm-hip-link-queue.retry.1");
+    }
+
+    @Test
+    void shouldOnlyBindTheDelayQueuesItDeclares() {
+        when(receiver.consumeManualAck(anyString(), any(ConsumeOptions.class))).thenReturn(Flux.empty());
+
+        listener.subscribe();
+
+        verify(sender, timeout(2000).times(2)).bind(argThat(binding -> DEAD_LETTER_EXCHANGE.equals(binding.getExchange())
+                && binding.getQueue().startsWith("cm-hip-link-queue.retry.")));
+        verify(sender, never()).unbind(any(BindingSpecification.class));
+    }
+
+    @Test
+    void shouldParkLinkEventsWhichExhaustedTheirRetries() {
+        NewCCLinkEvent linkEvent = newCCLinkEvent().build();
+        AcknowledgableDelivery delivery = deliveryOf(linkEvent, 2);
+        List<OutboundMessage> republished = new CopyOnWriteArrayList<>();
+        when(receiver.consumeManualAck(anyString(), any(ConsumeOptions.class))).thenReturn(Flux.just(delivery));
+        when(subscriptionManager.notifySubscribers(any(NewCCLinkEvent.class), any(UUID.class)))
+                .thenReturn(Flux.error(new RuntimeException("gateway is down")));
+        whenRepublished(republished);
+
+        listener.subscribe();
+
+        verify(delivery, timeout(2000)).ack();
+        assertThat(republished).hasSize(1);
+        assertThat(republished.get(0).getExchange()).isEqualTo(PARKING_EXCHANGE);
+        assertThat(republished.get(0).getProperties().getExpiration()).isNull();
+    }
+
+    @Test
+    void shouldBackOffExponentiallyUpToTheMaximumRetryInterval() {
+        listener = listenerWith(new ListenerProperties(10, 1000, 5000, 10, 4, 8, false, 0, 0, 0));
+
+        assertThat(listener.retryIntervalOf(1)).isEqualTo(1000);
+        assertThat(listener.retryIntervalOf(2)).isEqualTo(2000);
+        assertThat(listener.retryIntervalOf(3)).isEqualTo(4000);
+        assertThat(listener.retryIntervalOf(4)).isEqualTo(5000);
+        assertThat(listener.retryIntervalOf(100)).isEqualTo(5000);
+        assertThat(listener.retryDelayOf(3)).isBetween(2000L, 4000L);
+    }
+
+    private void whenNotified(List<NewCCLinkEvent> notifiedEvents, List<UUID> notifiedKeys) {
+        when(subscriptionManager.notifySubscribers(any(NewCCLinkEvent.class), any(UUID.class))).thenAnswer(invocation -> {
+            notifiedEvents.add(invocation.getArgument(0));
+            notifiedKeys.add(invocation.getArgument(1));
+            return Flux.empty();
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private void whenRepublished(List<OutboundMessage> republished) {
+        when(sender.sendWithPublishConfirms(any())).thenAnswer(invocation -> {
+            Mono<OutboundMessage> messages = invocation.getArgument(0);
+            return messages.doOnNext(republished::add)
+                    .map(message -> new OutboundMessageResult<>(message, true))
+                    .flux();
+        });
+    }
+
+    private HipLinkNotificationListener listenerWith(ListenerProperties listenerProperties) {
+        return new HipLinkNotificationListener(receiver,
+                sender,
+                subscriptionManager,
+                linkEventDeduplicator,
+                listenerProperties,
+                new SimpleMeterRegistry());
+    }
+
+    private static <T> List<T> reversed(List<T> items) {
+        List<T> reversed = new ArrayList<>(items);
+        Collections.reverse(reversed);
+        return reversed;
+    }
+
+    private AcknowledgableDelivery deliveryOf(NewCCLinkEvent linkEvent, int retryCount) {
+        AcknowledgableDelivery delivery = deliveryOf(linkEvent);
+        when(delivery.getProperties()).thenReturn(new AMQP.BasicProperties.Builder()
+                .headers(Map.of(HDR_RETRY_COUNT, retryCount))
+                .build());
+        return delivery;
+    }
+
+    private AcknowledgableDelivery deliveryOf(NewCCLinkEvent linkEvent) {
+        AcknowledgableDelivery delivery = mock(AcknowledgableDelivery.class);
+        TraceableMessage<NewCCLinkEvent> traceableMessage = TraceableMessage.<NewCCLinkEvent>builder()
+                .correlationId("correlation-id")
+                .message(linkEvent)
+                .build();
+        when(delivery.getBody()).thenReturn(from(traceableMessage).getBytes());
+        return delivery;
+    }
+}
@@ -0,0 +1,92 @@
+package in.projecteka.datanotificationsubscription.hipLink;
+
+import in.projecteka.datanotificationsubscription.common.cache.CacheAdapter;
+import in.projecteka.datanotificationsubscription.common.model.PatientCareContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static in.projecteka.datanotificationsubscription.subscription.model.TestBuilder.newCCLinkEvent;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+class LinkEventDeduplicatorTest {
+    @Mock
+    private CacheAdapter<String, String> sharedCache;
+
+    @BeforeEach
+    void setUp() {
+        initMocks(this);
+    }
+
+    @Test
+    void shouldRecogniseProcessedLinkEventsWhateverTheOrderOfTheirCareContexts() {
+        var deduplicator = new LinkEventDeduplicator(true, 10, 10, null);
+        NewCCLinkEvent linkEvent = newCCLinkEvent().build();
+        List<PatientCareContext> careContexts = new ArrayList<>(linkEvent.getCareContexts());
+        Collections.reverse(careContexts);
+        NewCCLinkEvent redeliveredEvent = new NewCCLinkEvent(linkEvent.getHipId(),
+                linkEvent.getHealthNumber(),
+                linkEvent.getTimestamp(),
+                careContexts);
+
+        StepVerifier.create(deduplicator.isDuplicate(linkEvent))
+                .expectNext(false)
+                .verifyComplete();
+        StepVerifier.create(deduplicator.markProcessed(linkEvent))
+                .verifyComplete();
+        StepVerifier.create(deduplicator.isDuplicate(redeliveredEvent))
+                .expectNext(true)
+                .verifyComplete();
+        StepVerifier.create(deduplicator.isDuplicate(newCCLinkEvent().build()))
+                .expectNext(false)
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldLookUpLinkEventsProcessedOnOtherNodesInTheSharedCache() {
+        var deduplicator = new LinkEventDeduplicator(true, 10, 10, sharedCache);
+        NewCCLinkEvent linkEvent = newCCLinkEvent().build();
+        String key = "link-event:" + LinkEventKey.of(linkEvent);
+        when(sharedCache.exists(key)).thenReturn(Mono.just(true));
+
+        StepVerifier.create(deduplicator.isDuplicate(linkEvent).then(deduplicator.isDuplicate(linkEvent)))
+                .expectNext(true)
+                .verifyComplete();
+
+        verify(sharedCache, times(1)).exists(key);
+    }
+
+    @Test
+    void shouldNotDropLinkEventsWhenTheSharedCacheFails() {
+        var deduplicator = new LinkEventDeduplicator(true, 10, 10, sharedCache);
+        NewCCLinkEvent linkEvent = newCCLinkEvent().build();
+        when(sharedCache.exists(anyString())).thenReturn(Mono.error(new RuntimeException("redis is down")));
+        when(sharedCache.put(anyString(), eq("1"))).thenReturn(Mono.error(new RuntimeException("redis is down")));
+
+        StepVerifier.create(deduplicator.isDuplicate(linkEvent))
+                .expectNext(false)
+                .verifyComplete();
+        StepVerifier.create(deduplicator.markProcessed(linkEvent))
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldGiveTheSameNotificationIdEveryTimeAnEventIsProcessed() {
+        NewCCLinkEvent linkEvent = newCCLinkEvent().build();
+
+        assertThat(LinkEventKey.of(linkEvent, "subscription-id")).isEqualTo(LinkEventKey.of(linkEvent, "subscription-id"));
+        assertThat(LinkEventKey.of(linkEvent, "subscription-id")).isNotEqualTo(LinkEventKey.of(linkEvent, "other-subscription-id"));
+    }
+}
@@ -0,0 +1,164 @@
+package in.projecteka.datanotificationsubscription.outbox;
+
+import in.projecteka.datanotificationsubscription.OutboxProperties;
+import in.projecteka.datanotificationsubscription.common.ClientError;
+import in.projecteka.datanotificationsubscription.common.GatewayServiceClient;
+import in.projecteka.datanotificationsubscription.subscription.model.HIUSubscriptionNotificationRequest;
+import in.projecteka.datanotificationsubscription.subscription.model.NotificationEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+class NotificationOutboxDispatcherTest {
+    @Mock
+    private NotificationOutboxRepository notificationOutboxRepository;
+    @Mock
+    private GatewayServiceClient gatewayServiceClient;
+
+    private NotificationOutboxDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        initMocks(this);
+        var outboxProperties = new OutboxProperties(true, 10, 1000, 60000, 4, 1, 3, 1000, 60000);
+        dispatcher = new NotificationOutboxDispatcher(notificationOutboxRepository, gatewayServiceClient, outboxProperties);
+        when(notificationOutboxRepository.delete(anyLong())).thenReturn(Mono.empty());
+        when(notificationOutboxRepository.reschedule(anyLong(), any(LocalDateTime.class))).thenReturn(Mono.empty());
+        when(notificationOutboxRepository.markFailed(anyLong())).thenReturn(Mono.empty());
+    }
+
+    @Test
+    void shouldDeleteNotificationsTheGatewayTook() {
+        OutboxNotification first = notification(1L, "hiu", 1);
+        OutboxNotification second = notification(2L, "other-hiu", 1);
+        when(notificationOutboxRepository.claim(eq(10), any(Duration.class))).thenReturn(Mono.just(List.of(first, second)));
+        when(gatewayServiceClient.notifyForSubscription(any(HIUSubscriptionNotificationRequest.class), any()))
+                .thenReturn(Mono.empty());
+
+        StepVerifier.create(dispatcher.drain())
+                .expectNext(2)
+                .verifyComplete();
+
+        verify(gatewayServiceClient).notifyForSubscription(argThat(request -> first.getEvent().equals(request.getEvent())), eq("hiu"));
+        verify(gatewayServiceClient).notifyForSubscription(argThat(request -> second.getEvent().equals(request.getEvent())), eq("other-hiu"));
+        verify(notificationOutboxRepository).delete(1L);
+        verify(notificationOutboxRepository).delete(2L);
+    }
+
+    @Test
+    void shouldDeleteASentNotificationWithoutWaitingForTheRestOfTheBatch() {
+        OutboxNotification sent = notification(1L, "hiu", 1);
+        OutboxNotification slow = notification(2L, "slow-hiu", 1);
+        MonoProcessor<Void> slowResponse = MonoProcessor.create();
+        when(notificationOutboxRepository.claim(anyInt(), any(Duration.class))).thenReturn(Mono.just(List.of(sent, slow)));
+        when(gatewayServiceClient.notifyForSubscription(any(HIUSubscriptionNotificationRequest.class), eq("hiu")))
+                .thenReturn(Mono.empty());
+        when(gatewayServiceClient.notifyForSubscription(any(HIUSubscriptionNotificationRequest.class), eq("slow-hiu")))
+                .thenReturn(slowResponse);
+
+        var draining = dispatcher.drain().subscribe();
+
+        verify(notificationOutboxRepository).delete(1L);
+        verify(notificationOutboxRepository, never()).delete(2L);
+        slowResponse.onComplete();
+        verify(notificationOutboxRepository).delete(2L);
+        draining.dispose();
+    }
+
+    @Test
+    void shouldSendEveryDispatchAsARequestOfItsOwn() {
+        OutboxNotification notification = notification(1L, "hiu", 1);
+        when(notificationOutboxRepository.claim(anyInt(), any(Duration.class))).thenReturn(Mono.just(List.of(notification)));
+        when(gatewayServiceClient.notifyForSubscription(any(HIUSubscriptionNotificationRequest.class), any()))
+                .thenReturn(Mono.error(ClientError.networkServiceCallFailed()), Mono.empty());
+        LocalDateTime before = LocalDateTime.now(ZoneOffset.UTC);
+
+        StepVerifier.create(dispatcher.drain().then(dispatcher.drain()))
+                .expectNext(1)
+                .verifyComplete();
+
+        ArgumentCaptor<HIUSubscriptionNotificationRequest> requestCaptor = ArgumentCaptor.forClass(HIUSubscriptionNotificationRequest.class);
+        verify(gatewayServiceClient, times(2)).notifyForSubscription(requestCaptor.capture(), eq("hiu"));
+        List<HIUSubscriptionNotificationRequest> requests = requestCaptor.getAllValues();
+        assertThat(requests).extracting(HIUSubscriptionNotificationRequest::getEvent)
+                .containsOnly(notification.getEvent());
+        assertThat(requests.get(0).getRequestId()).isNotEqualTo(requests.get(1).getRequestId());
+        assertThat(requests).allSatisfy(request -> assertThat(request.getTimestamp()).isAfterOrEqualTo(before));
+    }
+
+    @Test
+    void shouldRetryLaterWithBackoffWhenTheGatewayFails() {
+        OutboxNotification notification = notification(1L, "hiu", 2);
+        when(notificationOutboxRepository.claim(anyInt(), any(Duration.class))).thenReturn(Mono.just(List.of(notification)));
+        when(gatewayServiceClient.notifyForSubscription(any(HIUSubscriptionNotificationRequest.class), any()))
+                .thenReturn(Mono.error(ClientError.networkServiceCallFailed()));
+        LocalDateTime before = LocalDateTime.now(ZoneOffset.UTC);
+
+        StepVerifier.create(dispatcher.drain())
+                .expectNext(1)
+                .verifyComplete();
+
+        verify(notificationOutboxRepository).reschedule(eq(1L), argThat(nextAttemptAt ->
+                !nextAttemptAt.isBefore(before.plusSeconds(2)) && nextAttemptAt.isBefore(before.plusSeconds(3))));
+        verify(notificationOutboxRepository, never()).delete(anyLong());
+        verify(notificationOutboxRepository, never()).markFailed(anyLong());
+    }
+
+    @Test
+    void shouldGiveUpOnNotificationAfterMaximumAttempts() {
+        OutboxNotification notification = notification(1L, "hiu", 3);
+        when(notificationOutboxRepository.claim(anyInt(), any(Duration.class))).thenReturn(Mono.just(List.of(notification)));
+        when(gatewayServiceClient.notifyForSubscription(any(HIUSubscriptionNotificationRequest.class), any()))
+                .thenReturn(Mono.error(ClientError.networkServiceCallFailed()));
+
+        StepVerifier.create(dispatcher.drain())
+                .expectNext(1)
+                .verifyComplete();
+
+        verify(notificationOutboxRepository).markFailed(1L);
+        verify(notificationOutboxRepository, never()).reschedule(anyLong(), any(LocalDateTime.class));
+    }
+
+    @Test
+    void shouldNotFailWhenClaimingFails() {
+        when(notificationOutboxRepository.claim(anyInt(), any(Duration.class))).thenReturn(Mono.error(new RuntimeException()));
+
+        StepVerifier.create(dispatcher.drain())
+                .expectNext(0)
+                .verifyComplete();
+    }
+
+    private OutboxNotification notification(Long id, String hiuId, int attempts) {
+        return OutboxNotification.builder()
+                .id(id)
+                .hiuId(hiuId)
+                .event(NotificationEvent.builder()
+                        .id(UUID.randomUUID())
+                        .published(LocalDateTime.now(ZoneOffset.UTC).minusHours(1))
+                        .build())
+                .attempts(attempts)
+                .build();
+    }
+}
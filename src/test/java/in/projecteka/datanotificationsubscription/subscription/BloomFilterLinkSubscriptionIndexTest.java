@@ -0,0 +1,111 @@
+package in.projecteka.datanotificationsubscription.subscription;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Delivery;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.rabbitmq.BindingSpecification;
+import reactor.rabbitmq.ExchangeSpecification;
+import reactor.rabbitmq.QueueSpecification;
+import reactor.rabbitmq.Receiver;
+import reactor.rabbitmq.Sender;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+class BloomFilterLinkSubscriptionIndexTest {
+    @Mock
+    private SubscriptionRequestRepository subscriptionRequestRepository;
+    @Mock
+    private Sender sender;
+    @Mock
+    private Receiver receiver;
+
+    private MeterRegistry meterRegistry;
+    private BloomFilterLinkSubscriptionIndex linkSubscriptionIndex;
+
+    @BeforeEach
+    void setUp() {
+        initMocks(this);
+        AMQP.Queue.DeclareOk queue = mock(AMQP.Queue.DeclareOk.class);
+        when(queue.getQueue()).thenReturn("changes-of-this-node");
+        when(sender.declareExchange(any(ExchangeSpecification.class))).thenReturn(Mono.just(mock(AMQP.Exchange.DeclareOk.class)));
+        when(sender.declareQueue(any(QueueSpecification.class))).thenReturn(Mono.just(queue));
+        when(sender.bind(any(BindingSpecification.class))).thenReturn(Mono.just(mock(AMQP.Queue.BindOk.class)));
+        meterRegistry = new SimpleMeterRegistry();
+        linkSubscriptionIndex = new BloomFilterLinkSubscriptionIndex(subscriptionRequestRepository,
+                new LinkSubscriptionChanges(sender, receiver),
+                Duration.ofMinutes(5),
+                meterRegistry,
+                1000,
+                0.01);
+    }
+
+    @AfterEach
+    void tearDown() {
+        linkSubscriptionIndex.stop();
+    }
+
+    @Test
+    void shouldRuleOutPatientsWithoutLinkSubscriptionsOnceLoaded() {
+        when(subscriptionRequestRepository.getPatientsWithLinkSubscriptions())
+                .thenReturn(Mono.just(List.of("subscribed@ncg")));
+        assertThat(linkSubscriptionIndex.mayHaveSubscribers("unsubscribed@ncg", "hip")).isTrue();
+
+        StepVerifier.create(linkSubscriptionIndex.reload())
+                .verifyComplete();
+
+        assertThat(linkSubscriptionIndex.mayHaveSubscribers("subscribed@ncg", "hip")).isTrue();
+        assertThat(linkSubscriptionIndex.mayHaveSubscribers("unsubscribed@ncg", "hip")).isFalse();
+        assertThat(meterRegistry.get("link.subscription.filter.false.positive.probability").gauge().value())
+                .isLessThan(0.01);
+    }
+
+    @Test
+    void shouldTellEveryNodeToAddThePatient() {
+        when(sender.send(any())).thenReturn(Mono.empty());
+
+        StepVerifier.create(linkSubscriptionIndex.refresh("patient@ncg"))
+                .verifyComplete();
+
+        verify(sender).send(any());
+    }
+
+    @Test
+    void shouldAddPatientWhoseSubscriptionWasGrantedThroughAnyNode() {
+        when(subscriptionRequestRepository.getPatientsWithLinkSubscriptions()).thenReturn(Mono.just(List.of()));
+        when(receiver.consumeAutoAck(anyString()))
+                .thenReturn(Flux.concat(Mono.just(new Delivery(null, null, "patient@ncg".getBytes(UTF_8))), Flux.never()));
+
+        linkSubscriptionIndex.start();
+
+        assertThat(linkSubscriptionIndex.mayHaveSubscribers("patient@ncg", "hip")).isTrue();
+        assertThat(linkSubscriptionIndex.mayHaveSubscribers("unsubscribed@ncg", "hip")).isFalse();
+    }
+
+    @Test
+    void shouldTreatEveryPatientAsSubscribedOnceTheChangesAreLost() {
+        when(subscriptionRequestRepository.getPatientsWithLinkSubscriptions()).thenReturn(Mono.just(List.of()));
+        when(receiver.consumeAutoAck(anyString())).thenReturn(Flux.error(new RuntimeException("connection lost")));
+
+        linkSubscriptionIndex.start();
+
+        assertThat(linkSubscriptionIndex.mayHaveSubscribers("patient@ncg", "hip")).isTrue();
+    }
+}
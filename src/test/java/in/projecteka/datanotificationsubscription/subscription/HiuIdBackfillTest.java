@@ -0,0 +1,50 @@
+package in.projecteka.datanotificationsubscription.subscription;
+
+import in.projecteka.datanotificationsubscription.common.DbOperationError;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+class HiuIdBackfillTest {
+    @Mock
+    SubscriptionRequestRepository subscriptionRequestRepository;
+
+    HiuIdBackfill hiuIdBackfill;
+
+    @BeforeEach
+    void setUp() {
+        initMocks(this);
+        hiuIdBackfill = new HiuIdBackfill(subscriptionRequestRepository, 100, Duration.ofMinutes(5));
+    }
+
+    @Test
+    void shouldKeepBackfillingWhileBatchesComeBackFull() {
+        when(subscriptionRequestRepository.backfillHiuIds(100))
+                .thenReturn(Mono.just(100), Mono.just(100), Mono.just(42));
+
+        StepVerifier.create(hiuIdBackfill.sweep())
+                .expectNext(242)
+                .verifyComplete();
+
+        verify(subscriptionRequestRepository, times(3)).backfillHiuIds(100);
+    }
+
+    @Test
+    void shouldStopTheSweepWhenABatchFails() {
+        when(subscriptionRequestRepository.backfillHiuIds(100))
+                .thenReturn(Mono.just(100), Mono.error(new DbOperationError()));
+
+        StepVerifier.create(hiuIdBackfill.sweep())
+                .expectNext(0)
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,160 @@
+package in.projecteka.datanotificationsubscription.subscription;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Delivery;
+import in.projecteka.datanotificationsubscription.common.DbOperationError;
+import in.projecteka.datanotificationsubscription.subscription.model.LinkSubscriptionEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.rabbitmq.BindingSpecification;
+import reactor.rabbitmq.ExchangeSpecification;
+import reactor.rabbitmq.QueueSpecification;
+import reactor.rabbitmq.Receiver;
+import reactor.rabbitmq.Sender;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+class InMemoryLinkSubscriptionIndexTest {
+    @Mock
+    private SubscriptionRequestRepository subscriptionRequestRepository;
+    @Mock
+    private Sender sender;
+    @Mock
+    private Receiver receiver;
+
+    private InMemoryLinkSubscriptionIndex linkSubscriptionIndex;
+
+    @BeforeEach
+    void setUp() {
+        initMocks(this);
+        AMQP.Queue.DeclareOk queue = mock(AMQP.Queue.DeclareOk.class);
+        when(queue.getQueue()).thenReturn("changes-of-this-node");
+        when(sender.declareExchange(any(ExchangeSpecification.class))).thenReturn(Mono.just(mock(AMQP.Exchange.DeclareOk.class)));
+        when(sender.declareQueue(any(QueueSpecification.class))).thenReturn(Mono.just(queue));
+        when(sender.bind(any(BindingSpecification.class))).thenReturn(Mono.just(mock(AMQP.Queue.BindOk.class)));
+        linkSubscriptionIndex = new InMemoryLinkSubscriptionIndex(subscriptionRequestRepository,
+                new LinkSubscriptionChanges(sender, receiver),
+                Duration.ofMinutes(5));
+    }
+
+    @AfterEach
+    void tearDown() {
+        linkSubscriptionIndex.stop();
+    }
+
+    @Test
+    void shouldTreatEveryPatientAsSubscribedUntilLoaded() {
+        assertThat(linkSubscriptionIndex.mayHaveSubscribers("patient@ncg", "hip")).isTrue();
+    }
+
+    @Test
+    void shouldMatchOnlyActiveEntriesOfTheLinkingHIP() {
+        when(subscriptionRequestRepository.getActiveLinkSubscriptionEntries()).thenReturn(Mono.just(List.of(
+                entry("all-hips@ncg", null, false),
+                entry("one-hip@ncg", "hip", false),
+                entry("excluded-hip@ncg", null, false),
+                entry("excluded-hip@ncg", "hip", true))));
+
+        StepVerifier.create(linkSubscriptionIndex.reload())
+                .verifyComplete();
+
+        assertThat(linkSubscriptionIndex.mayHaveSubscribers("all-hips@ncg", "hip")).isTrue();
+        assertThat(linkSubscriptionIndex.mayHaveSubscribers("one-hip@ncg", "hip")).isTrue();
+        assertThat(linkSubscriptionIndex.mayHaveSubscribers("one-hip@ncg", "other-hip")).isFalse();
+        assertThat(linkSubscriptionIndex.mayHaveSubscribers("excluded-hip@ncg", "hip")).isTrue();
+        assertThat(linkSubscriptionIndex.mayHaveSubscribers("unknown@ncg", "hip")).isFalse();
+    }
+
+    @Test
+    void shouldTellEveryNodeToRefreshThePatient() {
+        when(sender.send(any())).thenReturn(Mono.empty());
+
+        StepVerifier.create(linkSubscriptionIndex.refresh("patient@ncg"))
+                .verifyComplete();
+
+        verify(sender).send(any());
+    }
+
+    @Test
+    void shouldLoadOnceListeningAndRefreshPatientsChangedThroughAnyNode() {
+        when(subscriptionRequestRepository.getActiveLinkSubscriptionEntries()).thenReturn(Mono.just(List.of()));
+        when(subscriptionRequestRepository.getActiveLinkSubscriptionEntries("patient@ncg"))
+                .thenReturn(Mono.just(List.of(entry("patient@ncg", "hip", false))));
+        when(receiver.consumeAutoAck(anyString()))
+                .thenReturn(Flux.concat(Mono.just(changeOf("patient@ncg")), Flux.never()));
+
+        linkSubscriptionIndex.start();
+
+        assertThat(linkSubscriptionIndex.mayHaveSubscribers("patient@ncg", "hip")).isTrue();
+        assertThat(linkSubscriptionIndex.mayHaveSubscribers("other@ncg", "hip")).isFalse();
+    }
+
+    @Test
+    void shouldTreatEveryPatientAsSubscribedOnceTheChangesAreLost() {
+        when(subscriptionRequestRepository.getActiveLinkSubscriptionEntries()).thenReturn(Mono.just(List.of()));
+        when(receiver.consumeAutoAck(anyString())).thenReturn(Flux.error(new RuntimeException("connection lost")));
+
+        linkSubscriptionIndex.start();
+
+        assertThat(linkSubscriptionIndex.mayHaveSubscribers("patient@ncg", "hip")).isTrue();
+    }
+
+    @Test
+    void shouldPickUpSubscriptionsOfRefreshedPatient() {
+        when(subscriptionRequestRepository.getActiveLinkSubscriptionEntries()).thenReturn(Mono.just(List.of()));
+        when(subscriptionRequestRepository.getActiveLinkSubscriptionEntries("patient@ncg"))
+                .thenReturn(Mono.just(List.of(entry("patient@ncg", "hip", false))));
+        linkSubscriptionIndex.reload().block();
+
+        StepVerifier.create(linkSubscriptionIndex.refreshPatient("patient@ncg"))
+                .verifyComplete();
+
+        assertThat(linkSubscriptionIndex.mayHaveSubscribers("patient@ncg", "hip")).isTrue();
+    }
+
+    @Test
+    void shouldTreatPatientAsSubscribedWhenRefreshFails() {
+        when(subscriptionRequestRepository.getActiveLinkSubscriptionEntries()).thenReturn(Mono.just(List.of()));
+        when(subscriptionRequestRepository.getActiveLinkSubscriptionEntries("patient@ncg"))
+                .thenReturn(Mono.error(new DbOperationError()));
+        linkSubscriptionIndex.reload().block();
+
+        StepVerifier.create(linkSubscriptionIndex.refreshPatient("patient@ncg"))
+                .verifyComplete();
+
+        assertThat(linkSubscriptionIndex.mayHaveSubscribers("patient@ncg", "hip")).isTrue();
+    }
+
+    private Delivery changeOf(String patientId) {
+        return new Delivery(null, null, patientId.getBytes(UTF_8));
+    }
+
+    private LinkSubscriptionEntry entry(String patientId, String hipId, boolean excluded) {
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+        return LinkSubscriptionEntry.builder()
+                .patientId(patientId)
+                .hiuId("hiu")
+                .hipId(hipId)
+                .excluded(excluded)
+                .periodFrom(now.minusDays(1))
+                .periodTo(now.plusDays(1))
+                .build();
+    }
+}
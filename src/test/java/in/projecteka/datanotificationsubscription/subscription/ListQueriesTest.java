@@ -0,0 +1,70 @@
+package in.projecteka.datanotificationsubscription.subscription;
+
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowIterator;
+import io.vertx.sqlclient.RowSet;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static in.projecteka.datanotificationsubscription.subscription.ListQueries.TOTAL_COUNT;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ListQueriesTest {
+
+    @Test
+    void shouldTakeTheTotalFromTheRowsOfThePage() {
+        Row row = mock(Row.class);
+        when(row.getInteger(TOTAL_COUNT)).thenReturn(42);
+        AtomicInteger counts = new AtomicInteger();
+
+        StepVerifier.create(ListQueries.totalOf(page(row), 20, () -> count(counts)))
+                .expectNext(42)
+                .verifyComplete();
+
+        assertThat(counts.get()).isZero();
+    }
+
+    @Test
+    void shouldNotCountWhenTheFirstPageIsEmpty() {
+        AtomicInteger counts = new AtomicInteger();
+
+        StepVerifier.create(ListQueries.totalOf(page(), 0, () -> count(counts)))
+                .expectNext(0)
+                .verifyComplete();
+
+        assertThat(counts.get()).isZero();
+    }
+
+    @Test
+    void shouldCountWhenThePageIsPastTheEnd() {
+        AtomicInteger counts = new AtomicInteger();
+
+        StepVerifier.create(ListQueries.totalOf(page(), 40, () -> count(counts)))
+                .expectNext(7)
+                .verifyComplete();
+
+        assertThat(counts.get()).isEqualTo(1);
+    }
+
+    private static Mono<Integer> count(AtomicInteger counts) {
+        counts.incrementAndGet();
+        return Mono.just(7);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RowSet<Row> page(Row... rows) {
+        RowSet<Row> page = mock(RowSet.class);
+        RowIterator<Row> iterator = mock(RowIterator.class);
+        when(iterator.hasNext()).thenReturn(rows.length > 0);
+        if (rows.length > 0) {
+            when(iterator.next()).thenReturn(rows[0]);
+        }
+        when(page.iterator()).thenReturn(iterator);
+        return page;
+    }
+}
@@ -0,0 +1,158 @@
+package in.projecteka.datanotificationsubscription.subscription;
+
+import in.projecteka.datanotificationsubscription.DbOptions;
+import in.projecteka.datanotificationsubscription.common.DbMigration;
+import io.vertx.core.Future;
+import io.vertx.pgclient.PgConnectOptions;
+import io.vertx.pgclient.PgPool;
+import io.vertx.sqlclient.PoolOptions;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.SqlConnection;
+import io.vertx.sqlclient.Transaction;
+import io.vertx.sqlclient.Tuple;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the migrations against a real postgres, seeds enough rows for the planner to prefer indexes, and checks the
+ * plans of the hot queries. The rows are written in a transaction which is rolled back. Run with
+ * {@code ./gradlew integrationTest}.
+ */
+@Tag("integration")
+class SubscriptionQueryPlanTest {
+    private static final String SEED_SUBSCRIPTION_REQUESTS = "INSERT INTO hiu_subscription " +
+            "(request_id, patient_id, status, details, requester_type, subscription_id, hiu_id) " +
+            "SELECT 'plan-request-' || n, 'plan-patient-' || (n % 5000), " +
+            "CASE WHEN n % 3 = 0 THEN 'REQUESTED' ELSE 'GRANTED' END, " +
+            "jsonb_build_object('hiu', jsonb_build_object('id', 'plan-hiu-' || (n % 20))), 'HIU', " +
+            "'plan-subscription-' || n, 'plan-hiu-' || (n % 20) FROM generate_series(1, 20000) n";
+    private static final String SEED_SUBSCRIPTION_SOURCES = "INSERT INTO subscription_source " +
+            "(subscription_id, hip_id, category_link, category_data, hi_types, period_from, period_to, status, excluded, active) " +
+            "SELECT 'plan-subscription-' || n, 'plan-hip-' || (n % 50), true, true, '[]', " +
+            "now() - interval '1 year', now() + interval '1 year', 'GRANTED', false, n % 10 <> 0 " +
+            "FROM generate_series(1, 20000) n";
+
+    private static PgPool pgPool;
+    private SqlConnection connection;
+    private Transaction transaction;
+
+    @BeforeAll
+    static void migrate() {
+        DbOptions dbOptions = new DbOptions(System.getProperty("db.host", "localhost"),
+                Integer.getInteger("db.port", 5432),
+                System.getProperty("db.schema", "data_notification_subscription"),
+                System.getProperty("db.user", "postgres"),
+                System.getProperty("db.password", "password"),
+                2,
+                false,
+                null,
+                0,
+                0,
+                0,
+                0,
+                0);
+        new DbMigration(dbOptions, true).migrate();
+        pgPool = PgPool.pool(new PgConnectOptions()
+                        .setHost(dbOptions.getHost())
+                        .setPort(dbOptions.getPort())
+                        .setDatabase(dbOptions.getSchema())
+                        .setUser(dbOptions.getUser())
+                        .setPassword(dbOptions.getPassword()),
+                new PoolOptions().setMaxSize(1));
+    }
+
+    @AfterAll
+    static void close() {
+        pgPool.close();
+    }
+
+    @BeforeEach
+    void seed() throws Exception {
+        connection = await(pgPool.getConnection());
+        transaction = await(connection.begin());
+        await(connection.query(SEED_SUBSCRIPTION_REQUESTS).execute());
+        await(connection.query(SEED_SUBSCRIPTION_SOURCES).execute());
+        await(connection.query("ANALYZE hiu_subscription").execute());
+        await(connection.query("ANALYZE subscription_source").execute());
+    }
+
+    @AfterEach
+    void rollback() throws Exception {
+        await(transaction.rollback());
+        await(connection.close());
+    }
+
+    @Test
+    void shouldFindTheLinkSubscriptionsOfAPatientThroughIndexes() throws Exception {
+        LocalDateTime now = LocalDateTime.now();
+
+        List<String> plan = explain(SubscriptionRequestRepository.GET_ACTIVE_LINK_SUBSCRIPTION_QUERY,
+                Tuple.of("plan-patient-42", "GRANTED", "plan-hip-42", "GRANTED", true, now, now));
+
+        assertUsesIndexesOnly(plan);
+    }
+
+    @Test
+    void shouldFindTheLinkSubscriptionsOfABatchOfPatientsThroughIndexes() throws Exception {
+        LocalDateTime now = LocalDateTime.now();
+
+        List<String> plan = explain(SubscriptionRequestRepository.GET_ACTIVE_LINK_SUBSCRIPTIONS_FOR_PATIENTS_QUERY,
+                Tuple.of(new String[]{"plan-patient-42", "plan-patient-43"}, "GRANTED",
+                        new String[]{"plan-hip-42", "plan-hip-43"}, "GRANTED", true, now, now));
+
+        assertUsesIndexesOnly(plan);
+    }
+
+    @Test
+    void shouldListTheRequestsOfAPatientThroughAnIndex() throws Exception {
+        List<String> plan = explain(SubscriptionRequestRepository.GET_SUBSCRIPTION_REQUEST_QUERY,
+                Tuple.of("plan-patient-42", 10, 0, null));
+
+        assertUsesIndexesOnly(plan);
+    }
+
+    @Test
+    void shouldFindTheRequestsOfAPatientForAnHIUThroughAnIndex() throws Exception {
+        List<String> plan = explain(SubscriptionRequestRepository.SELECT_SUBSCRIPTION_REQUESTS_BY_PATIENT_ID_AND_HIU_ID,
+                Tuple.of("plan-patient-42", "plan-hiu-2"));
+
+        assertUsesIndexesOnly(plan);
+    }
+
+    @Test
+    void shouldPageTheSubscriptionsOfAPatientForAnHIUThroughIndexes() throws Exception {
+        List<String> plan = explain(SubscriptionRepository.PAGE_SUBSCRIPTIONS_FOR_PATIENT_BY_HIU_QUERY,
+                Tuple.of("plan-patient-42", "plan-hiu-2", 10, 0));
+
+        assertUsesIndexesOnly(plan);
+    }
+
+    private List<String> explain(String query, Tuple parameters) throws Exception {
+        List<String> plan = new ArrayList<>();
+        for (Row row : await(connection.preparedQuery("EXPLAIN " + query).execute(parameters))) {
+            plan.add(row.getString(0));
+        }
+        return plan;
+    }
+
+    private static void assertUsesIndexesOnly(List<String> plan) {
+        String description = String.join("\n", plan);
+        assertThat(plan).as(description).noneMatch(line -> line.contains("Seq Scan"));
+        assertThat(plan).as(description).anyMatch(line -> line.contains("Index"));
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        return future.toCompletionStage().toCompletableFuture().get(30, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,205 @@
+package in.projecteka.datanotificationsubscription.subscription;
+
+import in.projecteka.datanotificationsubscription.common.QueryExecutor;
+import in.projecteka.datanotificationsubscription.common.ReadRouter;
+import in.projecteka.datanotificationsubscription.common.model.HIType;
+import in.projecteka.datanotificationsubscription.common.model.RequesterType;
+import in.projecteka.datanotificationsubscription.subscription.model.RequestStatus;
+import in.projecteka.datanotificationsubscription.subscription.model.SubscriptionResponse;
+import in.projecteka.datanotificationsubscription.subscription.model.SubscriptionStatus;
+import in.projecteka.datanotificationsubscription.subscription.model.TestBuilder;
+import io.vertx.pgclient.PgPool;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowIterator;
+import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.Tuple;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static in.projecteka.datanotificationsubscription.common.Serializer.from;
+import static in.projecteka.datanotificationsubscription.subscription.ListQueries.TOTAL_COUNT;
+import static in.projecteka.datanotificationsubscription.subscription.SubscriptionRepository.CATEGORY_DATA;
+import static in.projecteka.datanotificationsubscription.subscription.SubscriptionRepository.CATEGORY_LINK;
+import static in.projecteka.datanotificationsubscription.subscription.SubscriptionRepository.DETAILS;
+import static in.projecteka.datanotificationsubscription.subscription.SubscriptionRepository.HIP_ID;
+import static in.projecteka.datanotificationsubscription.subscription.SubscriptionRepository.HI_TYPES;
+import static in.projecteka.datanotificationsubscription.subscription.SubscriptionRepository.PATIENT_ID;
+import static in.projecteka.datanotificationsubscription.subscription.SubscriptionRepository.REQUESTER_TYPE;
+import static in.projecteka.datanotificationsubscription.subscription.SubscriptionRepository.REQUEST_STATUS;
+import static in.projecteka.datanotificationsubscription.subscription.SubscriptionRepository.SUBSCRIPTION_ID;
+import static in.projecteka.datanotificationsubscription.subscription.SubscriptionRepository.SUBSCRIPTION_STATUS;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+class SubscriptionRepositoryTest {
+    private static final String PATIENT = "patient@ncg";
+    private static final String HIU = "hiu";
+
+    @Mock
+    private ReadRouter readRouter;
+    @Mock
+    private QueryExecutor queryExecutor;
+    @Mock
+    private PgPool reader;
+    @Mock
+    private PgPool readWriteClient;
+    @Mock
+    private PgPool streamClient;
+
+    private SubscriptionRepository subscriptionRepository;
+
+    @BeforeEach
+    void setUp() {
+        initMocks(this);
+        when(readRouter.readerFor(PATIENT)).thenReturn(reader);
+        subscriptionRepository = new SubscriptionRepository(readRouter,
+                queryExecutor,
+                readWriteClient,
+                streamClient,
+                new SubscriptionResponseMapper(),
+                100,
+                Duration.ofSeconds(30));
+    }
+
+    @Test
+    void shouldCountWhenThePageIsPastTheEnd() {
+        Row count = mock(Row.class);
+        when(count.getInteger("count")).thenReturn(7);
+        whenPaged(rowSetOf());
+        when(queryExecutor.cancellableQuery(eq("countSubscriptionsFor"), eq(reader), anyString(), any(Tuple.class)))
+                .thenReturn(Mono.just(rowSetOf(count)));
+
+        StepVerifier.create(subscriptionRepository.getSubscriptionsFor(PATIENT, HIU, 10, 20))
+                .assertNext(listResult -> {
+                    assertThat(listResult.getResult()).isEmpty();
+                    assertThat(listResult.getTotal()).isEqualTo(7);
+                })
+                .verifyComplete();
+
+        verify(queryExecutor, never()).query(eq("getActiveSourcesOfSubscriptions"), any(), anyString(), any());
+    }
+
+    @Test
+    void shouldTotalSubscriptionsRatherThanTheirSources() {
+        String first = UUID.randomUUID().toString();
+        String second = UUID.randomUUID().toString();
+        whenPaged(rowSetOf(pagedRow(first, 2), pagedRow(second, 2)));
+        whenSourcesAre(rowSetOf(sourceRow(first, "hip-1"), sourceRow(first, "hip-2"), sourceRow(second, "hip-1")));
+
+        StepVerifier.create(subscriptionRepository.getSubscriptionsFor(PATIENT, HIU, 10, 0))
+                .assertNext(listResult -> {
+                    assertThat(listResult.getTotal()).isEqualTo(2);
+                    assertThat(listResult.getResult()).hasSize(2);
+                    assertThat(listResult.getResult().get(0).getIncludedSources()).hasSize(2);
+                    assertThat(listResult.getResult().get(1).getIncludedSources()).hasSize(1);
+                })
+                .verifyComplete();
+
+        verify(queryExecutor, never()).cancellableQuery(eq("countSubscriptionsFor"), any(), anyString(), any());
+    }
+
+    @Test
+    void shouldKeepTheOrderSubscriptionsWerePagedIn() {
+        String first = UUID.randomUUID().toString();
+        String second = UUID.randomUUID().toString();
+        String third = UUID.randomUUID().toString();
+        whenPaged(rowSetOf(pagedRow(first, 3), pagedRow(second, 3), pagedRow(third, 3)));
+        whenSourcesAre(rowSetOf(sourceRow(third, "hip-1"), sourceRow(first, "hip-1"), sourceRow(second, "hip-1")));
+
+        StepVerifier.create(subscriptionRepository.getSubscriptionsFor(PATIENT, HIU, 10, 0))
+                .assertNext(listResult -> assertThat(listResult.getResult().stream()
+                        .map(SubscriptionResponse::getSubscriptionId)
+                        .map(UUID::toString)
+                        .collect(Collectors.toList()))
+                        .containsExactly(first, second, third))
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldReadTheEditedSubscriptionAndItsPatientFromThePrimaryOnceCommitted() {
+        String subscriptionId = UUID.randomUUID().toString();
+        when(queryExecutor.<RowSet<Row>>transaction(eq("editSubscriptionSources"), eq(readWriteClient), any()))
+                .thenReturn(Mono.just(rowSetOf()));
+
+        StepVerifier.create(subscriptionRepository.editSubscriptionNotApplicableForAllHIPs(subscriptionId, PATIENT,
+                List.of(), Set.of("hip-1")))
+                .verifyComplete();
+
+        verify(readRouter).wrote(PATIENT);
+        verify(readRouter).wrote(subscriptionId);
+    }
+
+    private void whenPaged(RowSet<Row> page) {
+        when(queryExecutor.cancellableQuery(eq("getSubscriptionsFor"), eq(reader), anyString(), any(Tuple.class)))
+                .thenReturn(Mono.just(page));
+    }
+
+    private void whenSourcesAre(RowSet<Row> sources) {
+        when(queryExecutor.query(eq("getActiveSourcesOfSubscriptions"), eq(reader), anyString(), any(Tuple.class)))
+                .thenReturn(Mono.just(sources));
+    }
+
+    private static Row pagedRow(String subscriptionId, int total) {
+        Row row = mock(Row.class);
+        when(row.getString(SUBSCRIPTION_ID)).thenReturn(subscriptionId);
+        when(row.getInteger(TOTAL_COUNT)).thenReturn(total);
+        return row;
+    }
+
+    private static Row sourceRow(String subscriptionId, String hipId) {
+        Row row = mock(Row.class);
+        when(row.getString(SUBSCRIPTION_ID)).thenReturn(subscriptionId);
+        when(row.getValue(DETAILS)).thenReturn(from(TestBuilder.subscriptionDetail().build()));
+        when(row.getString(REQUEST_STATUS)).thenReturn(RequestStatus.GRANTED.name());
+        when(row.getString(REQUESTER_TYPE)).thenReturn(RequesterType.HIU.name());
+        when(row.getString(PATIENT_ID)).thenReturn(PATIENT);
+        when(row.getString(SUBSCRIPTION_STATUS)).thenReturn(SubscriptionStatus.GRANTED.name());
+        when(row.getString(HIP_ID)).thenReturn(hipId);
+        when(row.getBoolean(CATEGORY_LINK)).thenReturn(true);
+        when(row.getBoolean(CATEGORY_DATA)).thenReturn(false);
+        when(row.getValue(HI_TYPES)).thenReturn(from(asList(HIType.PRESCRIPTION)));
+        return row;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RowSet<Row> rowSetOf(Row... rows) {
+        List<Row> rowList = List.of(rows);
+        RowSet<Row> rowSet = mock(RowSet.class);
+        when(rowSet.size()).thenReturn(rowList.size());
+        when(rowSet.rowCount()).thenReturn(rowList.size());
+        when(rowSet.iterator()).thenAnswer(invocation -> iteratorOf(rowList.iterator()));
+        return rowSet;
+    }
+
+    private static RowIterator<Row> iteratorOf(Iterator<Row> rows) {
+        return new RowIterator<>() {
+            @Override
+            public boolean hasNext() {
+                return rows.hasNext();
+            }
+
+            @Override
+            public Row next() {
+                return rows.next();
+            }
+        };
+    }
+}
@@ -19,6 +19,7 @@ import in.projecteka.datanotificationsubscription.subscription.model.GrantedSubs
 import in.projecteka.datanotificationsubscription.subscription.model.HIUSubscriptionRequestNotifyRequest;
 import in.projecteka.datanotificationsubscription.subscription.model.HiuDetail;
 import in.projecteka.datanotificationsubscription.subscription.model.ListResult;
+import in.projecteka.datanotificationsubscription.subscription.model.PageCursor;
 import in.projecteka.datanotificationsubscription.subscription.model.PatientDetail;
 import in.projecteka.datanotificationsubscription.subscription.model.RequestStatus;
 import in.projecteka.datanotificationsubscription.subscription.model.SubscriptionEditAndApprovalRequest;
@@ -97,7 +98,8 @@ class SubscriptionRequestServiceTest {
                 subscriptionProperties,
                 appPushNotificationPublisher,
                 userAuthorizationServiceClient,
-                linkServiceClient);
+                linkServiceClient,
+                new PassThroughLinkSubscriptionIndex());
     }
 
     @Test
@@ -272,7 +274,8 @@ class SubscriptionRequestServiceTest {
     @Test
     void shouldApproveSubscriptionApprovalAndNotifyHIUWhenApprovedForSelectedHIPs() {
         ArgumentCaptor<HIUSubscriptionRequestNotifyRequest> requestCaptor = ArgumentCaptor.forClass(HIUSubscriptionRequestNotifyRequest.class);
-        ArgumentCaptor<GrantedSubscription> grantedSubscriptionCaptor = ArgumentCaptor.forClass(GrantedSubscription.class);
+        ArgumentCaptor<List<GrantedSubscription>> includedSourcesCaptor = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<List<GrantedSubscription>> excludedSourcesCaptor = ArgumentCaptor.forClass(List.class);
         ArgumentCaptor<String> hiuIdCaptor = ArgumentCaptor.forClass(String.class);
 
         String username = "test@ncg";
@@ -294,8 +297,7 @@ class SubscriptionRequestServiceTest {
         when(userServiceClient.userOf(anyString())).thenReturn(userMono);
         when(conceptValidator.validateHITypes(anyList())).thenReturn(Mono.just(true));
         when(subscriptionRequestRepository.requestOf(anyString(), anyString(), anyString())).thenReturn(Mono.just(subscriptionRequestDetails));
-        when(subscriptionRequestRepository.updateHIUSubscription(anyString(), anyString(), anyString())).thenReturn(Mono.empty());
-        when(subscriptionRequestRepository.insertIntoSubscriptionSource(anyString(), any(GrantedSubscription.class), eq(false))).thenReturn(Mono.empty());
+        when(subscriptionRequestRepository.grantSubscription(anyString(), anyString(), anyList(), anyList())).thenReturn(Mono.empty());
         when(gatewayServiceClient.subscriptionRequestNotify(any(HIUSubscriptionRequestNotifyRequest.class), anyString())).thenReturn(Mono.empty());
         when(subscriptionProperties.getSubscriptionRequestExpiry()).thenReturn(20);
 
@@ -306,16 +308,17 @@ class SubscriptionRequestServiceTest {
 
         verify(conceptValidator, times(1)).validateHITypes(anyList());
         verify(subscriptionRequestRepository, times(1)).requestOf(requestId, RequestStatus.REQUESTED.name(), username);
-        verify(subscriptionRequestRepository, times(1)).updateHIUSubscription(eq(requestId), anyString(), eq(RequestStatus.GRANTED.name()));
-        verify(subscriptionRequestRepository, times(2)).insertIntoSubscriptionSource(any(String.class), grantedSubscriptionCaptor.capture(), eq(false));
+        verify(subscriptionRequestRepository, times(1)).grantSubscription(eq(requestId), anyString(),
+                includedSourcesCaptor.capture(), excludedSourcesCaptor.capture());
         verify(gatewayServiceClient, times(1)).subscriptionRequestNotify(requestCaptor.capture(), hiuIdCaptor.capture());
 
-        List<GrantedSubscription> subscriptions = grantedSubscriptionCaptor.getAllValues();
+        List<GrantedSubscription> subscriptions = includedSourcesCaptor.getValue();
         HIUSubscriptionRequestNotifyRequest request = requestCaptor.getValue();
         String hiuId = hiuIdCaptor.getValue();
 
         assertThat(subscriptions.get(0)).isEqualTo(subscription1);
         assertThat(subscriptions.get(1)).isEqualTo(subscription2);
+        assertThat(excludedSourcesCaptor.getValue()).isEmpty();
         assertThat(hiuId).isEqualTo(subscriptionRequestDetails.getHiu().getId());
 
         assertThat(request.getNotification().getSubscriptionRequestId()).isEqualTo(subscriptionRequestDetails.getId());
@@ -328,7 +331,8 @@ class SubscriptionRequestServiceTest {
     @Test
     void shouldApproveSubscriptionApprovalAndNotifyHIUWhenApprovedForAllHIPs() {
         ArgumentCaptor<HIUSubscriptionRequestNotifyRequest> requestCaptor = ArgumentCaptor.forClass(HIUSubscriptionRequestNotifyRequest.class);
-        ArgumentCaptor<GrantedSubscription> grantedSubscriptionCaptor = ArgumentCaptor.forClass(GrantedSubscription.class);
+        ArgumentCaptor<List<GrantedSubscription>> includedSourcesCaptor = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<List<GrantedSubscription>> excludedSourcesCaptor = ArgumentCaptor.forClass(List.class);
         ArgumentCaptor<String> hiuIdCaptor = ArgumentCaptor.forClass(String.class);
 
         String username = "test@ncg";
@@ -355,8 +359,7 @@ class SubscriptionRequestServiceTest {
         when(userServiceClient.userOf(anyString())).thenReturn(Mono.just(user));
         when(conceptValidator.validateHITypes(anyList())).thenReturn(Mono.just(true));
         when(subscriptionRequestRepository.requestOf(anyString(), anyString(), anyString())).thenReturn(Mono.just(subscriptionRequestDetails));
-        when(subscriptionRequestRepository.updateHIUSubscription(anyString(), anyString(), anyString())).thenReturn(Mono.empty());
-        when(subscriptionRequestRepository.insertIntoSubscriptionSource(anyString(), any(GrantedSubscription.class), eq(false))).thenReturn(Mono.empty());
+        when(subscriptionRequestRepository.grantSubscription(anyString(), anyString(), anyList(), anyList())).thenReturn(Mono.empty());
         when(gatewayServiceClient.subscriptionRequestNotify(any(HIUSubscriptionRequestNotifyRequest.class), anyString())).thenReturn(Mono.empty());
         when(subscriptionProperties.getSubscriptionRequestExpiry()).thenReturn(20);
         when(linkServiceClient.getUserLinks(user.getHealthIdNumber())).thenReturn(Mono.just(patientLinksResponse));
@@ -368,12 +371,12 @@ class SubscriptionRequestServiceTest {
 
         verify(conceptValidator, times(1)).validateHITypes(anyList());
         verify(subscriptionRequestRepository, times(1)).requestOf(requestId, RequestStatus.REQUESTED.name(), user.getHealthIdNumber());
-        verify(subscriptionRequestRepository, times(1)).updateHIUSubscription(eq(requestId), anyString(), eq(RequestStatus.GRANTED.name()));
-        verify(subscriptionRequestRepository, times(1)).insertIntoSubscriptionSource(any(String.class), grantedSubscriptionCaptor.capture(), eq(false));
+        verify(subscriptionRequestRepository, times(1)).grantSubscription(eq(requestId), anyString(),
+                includedSourcesCaptor.capture(), excludedSourcesCaptor.capture());
         verify(gatewayServiceClient, times(1)).subscriptionRequestNotify(requestCaptor.capture(), hiuIdCaptor.capture());
         verify(linkServiceClient, times(1)).getUserLinks(user.getHealthIdNumber());
 
-        List<GrantedSubscription> subscriptions = grantedSubscriptionCaptor.getAllValues();
+        List<GrantedSubscription> subscriptions = includedSourcesCaptor.getValue();
         HIUSubscriptionRequestNotifyRequest request = requestCaptor.getValue();
         String hiuId = hiuIdCaptor.getValue();
 
@@ -415,7 +418,7 @@ class SubscriptionRequestServiceTest {
         verify(conceptValidator, never()).validateHITypes(anyList());
         verify(subscriptionRequestRepository, times(1)).requestOf(requestId, RequestStatus.REQUESTED.name(), username);
         verify(subscriptionRequestRepository, times(1)).updateHIUSubscription(requestId, null, RequestStatus.DENIED.name());
-        verify(subscriptionRequestRepository, never()).insertIntoSubscriptionSource(any(String.class), any(GrantedSubscription.class), eq(false));
+        verify(subscriptionRequestRepository, never()).grantSubscription(anyString(), anyString(), anyList(), anyList());
         verify(gatewayServiceClient, times(1)).subscriptionRequestNotify(requestCaptor.capture(), hiuIdCaptor.capture());
 
         HIUSubscriptionRequestNotifyRequest request = requestCaptor.getValue();
@@ -487,6 +490,29 @@ class SubscriptionRequestServiceTest {
                 .verify();
     }
 
+    @Test
+    void shouldReadTheHIURequestsAfterTheirCursorAndTheLockerRequestsFromTheirOffset() {
+        User user = user().healthIdNumber(null).build();
+        PageCursor cursor = new PageCursor(now(), UUID.randomUUID().toString());
+        var hiuRequesters = List.of(RequesterType.HIU.toString(), RequesterType.HIP_AND_HIU.toString());
+        var lockerRequesters = List.of(RequesterType.HEALTH_LOCKER.toString());
+        ListResult<List<SubscriptionRequestDetails>> hiuResult = new ListResult<>(new ArrayList<>(), ListResult.UNKNOWN_TOTAL);
+        ListResult<List<SubscriptionRequestDetails>> lockerResult = new ListResult<>(new ArrayList<>(), 0);
+        when(userServiceClient.userOf("patient-id")).thenReturn(Mono.just(user));
+        when(subscriptionRequestRepository.getPatientSubscriptionRequests("patient-id", 5, cursor, null, hiuRequesters, false))
+                .thenReturn(Mono.just(hiuResult));
+        when(subscriptionRequestRepository.getPatientSubscriptionRequests("patient-id", 5, 0, null, lockerRequesters))
+                .thenReturn(Mono.just(lockerResult));
+
+        var publisher = subscriptionRequestService.getPatientSubscriptions("patient-id",
+                5, 0, cursor, 5, 0, null, "ALL", false);
+
+        StepVerifier.create(publisher)
+                .expectNextMatches(res -> res.getT1().getTotal() == ListResult.UNKNOWN_TOTAL && res.getT2().getTotal() == 0)
+                .expectComplete()
+                .verify();
+    }
+
     @Test
     void shouldReturnSubscriptionDetailsById() {
         var subscriptionRequestId = UUID.randomUUID();
@@ -11,6 +11,8 @@ import in.projecteka.datanotificationsubscription.subscription.model.Subscriptio
 import in.projecteka.datanotificationsubscription.subscription.model.TestBuilder;
 import io.vertx.sqlclient.Row;
 import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
 
 import java.util.List;
 import java.util.UUID;
@@ -120,4 +122,41 @@ class SubscriptionResponseMapperTest {
         assertThat(responses.get(0).getSubscriptionId().toString()).isIn(subscriptionId1, subscriptionId2);
         assertThat(responses.get(1).getSubscriptionId().toString()).isIn(subscriptionId1, subscriptionId2);
     }
+
+    @Test
+    void shouldGroupConsecutiveRowsOfAStreamBySubscription() {
+        String subscriptionId1 = UUID.randomUUID().toString();
+        String subscriptionId2 = UUID.randomUUID().toString();
+        SubscriptionDetail detail = TestBuilder.subscriptionDetail().build();
+        Flux<Row> rows = Flux.just(row(subscriptionId1, "10001", detail),
+                row(subscriptionId1, "10002", detail),
+                row(subscriptionId2, "10001", detail));
+
+        StepVerifier.create(new SubscriptionResponseMapper().mapRowsToSubscriptionResponses(rows))
+                .assertNext(response -> {
+                    assertThat(response.getSubscriptionId().toString()).isEqualTo(subscriptionId1);
+                    assertThat(response.getIncludedSources()).extracting(source -> source.getHip().getId())
+                            .containsExactly("10001", "10002");
+                })
+                .assertNext(response -> {
+                    assertThat(response.getSubscriptionId().toString()).isEqualTo(subscriptionId2);
+                    assertThat(response.getIncludedSources()).hasSize(1);
+                })
+                .verifyComplete();
+    }
+
+    private static Row row(String subscriptionId, String hipId, SubscriptionDetail detail) {
+        Row row = mock(Row.class);
+        when(row.getString(SUBSCRIPTION_ID)).thenReturn(subscriptionId);
+        when(row.getValue(DETAILS)).thenReturn(from(detail));
+        when(row.getString(REQUEST_STATUS)).thenReturn(RequestStatus.GRANTED.name());
+        when(row.getString(REQUESTER_TYPE)).thenReturn(RequesterType.HIU.name());
+        when(row.getString(PATIENT_ID)).thenReturn("test@ncg");
+        when(row.getString(SUBSCRIPTION_STATUS)).thenReturn(SubscriptionStatus.GRANTED.name());
+        when(row.getString(HIP_ID)).thenReturn(hipId);
+        when(row.getBoolean(CATEGORY_DATA)).thenReturn(false);
+        when(row.getBoolean(CATEGORY_LINK)).thenReturn(true);
+        when(row.getValue(HI_TYPES)).thenReturn(from(asList(HIType.DIAGNOSTIC_REPORT)));
+        return row;
+    }
 }
@@ -55,7 +55,11 @@ class SubscriptionServiceTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.initMocks(this);
-        subscriptionService = new SubscriptionService(userServiceClient, gatewayServiceClient, subscriptionRepository, linkServiceClient);
+        subscriptionService = new SubscriptionService(userServiceClient,
+                gatewayServiceClient,
+                subscriptionRepository,
+                linkServiceClient,
+                new PassThroughLinkSubscriptionIndex());
     }
 
     @Test
@@ -136,7 +140,7 @@ class SubscriptionServiceTest {
         var hiuNotificationRequestCaptor = ArgumentCaptor.forClass(HIUSubscriptionRequestNotifyRequest.class);
 
         when(subscriptionRepository.getSubscriptionDetailsForID(subscriptionId, false)).thenReturn(Mono.just(subscriptionResponse));
-        when(subscriptionRepository.editSubscriptionNotApplicableForAllHIPs(subscriptionId, expectedIncludedSources, expectedHipsToBeDeactivated)).thenReturn(Mono.empty());
+        when(subscriptionRepository.editSubscriptionNotApplicableForAllHIPs(subscriptionId, subscriptionResponse.getPatient().getId(), expectedIncludedSources, expectedHipsToBeDeactivated)).thenReturn(Mono.empty());
         when(gatewayServiceClient.subscriptionRequestNotify(hiuNotificationRequestCaptor.capture(), eq(subscriptionResponse.getRequester().getId()))).thenReturn(Mono.empty());
 
         StepVerifier.create(subscriptionService.editSubscription(subscriptionId, subscriptionEditRequest))
@@ -159,7 +163,7 @@ class SubscriptionServiceTest {
         assertEquals(newHipToInclude.getPeriod(), expectedIncludedSource.getPeriod());
 
         verify(subscriptionRepository, times(1)).getSubscriptionDetailsForID(subscriptionId, false);
-        verify(subscriptionRepository, times(1)).editSubscriptionNotApplicableForAllHIPs(subscriptionId, expectedIncludedSources, expectedHipsToBeDeactivated);
+        verify(subscriptionRepository, times(1)).editSubscriptionNotApplicableForAllHIPs(subscriptionId, subscriptionResponse.getPatient().getId(), expectedIncludedSources, expectedHipsToBeDeactivated);
         verify(gatewayServiceClient, times(1)).subscriptionRequestNotify(any(HIUSubscriptionRequestNotifyRequest.class), eq(subscriptionResponse.getRequester().getId()));
     }
 
@@ -201,7 +205,7 @@ class SubscriptionServiceTest {
         var patientLinkResponse = patientLinksResponse().build();
 
         when(subscriptionRepository.getSubscriptionDetailsForID(subscriptionId, false)).thenReturn(Mono.just(subscriptionResponse));
-        when(subscriptionRepository.editSubscriptionApplicableForAllHIPs(subscriptionId, expectedHipsToBeDeactivated, expectedIncludedSource,  expectedExcludedSources)).thenReturn(Mono.empty());
+        when(subscriptionRepository.editSubscriptionApplicableForAllHIPs(subscriptionId, subscriptionResponse.getPatient().getId(), expectedHipsToBeDeactivated, expectedIncludedSource, expectedExcludedSources)).thenReturn(Mono.empty());
         when(gatewayServiceClient.subscriptionRequestNotify(hiuNotificationRequestCaptor.capture(), eq(subscriptionResponse.getRequester().getId()))).thenReturn(Mono.empty());
         when(linkServiceClient.getUserLinks(subscriptionResponse.getPatient().getId())).thenReturn(Mono.just(patientLinkResponse));
 
@@ -225,7 +229,7 @@ class SubscriptionServiceTest {
 
         verify(subscriptionRepository, times(1)).getSubscriptionDetailsForID(subscriptionId, false);
         verify(subscriptionRepository, times(1))
-                .editSubscriptionApplicableForAllHIPs(subscriptionId, expectedHipsToBeDeactivated, expectedIncludedSource,  expectedExcludedSources);
+                .editSubscriptionApplicableForAllHIPs(subscriptionId, subscriptionResponse.getPatient().getId(), expectedHipsToBeDeactivated, expectedIncludedSource, expectedExcludedSources);
         verify(gatewayServiceClient, times(1)).subscriptionRequestNotify(any(HIUSubscriptionRequestNotifyRequest.class), eq(subscriptionResponse.getRequester().getId()));
         verify(linkServiceClient, times(1)).getUserLinks(subscriptionResponse.getPatient().getId());
     }
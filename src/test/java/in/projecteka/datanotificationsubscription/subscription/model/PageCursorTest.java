@@ -0,0 +1,47 @@
+package in.projecteka.datanotificationsubscription.subscription.model;
+
+import in.projecteka.datanotificationsubscription.common.ClientError;
+import in.projecteka.datanotificationsubscription.common.ErrorCode;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+class PageCursorTest {
+
+    @Test
+    void shouldDecodeWhatItEncodes() throws ClientError {
+        PageCursor cursor = new PageCursor(LocalDateTime.of(2020, 11, 3, 10, 15, 30, 123456000),
+                UUID.randomUUID().toString());
+
+        assertThat(PageCursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+
+    @Test
+    void shouldTreatAMissingCursorAsAbsent() throws ClientError {
+        assertThat(PageCursor.decodeIfPresent(null)).isEmpty();
+        assertThat(PageCursor.decodeIfPresent("")).isEmpty();
+    }
+
+    @Test
+    void shouldRejectATamperedCursor() {
+        String tampered = Base64.getUrlEncoder().encodeToString("yesterday|request-id".getBytes(StandardCharsets.UTF_8));
+
+        Throwable error = catchThrowable(() -> PageCursor.decode(tampered));
+
+        assertThat(error).isInstanceOf(ClientError.class);
+        assertThat(((ClientError) error).getErrorCode()).isEqualTo(ErrorCode.INVALID_PAGE_CURSOR);
+    }
+
+    @Test
+    void shouldRejectACursorWhichIsNotBase64() {
+        Throwable error = catchThrowable(() -> PageCursor.decode("not a cursor"));
+
+        assertThat(error).isInstanceOf(ClientError.class);
+    }
+}